@@ -0,0 +1,358 @@
+/**
+ * AnnealingSearch.java
+ *
+ * Local search alternative to WeightedCSP and MinCostMatching, for
+ * organizations of several hundred members or more, where a good assignment
+ * within a time budget is worth more than a proof that it is the best.
+ *
+ * The search works on the same model as MinCostMatching: a matching of mutual
+ * teammates, where each matched pair (i, j) saves
+ *
+ * 	leftover(i) + leftover(j) - pair(i, j)
+ *
+ * over leaving both of them to pick a taken teammate. It starts from the
+ * greedy Incumbent and tries random moves on pairs of teammates u, v:
+ *
+ * 	re-pair		u and v are matched, their old mates are left over
+ * 	swap		u and v are matched, and so are their old mates, if those are
+ * 			teammates as well
+ *
+ * Each move changes at most four members, and the saving of every pair is
+ * kept per member, so a move is scored in constant time. A move that saves
+ * more is always taken, one that saves less is taken with a chance that falls
+ * as the search cools (simulated annealing), so that the search can leave a
+ * matching no single move improves.
+ *
+ * The search is restarted a few times, each time from a greedy matching with
+ * its own seeded candidate order. With a deadline, each restart cools over its
+ * share of the time left, without one over a fixed number of moves. The best
+ * matching of the restarts is completed and counted as by MinCostMatching.
+ * The result is proven optimal only if it meets the lower bound.
+ */
+
+package oneplusone;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class AnnealingSearch {
+	public static final int DEFAULT_RESTARTS = 4;
+	static final int MOVES_PER_PAIR = 200; // per restart, without a deadline
+	static final double START_TEMPERATURE = 2.0;
+	static final double END_TEMPERATURE = 0.05;
+	private static final int CLOCK_MOVES = 1024; // moves between clock checks
+	private final OrganizationSnapshot snapshot;
+	Random random = new Random(); // seeds the restarts
+	private int restarts = DEFAULT_RESTARTS;
+	private int[] position; // id => turn in search order
+	private int[] leftover; // id => cheapest cost of picking a taken teammate
+	private int[] pairFrom; // pair => member searched first
+	private int[] pairTo; // pair => member searched second
+	private int[] pairSaving; // pair => saving of matching them
+	private long[] slotKey; // open addressing of pairs by members, 0 if empty
+	private int[] slotPair; // slot => pair
+	private int[] mate; // id => matched teammate, or -1
+	private int[] saving; // id => saving of their pair, 0 if unmatched
+	private int cost;
+	private long moves; // tried in the last solve
+	private long accepted; // taken in the last solve
+
+	/**
+	 * Constructor for AnnealingSearch
+	 * @param snapshot to solve
+	 */
+	public AnnealingSearch(OrganizationSnapshot snapshot) {
+		this.snapshot = snapshot;
+	}
+
+	/**
+	 * @return best PairingAssignment found, recorded into the members.
+	 */
+	public PairingAssignment solve() {
+		return solve(WeightedCSP.NO_DEADLINE, null);
+	}
+
+	/**
+	 * Anytime: stops trying moves once the deadline passes or the token is
+	 * cancelled, and returns the best matching found so far.
+	 * @see WeightedCSP.solve(long, CancellationToken)
+	 * @param deadline System.currentTimeMillis() after which to stop, or
+	 * 	WeightedCSP.NO_DEADLINE
+	 * @param token to cancel the solve with, or null
+	 * @return best PairingAssignment found, recorded into the members.
+	 */
+	public PairingAssignment solve(long deadline, CancellationToken token) {
+		PairingAssignment assignment = search(deadline, token);
+		assignment.record();
+		return assignment;
+	}
+
+	/**
+	 * Same as solve(long, CancellationToken), but the assignment is not recorded
+	 * into the members.
+	 * @return best PairingAssignment found
+	 */
+	public PairingAssignment search(long deadline, CancellationToken token) {
+		long start = System.currentTimeMillis();
+		SolveStats stats = new SolveStats();
+		int n = snapshot.size();
+		int[] sortedMembers = WeightedCSP.sortMembers(snapshot);
+		CostTable table = new CostTable(snapshot, random);
+		position = new int[n];
+		for (int d = 0; d < n; d++) { position[sortedMembers[d]] = d; }
+		pairs(table);
+		moves = 0;
+		accepted = 0;
+
+		MinCostMatching completer = new MinCostMatching(snapshot);
+		PairingAssignment best = null;
+		for (int r = 0; r < restarts; r++) {
+			if (r > 0 && outOfTime(deadline, token)) { break; }
+
+			// each restart starts from its own greedy matching
+			Random seeded = new Random(random.nextLong());
+			CostTable shuffled = new CostTable(snapshot, seeded);
+			start(Incumbent.greedy(shuffled, sortedMembers));
+			long share = deadline == WeightedCSP.NO_DEADLINE ? 0
+					: Math.max(1, (deadline - System.currentTimeMillis()) / (restarts - r));
+			anneal(seeded, share, deadline, token);
+
+			PairingAssignment result = completer.complete(table, sortedMembers, mate);
+			if (best == null || result.getCost() < best.getCost()) {
+				best = result;
+				stats.bestMillis = System.currentTimeMillis() - start;
+			}
+			if (stats.firstMillis == -1) { stats.firstMillis = stats.bestMillis; }
+		}
+
+		cost = best.getCost();
+		int lowerBound = Math.min(cost, Math.max(LowerBound.pairs(table),
+				new LowerBound(table, sortedMembers).root()));
+		best.setResult(cost, lowerBound, cost <= lowerBound);
+		stats.cost = cost;
+		stats.lowerBound = lowerBound;
+		stats.optimal = best.isOptimal();
+		stats.solveMillis = System.currentTimeMillis() - start;
+		best.setStats(stats);
+		return best;
+	}
+
+	/**
+	 * Lists the pairs of mutual teammates that save anything, the saving of
+	 * each, and indexes them by their members.
+	 */
+	private void pairs(CostTable table) {
+		int n = snapshot.size();
+		leftover = new int[n];
+		int count = 0;
+		for (int i = 0; i < n; i++) {
+			for (int e = snapshot.firstEdge(i); e < snapshot.endEdge(i); e++) {
+				int c = table.cost(e, true);
+				if (leftover[i] == 0 || c < leftover[i]) { leftover[i] = c; }
+				if (snapshot.reverse(e) != -1
+						&& position[i] < position[snapshot.neighbor(e)]) {
+					count++;
+				}
+			}
+		}
+
+		pairFrom = new int[count];
+		pairTo = new int[count];
+		pairSaving = new int[count];
+		int slots = Integer.highestOneBit(Math.max(1, count) * 2) * 2;
+		slotKey = new long[slots];
+		slotPair = new int[slots];
+		count = 0;
+		for (int i = 0; i < n; i++) {
+			for (int e = snapshot.firstEdge(i); e < snapshot.endEdge(i); e++) {
+				int j = snapshot.neighbor(e);
+				if (snapshot.reverse(e) == -1 || position[i] > position[j]) { continue; }
+				int s = leftover[i] + leftover[j] - table.freeCost(e);
+				if (s <= 0) { continue; }
+
+				pairFrom[count] = i;
+				pairTo[count] = j;
+				pairSaving[count] = s;
+				int slot = slot(key(i, j));
+				slotKey[slot] = key(i, j);
+				slotPair[slot] = count++;
+			}
+		}
+		if (count < pairFrom.length) {
+			pairFrom = Arrays.copyOf(pairFrom, count);
+			pairTo = Arrays.copyOf(pairTo, count);
+			pairSaving = Arrays.copyOf(pairSaving, count);
+		}
+	}
+
+	/**
+	 * Sets the current matching to a starting solution.
+	 * @param start edge from each member to their mate, or -1
+	 */
+	private void start(int[] start) {
+		int n = snapshot.size();
+		mate = new int[n];
+		saving = new int[n];
+		for (int i = 0; i < n; i++) { mate[i] = -1; }
+		for (int i = 0; i < n; i++) {
+			if (start[i] == -1) { continue; }
+			int j = snapshot.neighbor(start[i]);
+			int pair = pair(i, j);
+			if (pair == -1) { continue; } // saves nothing, left over instead
+			mate[i] = j;
+			saving[i] = pairSaving[pair];
+		}
+	}
+
+	/**
+	 * Tries random moves on the current matching while cooling from
+	 * START_TEMPERATURE to END_TEMPERATURE.
+	 * @param share milliseconds to cool over, 0 to cool over a number of moves
+	 */
+	private void anneal(Random random, long share, long deadline,
+			CancellationToken token) {
+		if (pairFrom.length == 0) { return; }
+		long planned = (long) MOVES_PER_PAIR * pairFrom.length;
+		long start = System.currentTimeMillis();
+		double temperature = START_TEMPERATURE;
+
+		// the best matching is copied only when a worse move leaves it
+		int total = 0;
+		for (int i = 0; i < mate.length; i++) {
+			if (mate[i] != -1 && i < mate[i]) { total += saving[i]; }
+		}
+		int bestTotal = total;
+		int[] bestMate = mate.clone();
+		boolean saved = true;
+
+		for (long m = 0; m < planned || share > 0; m++) {
+			if (m % CLOCK_MOVES == 0) {
+				if (outOfTime(deadline, token)) { break; }
+				double done = share > 0
+						? (double) (System.currentTimeMillis() - start) / share
+						: (double) m / planned;
+				if (done >= 1) { break; }
+				temperature = START_TEMPERATURE
+						* Math.pow(END_TEMPERATURE / START_TEMPERATURE, done);
+			}
+			moves++;
+
+			int k = random.nextInt(pairFrom.length);
+			int u = pairFrom[k];
+			int v = pairTo[k];
+			if (mate[u] == v) { continue; }
+			int a = mate[u];
+			int b = mate[v];
+
+			// the old mates are matched to each other if they can be, half the time
+			int other = a != -1 && b != -1 && random.nextBoolean() ? pair(a, b) : -1;
+			int delta = pairSaving[k] - saving[u] - saving[v];
+			if (other != -1) { delta += pairSaving[other]; }
+			if (delta < 0 && random.nextDouble() >= Math.exp(delta / temperature)) {
+				continue;
+			}
+			accepted++;
+			if (delta < 0 && total == bestTotal && !saved) {
+				System.arraycopy(mate, 0, bestMate, 0, mate.length);
+				saved = true;
+			}
+			total += delta;
+			if (total > bestTotal) {
+				bestTotal = total;
+				saved = false;
+			}
+
+			if (a != -1) { mate[a] = -1; saving[a] = 0; }
+			if (b != -1) { mate[b] = -1; saving[b] = 0; }
+			mate[u] = v;
+			mate[v] = u;
+			saving[u] = saving[v] = pairSaving[k];
+			if (other != -1) {
+				mate[a] = b;
+				mate[b] = a;
+				saving[a] = saving[b] = pairSaving[other];
+			}
+		}
+
+		if (total < bestTotal) {
+			mate = bestMate;
+			for (int i = 0; i < mate.length; i++) {
+				saving[i] = mate[i] == -1 ? 0 : pairSaving[pair(i, mate[i])];
+			}
+		}
+	}
+
+	/**
+	 * @return pair of the two members, or -1 if matching them saves nothing
+	 */
+	private int pair(int a, int b) {
+		if (position[a] > position[b]) { int swap = a; a = b; b = swap; }
+		int slot = slot(key(a, b));
+		return slotKey[slot] == 0 ? -1 : slotPair[slot];
+	}
+
+	/**
+	 * @return key of the pair of members, never 0
+	 */
+	private long key(int first, int second) {
+		return (long) first * snapshot.size() + second + 1;
+	}
+
+	/**
+	 * @return slot holding the key, or the empty slot it would go in
+	 */
+	private int slot(long key) {
+		int mask = slotKey.length - 1;
+		int slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> 40) & mask;
+		while (slotKey[slot] != 0 && slotKey[slot] != key) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	/**
+	 * @return whether the deadline has passed or the token is cancelled
+	 */
+	private static boolean outOfTime(long deadline, CancellationToken token) {
+		return (token != null && token.isCancelled())
+				|| (deadline != WeightedCSP.NO_DEADLINE
+						&& System.currentTimeMillis() >= deadline);
+	}
+
+	/**
+	 * Makes solves repeatable, given the same deadline or none.
+	 * @param random to seed restarts and order teammates of equal cost with
+	 */
+	public void setRandom(Random random) {
+		this.random = random;
+	}
+
+	/**
+	 * @param restarts searches from a new starting matching, at least 1
+	 */
+	public void setRestarts(int restarts) {
+		this.restarts = Math.max(1, restarts);
+	}
+
+	/**
+	 * @return cost of the assignment found by the last solve, counted the same
+	 * 	way as WeightedCSP.getCost()
+	 */
+	public int getCost() {
+		return cost;
+	}
+
+	/**
+	 * @return moves tried in the last solve
+	 */
+	public long getMoves() {
+		return moves;
+	}
+
+	/**
+	 * @return moves taken in the last solve
+	 */
+	public long getAccepted() {
+		return accepted;
+	}
+}
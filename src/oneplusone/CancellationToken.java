@@ -0,0 +1,28 @@
+/**
+ * CancellationToken.java
+ * 
+ * Shared flag used to ask a running solve to stop early. The solver checks it
+ * every so often, and returns the best assignment it has found so far.
+ * 
+ * May be cancelled from any thread.
+ */
+
+package oneplusone;
+
+public class CancellationToken {
+	private volatile boolean cancelled;
+	
+	/**
+	 * Asks any solve using this token to stop.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+	
+	/**
+	 * @return whether cancel() has been called
+	 */
+	public boolean isCancelled() {
+		return cancelled;
+	}
+}
@@ -0,0 +1,89 @@
+/**
+ * CandidateBuffer.java
+ *
+ * Preallocated buffers used by a search to group each member's teammates by
+ * their current cost, without allocating at each node.
+ *
+ * Every member is searched at exactly one depth, so each member's slice of the
+ * snapshot's edges is used by that depth alone. One buffer is used by one
+ * search (thread) at a time.
+ */
+
+package oneplusone;
+
+public class CandidateBuffer {
+	private final OrganizationSnapshot snapshot;
+	private final int[] candidates; // per member, their edges grouped by cost
+	private final int[] costs; // scratch, cost of each edge in candidates
+	private final int[][] bucketStart; // depth => start of each cost's group
+
+	/**
+	 * @param snapshot being searched
+	 * @param depths number of depths in the search
+	 */
+	public CandidateBuffer(OrganizationSnapshot snapshot, int depths) {
+		this.snapshot = snapshot;
+		candidates = new int[snapshot.edgeCount()];
+		costs = new int[snapshot.edgeCount()];
+		bucketStart = new int[depths][PairingAssignment.MAX_COST + 2];
+	}
+
+	/**
+	 * Counting sort of a member's candidate edges by their current cost, into the
+	 * member's slice of the buffer. Allocates nothing.
+	 *
+	 * The costs do not change while the member's depth is being searched, as
+	 * every deeper assignment is undone before returning.
+	 *
+	 * @param depth of member
+	 * @param member id
+	 * @param state of the search
+	 * @return start of each cost's group, with start[MAX_COST+1] being the end of
+	 * 	the member's slice. Teammates of cost c are get(start[c]) to
+	 * 	get(start[c+1]-1).
+	 */
+	public int[] sort(int depth, int member, SearchState state) {
+		CostTable table = state.table();
+		int first = snapshot.firstEdge(member);
+		int end = snapshot.endEdge(member);
+		int[] start = bucketStart[depth];
+
+		// count teammates at each cost
+		for (int c = 0; c < start.length; c++) { start[c] = 0; }
+		for (int k = first; k < end; k++) {
+			costs[k] = state.cost(table.candidate(k));
+			start[costs[k] + 1]++;
+		}
+
+		// turn counts into starting positions
+		start[0] = first;
+		for (int c = 1; c < start.length; c++) { start[c] += start[c - 1]; }
+
+		// place each edge, keeping the candidate order within a cost. start[c] is
+		// used as the next free slot, then moved back once all are placed.
+		for (int k = first; k < end; k++) {
+			candidates[start[costs[k]]++] = table.candidate(k);
+		}
+		for (int c = start.length - 1; c > 0; c--) { start[c] = start[c - 1]; }
+		start[0] = first;
+
+		return start;
+	}
+
+	/**
+	 * @param depth
+	 * @return start of each cost's group, as last returned by sort() for the
+	 * 	depth
+	 */
+	public int[] start(int depth) {
+		return bucketStart[depth];
+	}
+
+	/**
+	 * @param k position in buffer
+	 * @return edge at that position
+	 */
+	public int get(int k) {
+		return candidates[k];
+	}
+}
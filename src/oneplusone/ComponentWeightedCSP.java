@@ -0,0 +1,282 @@
+/**
+ * ComponentWeightedCSP.java
+ *
+ * Solves each connected component of the teammate graph as its own
+ * WeightedCSP, instead of searching the whole organization as one problem.
+ *
+ * Members of different components never affect each other's costs, so the
+ * cost of the organization is the sum of the costs of its components, while
+ * the search tree of the whole is the product of theirs. Components are solved
+ * in parallel on a fixed size pool, and their assignments merged into one
+ * PairingAssignment once all are done. search() returns it as it is, solve()
+ * records it into the members.
+ *
+ * Each component is taken out of the snapshot with its members in the order
+ * of the whole snapshot, so its members are searched in the same relative
+ * order as by a WeightedCSP of the whole, up to the order of twins (see
+ * TwinClasses), and the total cost is the same. Members with no teammates are
+ * left without a partner and are never searched.
+ */
+
+package oneplusone;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class ComponentWeightedCSP {
+	private final int parallelism;
+	private ArrayList<Person> people; // compiled into a snapshot on every solve
+	private OrganizationSnapshot snapshot;
+	private int components; // components searched in the last solve
+	private int cost;
+	private int recursiveCalls;
+	private Random random; // seeds each component's search, null if unseeded
+	private PairingSolver engine; // searches each component, null for WeightedCSP
+
+	/**
+	 * Constructor for ComponentWeightedCSP
+	 * @param people, compiled into a snapshot on each solve()
+	 * @param parallelism, most components solved at once
+	 */
+	public ComponentWeightedCSP(ArrayList<Person> people, int parallelism) {
+		this.people = people;
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Constructor for ComponentWeightedCSP
+	 * @param snapshot to solve
+	 * @param parallelism, most components solved at once
+	 */
+	public ComponentWeightedCSP(OrganizationSnapshot snapshot, int parallelism) {
+		this.snapshot = snapshot;
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * @return optimal PairingAssignment, recorded into the members.
+	 */
+	public PairingAssignment solve() {
+		return solve(WeightedCSP.NO_DEADLINE, null);
+	}
+
+	/**
+	 * Solves every component with the same deadline and token. The result is
+	 * optimal only if every component's is.
+	 * @see WeightedCSP.solve(long, CancellationToken)
+	 * @param deadline System.currentTimeMillis() after which to stop, or
+	 * 	WeightedCSP.NO_DEADLINE
+	 * @param token to cancel the solve with, or null
+	 * @return best PairingAssignment found, recorded into the members.
+	 */
+	public PairingAssignment solve(long deadline, CancellationToken token) {
+		PairingAssignment assignment = search(deadline, token);
+		assignment.record();
+		return assignment;
+	}
+
+	/**
+	 * Same as solve(long, CancellationToken), but the assignment is not recorded
+	 * into the members.
+	 * @return best PairingAssignment found
+	 */
+	public PairingAssignment search(final long deadline,
+			final CancellationToken token) {
+		long start = System.currentTimeMillis();
+		if (people != null) { snapshot = OrganizationSnapshot.compile(people); }
+		List<int[]> parts = components(snapshot);
+		components = parts.size();
+
+		// one task per component, run on the calling thread if there is only one
+		final int[] calls = new int[parts.size()]; // part => wBacktracking calls
+		ArrayList<Callable<PairingAssignment>> tasks = 
+				new ArrayList<Callable<PairingAssignment>>();
+		for (int k = 0; k < parts.size(); k++) {
+			final int[] part = parts.get(k);
+			final int index = k;
+			final Random seeded = random == null ? null : new Random(random.nextLong());
+			tasks.add(new Callable<PairingAssignment>() {
+				public PairingAssignment call() {
+					if (engine != null) {
+						return engine.search(snapshot.subset(part), deadline, token, seeded);
+					}
+					WeightedCSP csp = new WeightedCSP(snapshot.subset(part));
+					if (seeded != null) { csp.random = seeded; }
+					PairingAssignment result = csp.search(deadline, token);
+					calls[index] = csp.getRecursiveCalls();
+					return result;
+				}
+			});
+		}
+		ArrayList<PairingAssignment> solved = run(tasks);
+
+		// merge, then record once
+		PairingAssignment assignment = new PairingAssignment(snapshot);
+		cost = 0;
+		recursiveCalls = 0;
+		int lowerBound = 0;
+		boolean optimal = true;
+		SolveStats stats = new SolveStats();
+		for (int k = 0; k < solved.size(); k++) {
+			PairingAssignment part = solved.get(k);
+			assignment.merge(part);
+			if (part.getStats() != null) { stats.add(part.getStats()); }
+			cost += part.getCost();
+			lowerBound += part.getLowerBound();
+			optimal &= part.isOptimal();
+			recursiveCalls += calls[k];
+		}
+		assignment.setResult(cost, lowerBound, optimal);
+		stats.cost = cost;
+		stats.lowerBound = lowerBound;
+		stats.optimal = optimal;
+		stats.solveMillis = System.currentTimeMillis() - start;
+		assignment.setStats(stats);
+
+		return assignment;
+	}
+
+	/**
+	 * Makes solves repeatable: each component is searched with a random seeded
+	 * from this one, in the order components are started.
+	 * @param random to seed components from, or null for unseeded
+	 */
+	public void setRandom(Random random) {
+		this.random = random;
+	}
+
+	/**
+	 * Solves each component with an engine of its own instead of a WeightedCSP.
+	 * @param engine to search every component with, or null for WeightedCSP
+	 */
+	public void setEngine(PairingSolver engine) {
+		this.engine = engine;
+	}
+
+	/**
+	 * Runs the tasks on a pool of at most parallelism threads.
+	 * @return results of the tasks, in order
+	 */
+	private ArrayList<PairingAssignment> run(
+			ArrayList<Callable<PairingAssignment>> tasks) {
+		ArrayList<PairingAssignment> results = new ArrayList<PairingAssignment>();
+		try {
+			if (tasks.size() <= 1 || parallelism <= 1) {
+				for (Callable<PairingAssignment> task : tasks) { 
+					results.add(task.call()); 
+				}
+				return results;
+			}
+
+			ExecutorService pool =
+					Executors.newFixedThreadPool(Math.min(parallelism, tasks.size()));
+			try {
+				for (Future<PairingAssignment> result : pool.invokeAll(tasks)) {
+					results.add(result.get());
+				}
+			} finally {
+				pool.shutdown();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while solving", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Solving a component failed", 
+					e.getCause());
+		} catch (Exception e) {
+			throw new IllegalStateException("Solving a component failed", e);
+		}
+		return results;
+	}
+
+	/**
+	 * Splits the members of a snapshot into the connected components of its
+	 * teammate graph, largest first. Members with no teammates are left out.
+	 * @param snapshot
+	 * @return ids of the members of each component, in snapshot order
+	 */
+	static List<int[]> components(OrganizationSnapshot snapshot) {
+		int n = snapshot.size();
+		int[] parent = new int[n];
+		for (int i = 0; i < n; i++) { parent[i] = i; }
+		for (int i = 0; i < n; i++) {
+			for (int e = snapshot.firstEdge(i); e < snapshot.endEdge(i); e++) {
+				int a = root(parent, i);
+				int b = root(parent, snapshot.neighbor(e));
+				if (a != b) { parent[Math.max(a, b)] = Math.min(a, b); }
+			}
+		}
+
+		// members with a teammate, or who are someone's teammate, by root
+		boolean[] connected = new boolean[n];
+		for (int i = 0; i < n; i++) {
+			for (int e = snapshot.firstEdge(i); e < snapshot.endEdge(i); e++) {
+				connected[i] = true;
+				connected[snapshot.neighbor(e)] = true;
+			}
+		}
+		// count the members of each component, then fill them in
+		int[] size = new int[n];
+		for (int i = 0; i < n; i++) {
+			if (connected[i]) { size[root(parent, i)]++; }
+		}
+		int[][] byRoot = new int[n][];
+		int[] filled = new int[n];
+		ArrayList<int[]> parts = new ArrayList<int[]>();
+		for (int i = 0; i < n; i++) {
+			if (!connected[i]) { continue; }
+			int r = root(parent, i);
+			if (r == i) {
+				byRoot[i] = new int[size[i]];
+				parts.add(byRoot[i]);
+			}
+			byRoot[r][filled[r]++] = i;
+		}
+
+		// the largest components take longest, start them first
+		Collections.sort(parts, new Comparator<int[]>() {
+			public int compare(int[] a, int[] b) {
+				return b.length - a.length;
+			}
+		});
+		return parts;
+	}
+
+	private static int root(int[] parent, int i) {
+		while (parent[i] != i) {
+			parent[i] = parent[parent[i]];
+			i = parent[i];
+		}
+		return i;
+	}
+
+	/**
+	 * @return number of components searched in the last solve
+	 */
+	public int getComponents() {
+		return components;
+	}
+
+	/**
+	 * @return total cost of the assignment found by the last solve
+	 */
+	public int getCost() {
+		return cost;
+	}
+
+	/**
+	 * @return calls to wBacktracking over all components in the last solve, 
+	 * 	none if they were searched by another engine
+	 */
+	public int getRecursiveCalls() {
+		return recursiveCalls;
+	}
+}
@@ -0,0 +1,101 @@
+/**
+ * CostTable.java
+ *
+ * History-derived part of the cost of every edge of an OrganizationSnapshot,
+ * worked out once per solve.
+ *
+ * The cost of pairing with a teammate (see PairingAssignment.getSortedTeammates)
+ * depends on two things that are fixed for a whole solve, whether they were
+ * matched last time and whether they were matched in this cycle, and two that
+ * depend on the search, whether the pair is already made and whether the
+ * teammate already has a partner. The table stores, per edge, the cost for
+ * both values of "teammate already has a partner". SearchState keeps the rest.
+ *
+ * Each member's edges are also shuffled into a candidate order once per solve,
+ * so teammates of the same cost are still tried in a random order.
+ */
+
+package oneplusone;
+
+import java.util.Random;
+
+public class CostTable {
+	private final OrganizationSnapshot snapshot;
+	private final byte[] freeCost; // edge => cost if teammate has no partner
+	private final byte[] takenCost; // edge => cost if teammate has a partner
+	private final int[] candidates; // per member, their edges in random order
+
+	/**
+	 * Builds the cost table for a snapshot.
+	 * @param snapshot to build table for
+	 * @param random used to order teammates of the same cost
+	 */
+	public CostTable(OrganizationSnapshot snapshot, Random random) {
+		this.snapshot = snapshot;
+		int edges = snapshot.edgeCount();
+		freeCost = new byte[edges];
+		takenCost = new byte[edges];
+		candidates = new int[edges];
+
+		for (int e = 0; e < edges; e++) {
+			if (snapshot.matchedLastTime(e)) {
+				freeCost[e] = 4;
+				takenCost[e] = 5;
+			} else if (snapshot.matchedInCycle(e)) {
+				freeCost[e] = 3;
+				takenCost[e] = 3;
+			} else {
+				freeCost[e] = 1;
+				takenCost[e] = 2;
+			}
+			candidates[e] = e;
+		}
+
+		// shuffle each member's slice of candidates
+		for (int i = 0; i < snapshot.size(); i++) {
+			int first = snapshot.firstEdge(i);
+			for (int k = snapshot.endEdge(i) - 1; k > first; k--) {
+				int swap = first + random.nextInt(k - first + 1);
+				int tmp = candidates[k];
+				candidates[k] = candidates[swap];
+				candidates[swap] = tmp;
+			}
+		}
+	}
+
+	/**
+	 * @return the snapshot this table was built for
+	 */
+	public OrganizationSnapshot snapshot() {
+		return snapshot;
+	}
+
+	/**
+	 * @param edge
+	 * @param teammateTaken whether the teammate already has a partner
+	 * @return cost of a new pairing across the edge
+	 */
+	public int cost(int edge, boolean teammateTaken) {
+		return teammateTaken ? takenCost[edge] : freeCost[edge];
+	}
+
+	/**
+	 * @param edge
+	 * @return cost of a new pairing across the edge if the teammate has no
+	 * 	partner, which is the lowest it can be short of the pair already being
+	 * 	made.
+	 */
+	public int freeCost(int edge) {
+		return freeCost[edge];
+	}
+
+	/**
+	 * Candidates of member i are candidate(k) for k from snapshot.firstEdge(i)
+	 * to snapshot.endEdge(i)-1.
+	 * @param k position in candidate order
+	 * @return edge at that position
+	 */
+	public int candidate(int k) {
+		return candidates[k];
+	}
+}
@@ -0,0 +1,277 @@
+/**
+ * DynamicOrder.java
+ *
+ * Chooses the member to search next from the state of the search, instead of
+ * the fixed order of WeightedCSP.sortMembers(). The next member is the one
+ * with the fewest teammates at their lowest current cost, ties going to the
+ * member with fewer teammates.
+ *
+ * For each member, the number of teammates at each cost is kept up to date as
+ * pairs are made and members gain and lose partners. SearchState reports the
+ * changes, as for LowerBound. Members not searched yet are kept in buckets by
+ * their number of teammates at the lowest cost, then by degree, and move
+ * between buckets as their counts change. Choosing takes the first member of
+ * the lowest bucket that is not empty, without looking at the others.
+ *
+ * LowerBound depends on a fixed order, so this keeps a weaker bound of its
+ * own. Each member not reached yet who has no partner must be covered by a
+ * later pick, which costs at least their cheapest teammate, and one pick
+ * covers at most two such members. Half the sum of their cheapest costs is a
+ * lower bound on the cost still to come.
+ */
+
+package oneplusone;
+
+public class DynamicOrder {
+	private static final int COSTS = PairingAssignment.MAX_COST + 1;
+	private final OrganizationSnapshot snapshot;
+	private final CostTable table;
+	private final SearchState state;
+	private final int[] counts; // member * COSTS + cost => teammates at cost
+	private final int[] inOffsets; // id => first of the edges into member
+	private final int[] inEdges; // edges into each member, by member
+	private final int[] inOwners; // same index as inEdges => member edge is of
+	private final int[] cheapest; // id => lowest free cost either way, 0 if none
+	private final int[] chosen; // depth => member chosen there
+	private final boolean[] searched;
+	private final int[] degreeRank; // degree => rank among the members' degrees
+	private final int ranks; // distinct degrees
+	private final int[] bucketHead; // options * ranks + degree rank => first
+		// member in bucket, -1 if empty
+	private final int[] bucketNext; // id => next member in bucket, -1 if last
+	private final int[] bucketPrevious; // id => previous member, -1 if first
+	private final int[] bucket; // id => bucket member is in, -1 if searched
+	private int lowest; // no bucket below this one has members
+	private int depth;
+	private int unpairedCost; // sum of cheapest of unsearched without partner
+	private final int root;
+
+	/**
+	 * @param state of the search, before any pair is made
+	 */
+	public DynamicOrder(SearchState state) {
+		this.state = state;
+		table = state.table();
+		snapshot = table.snapshot();
+		int n = snapshot.size();
+
+		counts = new int[n * COSTS];
+		cheapest = new int[n];
+		for (int i = 0; i < n; i++) {
+			for (int e = snapshot.firstEdge(i); e < snapshot.endEdge(i); e++) {
+				counts[i * COSTS + state.cost(e)]++;
+
+				int c = table.freeCost(e);
+				int back = snapshot.reverse(e);
+				if (back != -1) { c = Math.min(c, table.freeCost(back)); }
+				int j = snapshot.neighbor(e);
+				if (cheapest[i] == 0 || c < cheapest[i]) { cheapest[i] = c; }
+				if (cheapest[j] == 0 || c < cheapest[j]) { cheapest[j] = c; }
+			}
+		}
+
+		// edges into each member, so that a member gaining a partner can update
+		// everyone who could pick them
+		inOffsets = new int[n + 1];
+		for (int e = 0; e < snapshot.edgeCount(); e++) {
+			inOffsets[snapshot.neighbor(e) + 1]++;
+		}
+		for (int i = 0; i < n; i++) { inOffsets[i + 1] += inOffsets[i]; }
+		inEdges = new int[snapshot.edgeCount()];
+		inOwners = new int[snapshot.edgeCount()];
+		int[] next = inOffsets.clone();
+		for (int i = 0; i < n; i++) {
+			for (int e = snapshot.firstEdge(i); e < snapshot.endEdge(i); e++) {
+				int k = next[snapshot.neighbor(e)]++;
+				inEdges[k] = e;
+				inOwners[k] = i;
+			}
+		}
+
+		// buckets of members by options, then degree
+		degreeRank = new int[snapshot.maxDegree() + 1];
+		for (int i = 0; i < n; i++) { degreeRank[snapshot.degree(i)] = 1; }
+		int rank = 0;
+		for (int d = 0; d < degreeRank.length; d++) {
+			if (degreeRank[d] == 1) { degreeRank[d] = rank++; }
+		}
+		ranks = rank;
+		bucketHead = new int[(snapshot.maxDegree() + 1) * ranks];
+		for (int b = 0; b < bucketHead.length; b++) { bucketHead[b] = -1; }
+		bucketNext = new int[n];
+		bucketPrevious = new int[n];
+		bucket = new int[n];
+		lowest = bucketHead.length;
+		for (int i = n - 1; i >= 0; i--) { insert(i); }
+
+		for (int i = 0; i < n; i++) {
+			if (!state.hasPartner(i)) { unpairedCost += cheapest[i]; }
+		}
+		chosen = new int[n];
+		searched = new boolean[n];
+		root = value();
+	}
+
+	/**
+	 * @return lower bound on the cost of the members not searched yet
+	 */
+	public int value() {
+		return (unpairedCost + 1) / 2;
+	}
+
+	/**
+	 * @return lower bound on the cost of a whole assignment
+	 */
+	public int root() {
+		return root;
+	}
+
+	/**
+	 * @param member id
+	 * @return whether the member has been chosen at this depth or above
+	 */
+	public boolean isSearched(int member) {
+		return searched[member];
+	}
+
+	/**
+	 * Chooses the member to search at the current depth, and moves down to the
+	 * next depth.
+	 * @return id of member
+	 */
+	public int next() {
+		while (bucketHead[lowest] == -1) { lowest++; }
+		int member = bucketHead[lowest];
+		remove(member);
+		chosen[depth++] = member;
+
+		searched[member] = true;
+		if (!state.hasPartner(member)) { unpairedCost -= cheapest[member]; }
+		return member;
+	}
+
+	/**
+	 * Reverses next(). The state must be as it was after next().
+	 */
+	public void previous() {
+		int member = chosen[--depth];
+		searched[member] = false;
+		if (!state.hasPartner(member)) { unpairedCost += cheapest[member]; }
+		insert(member);
+	}
+
+	/**
+	 * Puts a member first in the bucket of their options and degree.
+	 */
+	private void insert(int member) {
+		int b = cheapestOptions(member) * ranks + degreeRank[snapshot.degree(member)];
+		bucket[member] = b;
+		bucketPrevious[member] = -1;
+		bucketNext[member] = bucketHead[b];
+		if (bucketHead[b] != -1) { bucketPrevious[bucketHead[b]] = member; }
+		bucketHead[b] = member;
+		if (b < lowest) { lowest = b; }
+	}
+
+	/**
+	 * Takes a member out of their bucket.
+	 */
+	private void remove(int member) {
+		int b = bucket[member];
+		if (bucketPrevious[member] == -1) {
+			bucketHead[b] = bucketNext[member];
+		} else {
+			bucketNext[bucketPrevious[member]] = bucketNext[member];
+		}
+		if (bucketNext[member] != -1) {
+			bucketPrevious[bucketNext[member]] = bucketPrevious[member];
+		}
+		bucket[member] = -1;
+	}
+
+	/**
+	 * Moves a member not searched yet to the bucket of their counts now.
+	 */
+	private void rebucket(int member) {
+		if (bucket[member] == -1) { return; }
+		int b = cheapestOptions(member) * ranks + degreeRank[snapshot.degree(member)];
+		if (b != bucket[member]) {
+			remove(member);
+			insert(member);
+		}
+	}
+
+	/**
+	 * @return number of teammates at the member's lowest current cost, 0 if the
+	 * 	member has no teammates
+	 */
+	private int cheapestOptions(int member) {
+		for (int c = member * COSTS; c < (member + 1) * COSTS; c++) {
+			if (counts[c] > 0) { return counts[c]; }
+		}
+		return 0;
+	}
+
+	/**
+	 * Moves the k-th edge into a member from one cost to another, in the counts
+	 * of the member it goes out of.
+	 */
+	private void move(int k, int from, int to) {
+		counts[inOwners[k] * COSTS + from]--;
+		counts[inOwners[k] * COSTS + to]++;
+		rebucket(inOwners[k]);
+	}
+
+	/**
+	 * Called by SearchState when a pair is made or undone, after the edges are
+	 * marked and before partners are counted.
+	 * @param member id
+	 * @param edge from member to teammate
+	 */
+	void toggle(int member, int edge) {
+		int teammate = snapshot.neighbor(edge);
+		int back = snapshot.reverse(edge);
+		if (state.isPaired(edge)) {
+			counts[member * COSTS + table.cost(edge, state.hasPartner(teammate))]--;
+			counts[member * COSTS]++;
+			if (back != -1) {
+				counts[teammate * COSTS + table.cost(back, state.hasPartner(member))]--;
+				counts[teammate * COSTS]++;
+			}
+		} else {
+			counts[member * COSTS]--;
+			counts[member * COSTS + table.cost(edge, state.hasPartner(teammate))]++;
+			if (back != -1) {
+				counts[teammate * COSTS]--;
+				counts[teammate * COSTS + table.cost(back, state.hasPartner(member))]++;
+			}
+		}
+		rebucket(member);
+		rebucket(teammate);
+	}
+
+	/**
+	 * Called by SearchState when a member gains their first partner. Picking
+	 * them now costs the taken cost.
+	 * @param member id
+	 */
+	void paired(int member) {
+		if (!searched[member]) { unpairedCost -= cheapest[member]; }
+		for (int k = inOffsets[member]; k < inOffsets[member + 1]; k++) {
+			int e = inEdges[k];
+			if (!state.isPaired(e)) { move(k, table.cost(e, false), table.cost(e, true)); }
+		}
+	}
+
+	/**
+	 * Called by SearchState when a member loses their last partner.
+	 * @param member id
+	 */
+	void unpaired(int member) {
+		if (!searched[member]) { unpairedCost += cheapest[member]; }
+		for (int k = inOffsets[member]; k < inOffsets[member + 1]; k++) {
+			int e = inEdges[k];
+			if (!state.isPaired(e)) { move(k, table.cost(e, true), table.cost(e, false)); }
+		}
+	}
+}
@@ -0,0 +1,160 @@
+/**
+ * Incumbent.java
+ *
+ * Quick starting solutions for WeightedCSP, whose cost is passed to the search
+ * as the cost to beat, so that it prunes from the first node instead of only
+ * once it has found a first assignment by itself.
+ *
+ * Each solution is a matching, given as the edge from each member to their
+ * mate, or -1 for members left for the search order to pair:
+ *
+ * 	greedy() matches free members across their cheapest edges first.
+ *
+ * 	repairLastWeek() starts from last week's pairs, which all cost the most
+ * 	now that they were matched last time. Two of last week's pairs are crossed
+ * 	into two new pairs, where the four of them are teammates, so that nearly
+ * 	everyone who had a partner last week has a new one. Members left over are
+ * 	matched greedily. When this week's teams are much like last week's, most
+ * 	pairs can be crossed.
+ *
+ * WeightedCSP replays a matching in its search order, counting its cost as
+ * the search would.
+ */
+
+package oneplusone;
+
+public class Incumbent {
+
+	/**
+	 * Matches members greedily, cheapest free cost first. Edges of the same cost
+	 * are taken in search order, then in candidate order.
+	 * @param table costs of the snapshot being searched
+	 * @param sortedMembers ids in the order they are searched
+	 * @return edge from each member to their mate, or -1
+	 */
+	public static int[] greedy(CostTable table, int[] sortedMembers) {
+		int[] mate = new int[sortedMembers.length];
+		for (int i = 0; i < mate.length; i++) { mate[i] = -1; }
+		fill(table, sortedMembers, mate);
+		return mate;
+	}
+
+	/**
+	 * Crosses pairs of last week's pairs into new pairs, then matches the members
+	 * left over greedily.
+	 * @param table costs of the snapshot being searched
+	 * @param sortedMembers ids in the order they are searched
+	 * @return edge from each member to their mate, or -1
+	 */
+	public static int[] repairLastWeek(CostTable table, int[] sortedMembers) {
+		OrganizationSnapshot snapshot = table.snapshot();
+		int[] mate = new int[sortedMembers.length];
+		for (int i = 0; i < mate.length; i++) { mate[i] = -1; }
+
+		// last week's pairs, taking each member in at most one
+		boolean[] used = new boolean[sortedMembers.length];
+		int[] pairs = new int[sortedMembers.length]; // edges of last week's pairs
+		int count = 0;
+		for (int i : sortedMembers) {
+			for (int e = snapshot.firstEdge(i); e < snapshot.endEdge(i); e++) {
+				int j = snapshot.neighbor(e);
+				if (snapshot.matchedLastTime(e) && snapshot.reverse(e) != -1
+						&& !used[i] && !used[j]) {
+					used[i] = used[j] = true;
+					pairs[count++] = e;
+				}
+			}
+		}
+
+		// cross each pair with the next one it can be crossed with. A pair that
+		// cannot be crossed with the one waiting takes its place.
+		int waiting = -1;
+		for (int k = 0; k < count; k++) {
+			if (waiting == -1 || !cross(table, pairs[waiting], pairs[k], mate)) {
+				waiting = k;
+			} else {
+				waiting = -1;
+			}
+		}
+
+		fill(table, sortedMembers, mate);
+		return mate;
+	}
+
+	/**
+	 * Crosses pairs a-b and c-d into a-c and b-d, or into a-d and b-c, whichever
+	 * is cheaper. Each new pair must be between mutual teammates who were not
+	 * matched last time.
+	 * @return whether the pairs were crossed
+	 */
+	private static boolean cross(CostTable table, int first, int second,
+			int[] mate) {
+		OrganizationSnapshot snapshot = table.snapshot();
+		int a = snapshot.neighbor(snapshot.reverse(first));
+		int b = snapshot.neighbor(first);
+		int c = snapshot.neighbor(snapshot.reverse(second));
+		int d = snapshot.neighbor(second);
+
+		int ac = fresh(table, a, c);
+		int bd = fresh(table, b, d);
+		int ad = fresh(table, a, d);
+		int bc = fresh(table, b, c);
+		int straight = ac != -1 && bd != -1
+				? table.freeCost(ac) + table.freeCost(bd) : Integer.MAX_VALUE;
+		int crossed = ad != -1 && bc != -1
+				? table.freeCost(ad) + table.freeCost(bc) : Integer.MAX_VALUE;
+		if (straight == Integer.MAX_VALUE && crossed == Integer.MAX_VALUE) {
+			return false;
+		}
+
+		if (straight <= crossed) {
+			match(snapshot, ac, mate);
+			match(snapshot, bd, mate);
+		} else {
+			match(snapshot, ad, mate);
+			match(snapshot, bc, mate);
+		}
+		return true;
+	}
+
+	/**
+	 * @return edge from member to teammate if they are mutual teammates and were
+	 * 	not matched last time, or -1
+	 */
+	private static int fresh(CostTable table, int member, int teammate) {
+		OrganizationSnapshot snapshot = table.snapshot();
+		for (int e = snapshot.firstEdge(member); e < snapshot.endEdge(member); e++) {
+			if (snapshot.neighbor(e) == teammate) {
+				return snapshot.reverse(e) != -1 && !snapshot.matchedLastTime(e)
+						? e : -1;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Matches every member without a mate to a teammate without one, cheapest
+	 * free cost first.
+	 */
+	private static void fill(CostTable table, int[] sortedMembers, int[] mate) {
+		OrganizationSnapshot snapshot = table.snapshot();
+		for (int cost = 1; cost <= PairingAssignment.MAX_COST; cost++) {
+			for (int i : sortedMembers) {
+				for (int k = snapshot.firstEdge(i);
+						k < snapshot.endEdge(i) && mate[i] == -1; k++) {
+					int e = table.candidate(k);
+					if (table.freeCost(e) == cost && snapshot.reverse(e) != -1
+							&& mate[snapshot.neighbor(e)] == -1) {
+						match(snapshot, e, mate);
+					}
+				}
+			}
+		}
+	}
+
+	private static void match(OrganizationSnapshot snapshot, int edge,
+			int[] mate) {
+		mate[snapshot.neighbor(snapshot.reverse(edge))] = edge;
+		mate[snapshot.neighbor(edge)] = snapshot.reverse(edge);
+	}
+}
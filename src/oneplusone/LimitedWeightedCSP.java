@@ -0,0 +1,198 @@
+/**
+ * LimitedWeightedCSP.java
+ *
+ * Searches a snapshot with each member trying only a few of their teammates,
+ * for organizations with teams so large (a company-wide team makes everyone a
+ * teammate of everyone) that sorting every teammate at every node is where
+ * the search spends its time.
+ *
+ * Each member keeps the limit cheapest of their teammates by the cost their
+ * history gives (see CostTable), teammates of equal cost being chosen at
+ * random so that pairs still vary from week to week. A teammate kept by either
+ * member of a pair is kept by both, so that a member who is picked can pick
+ * their partner back. Each node then sorts a few teammates instead of all of
+ * them.
+ *
+ * Leaving teammates out can put the best pairing out of reach. Before the
+ * limited search, the whole snapshot is searched for a moment: its starting
+ * solutions and first nodes (see WeightedCSP.solve(long, CancellationToken)),
+ * which are kept if the limited search does no better. If the limited search
+ * ends before the deadline without meeting the lower bound below, the limit
+ * is doubled and it searches again, up to searching every teammate.
+ *
+ * Either search stops once it meets a lower bound of the whole snapshot, the
+ * greater of LowerBound.pairs() and the quick search's, as nothing can do
+ * better. The result is proven optimal then, or if every teammate was
+ * searched. Otherwise the gap between its cost and the lower bound is the
+ * most that limiting, or running out of time, may have cost.
+ */
+
+package oneplusone;
+
+import java.util.Random;
+
+public class LimitedWeightedCSP {
+	public static final int DEFAULT_LIMIT = 4; // teammates kept per member
+	private final OrganizationSnapshot snapshot;
+	private final int limit;
+	private Random random = new Random(); // orders teammates of equal cost
+	private int searchedLimit; // limit of the last search, after widening
+	private int widenings; // times the limit was doubled in the last search
+	private int cost;
+
+	/**
+	 * Constructor for LimitedWeightedCSP
+	 * @param snapshot to solve
+	 * @param limit teammates kept per member, at least 1
+	 */
+	public LimitedWeightedCSP(OrganizationSnapshot snapshot, int limit) {
+		this.snapshot = snapshot;
+		this.limit = Math.max(1, limit);
+	}
+
+	/**
+	 * @return best PairingAssignment found, recorded into the members.
+	 */
+	public PairingAssignment solve() {
+		return solve(WeightedCSP.NO_DEADLINE, null);
+	}
+
+	/**
+	 * Every search, the quick one and each limited one, is given the same
+	 * deadline and token. Once they have passed, the limit is no longer widened.
+	 * @see WeightedCSP.solve(long, CancellationToken)
+	 * @param deadline System.currentTimeMillis() after which to stop, or
+	 * 	WeightedCSP.NO_DEADLINE
+	 * @param token to cancel the solve with, or null
+	 * @return best PairingAssignment found, recorded into the members.
+	 */
+	public PairingAssignment solve(long deadline, CancellationToken token) {
+		PairingAssignment assignment = search(deadline, token);
+		assignment.record();
+		return assignment;
+	}
+
+	/**
+	 * Same as solve(long, CancellationToken), but the assignment is not recorded
+	 * into the members.
+	 * @return best PairingAssignment found
+	 */
+	public PairingAssignment search(long deadline, CancellationToken token) {
+		long start = System.currentTimeMillis();
+		SolveStats stats = new SolveStats();
+		searchedLimit = limit;
+		widenings = 0;
+
+		// a moment of searching the whole snapshot, which may even finish
+		int pairs = LowerBound.pairs(new CostTable(snapshot, random));
+		WeightedCSP whole = new WeightedCSP(snapshot);
+		whole.random = random;
+		whole.setGoal(pairs);
+		PairingAssignment quick = whole.search(start, token);
+		stats.add(whole.getStats());
+		int lowerBound = Math.max(pairs, quick.getLowerBound());
+		PairingAssignment assignment = quick;
+
+		while (!quick.isOptimal()) {
+			boolean everyone = searchedLimit >= snapshot.maxDegree();
+			OrganizationSnapshot limited =
+					everyone ? snapshot : limit(snapshot, searchedLimit, random);
+			WeightedCSP csp = new WeightedCSP(limited);
+			csp.random = random;
+			csp.setGoal(lowerBound);
+			PairingAssignment result = csp.search(deadline, token);
+			stats.add(csp.getStats());
+
+			if (everyone) {
+				lowerBound = Math.max(lowerBound, result.getLowerBound());
+			}
+			if (result.getCost() <= assignment.getCost()) { assignment = result; }
+
+			// a limited search that ends without meeting the bound may have been
+			// kept from it by the limit
+			if (everyone || result.getCost() <= lowerBound || !result.isOptimal()
+					|| outOfTime(deadline, token)) {
+				break;
+			}
+			searchedLimit *= 2;
+			widenings++;
+		}
+
+		cost = assignment.getCost();
+		lowerBound = Math.min(lowerBound, cost);
+		assignment.setResult(cost, lowerBound, cost <= lowerBound);
+		stats.cost = cost;
+		stats.lowerBound = lowerBound;
+		stats.optimal = assignment.isOptimal();
+		stats.solveMillis = System.currentTimeMillis() - start;
+		assignment.setStats(stats);
+		return assignment;
+	}
+
+	/**
+	 * Keeps the given number of each member's cheapest teammates, ties going
+	 * to those first in CostTable's shuffled candidate order, and the other
+	 * direction of each kept teammate.
+	 * @param snapshot to limit
+	 * @param limit teammates kept per member
+	 * @param random to shuffle teammates of equal cost with
+	 * @return snapshot with the same members and ids
+	 */
+	public static OrganizationSnapshot limit(OrganizationSnapshot snapshot, int limit,
+			Random random) {
+		CostTable table = new CostTable(snapshot, random);
+		boolean[] keep = new boolean[snapshot.edgeCount()];
+		for (int i = 0; i < snapshot.size(); i++) {
+			int kept = 0;
+			for (int c = 1; c <= PairingAssignment.MAX_COST && kept < limit; c++) {
+				for (int k = snapshot.firstEdge(i);
+						k < snapshot.endEdge(i) && kept < limit; k++) {
+					int e = table.candidate(k);
+					if (table.freeCost(e) != c) { continue; }
+					keep[e] = true;
+					if (snapshot.reverse(e) != -1) { keep[snapshot.reverse(e)] = true; }
+					kept++;
+				}
+			}
+		}
+		return snapshot.keepEdges(keep);
+	}
+
+	/**
+	 * @return whether the deadline has passed or the token is cancelled
+	 */
+	private static boolean outOfTime(long deadline, CancellationToken token) {
+		return (token != null && token.isCancelled())
+				|| (deadline != WeightedCSP.NO_DEADLINE
+						&& System.currentTimeMillis() >= deadline);
+	}
+
+	/**
+	 * Makes solves repeatable.
+	 * @param random to order and choose teammates of equal cost with
+	 */
+	public void setRandom(Random random) {
+		this.random = random;
+	}
+
+	/**
+	 * @return teammates kept per member in the last solve, after widening
+	 */
+	public int getSearchedLimit() {
+		return searchedLimit;
+	}
+
+	/**
+	 * @return number of times the limit was doubled in the last solve
+	 */
+	public int getWidenings() {
+		return widenings;
+	}
+
+	/**
+	 * @return cost of the assignment found by the last solve
+	 */
+	public int getCost() {
+		return cost;
+	}
+}
@@ -0,0 +1,317 @@
+/**
+ * LowerBound.java
+ *
+ * Admissible lower bound on the cost still to be paid by the members that the
+ * search has not reached yet, kept up to date as the search moves.
+ *
+ * A member who is reached without a partner pays at least their cheapest
+ * teammate's cost. A member who already has a partner may pay nothing. So may
+ * a member who could still be picked by someone searched before them, so
+ * those members count for nothing either. The bound is the sum, over the
+ * members left, of the cheapest cost of those who have no partner and can no
+ * longer be picked before their turn.
+ *
+ * With forward checking, the cheapest cost is checked as pairs are made: a
+ * teammate who has a partner costs the taken cost, which is never less than
+ * the free one, and keeps costing it until the member's turn. So each
+ * member's cheapest cost is that of their teammates as they are now, and the
+ * bound rises as soon as a member's cheap teammates are taken, before the
+ * search reaches them. Otherwise it is their cheapest free cost.
+ *
+ * SearchState reports members gaining their first partner or losing their
+ * last one. The search reports moving down and up a depth.
+ */
+
+package oneplusone;
+
+public class LowerBound {
+	private static final int COSTS = PairingAssignment.MAX_COST + 1;
+	private final CostTable table;
+	private final int[] position; // id => depth at which member is searched
+	private final int[] cheapest; // id => lowest free cost of any teammate, 0 if none
+	private final int[] pickerStart; // id => first of pickerEdges to them
+	private final int[] pickerEdges; // edges to each member that cost more once
+		// the member has a partner, grouped by member
+	private final int[] picker; // edge => member it is from
+	private final int[] costCount; // id * COSTS + c => teammates costing c now
+	private final int[] least; // id => lowest cost of any teammate now, 0 if none
+	private final boolean[] partnered; // id => has a partner
+	private final int[] lastPicker; // id => deepest earlier depth able to pick them
+	private final int[] sortedMembers; // depth => id
+	private final int[] activationStart; // depth => first of activated
+	private final int[] activated; // ids whose lastPicker is depth-1, by depth
+	private final int root;
+	private int depth;
+	private int value;
+
+	/**
+	 * @param table costs of the snapshot being searched
+	 * @param sortedMembers ids in the order they are searched
+	 */
+	public LowerBound(CostTable table, int[] sortedMembers) {
+		this(table, sortedMembers, false);
+	}
+
+	/**
+	 * @param table costs of the snapshot being searched
+	 * @param sortedMembers ids in the order they are searched
+	 * @param forwardChecking whether members' cheapest costs follow the pairs
+	 * 	made
+	 */
+	public LowerBound(CostTable table, int[] sortedMembers, 
+			boolean forwardChecking) {
+		OrganizationSnapshot snapshot = table.snapshot();
+		int n = sortedMembers.length;
+		this.table = table;
+		this.sortedMembers = sortedMembers;
+		position = new int[n];
+		for (int d = 0; d < n; d++) { position[sortedMembers[d]] = d; }
+
+		// cheapest cost of each member, and the last member before them in the
+		// search that has an edge to them.
+		cheapest = new int[n];
+		lastPicker = new int[n];
+		for (int i = 0; i < n; i++) { lastPicker[i] = -1; }
+		for (int i = 0; i < n; i++) {
+			int min = 0;
+			for (int e = snapshot.firstEdge(i); e < snapshot.endEdge(i); e++) {
+				if (min == 0 || table.freeCost(e) < min) { min = table.freeCost(e); }
+
+				int picked = snapshot.neighbor(e);
+				if (position[i] < position[picked]) {
+					lastPicker[picked] = Math.max(lastPicker[picked], position[i]);
+				}
+			}
+			cheapest[i] = min;
+		}
+		least = cheapest.clone();
+		partnered = new boolean[n];
+
+		// teammates of each member at each cost, all free, and the edges to each
+		// member whose cost goes up once the member has a partner
+		costCount = new int[n * COSTS];
+		pickerStart = new int[n + 1];
+		picker = new int[snapshot.edgeCount()];
+		for (int i = 0; i < n; i++) {
+			for (int e = snapshot.firstEdge(i); e < snapshot.endEdge(i); e++) {
+				costCount[i * COSTS + table.freeCost(e)]++;
+				picker[e] = i;
+				if (forwardChecking && table.cost(e, true) != table.freeCost(e)) {
+					pickerStart[snapshot.neighbor(e) + 1]++;
+				}
+			}
+		}
+		for (int i = 0; i < n; i++) { pickerStart[i + 1] += pickerStart[i]; }
+		pickerEdges = new int[pickerStart[n]];
+		int[] filled = pickerStart.clone();
+		for (int e = 0; e < snapshot.edgeCount() && forwardChecking; e++) {
+			if (table.cost(e, true) != table.freeCost(e)) {
+				pickerEdges[filled[snapshot.neighbor(e)]++] = e;
+			}
+		}
+
+		// group members by the depth after which nobody earlier can pick them
+		activationStart = new int[n + 2];
+		for (int i = 0; i < n; i++) { activationStart[lastPicker[i] + 2]++; }
+		for (int d = 1; d < activationStart.length; d++) {
+			activationStart[d] += activationStart[d - 1];
+		}
+		activated = new int[n];
+		int[] next = activationStart.clone();
+		for (int i = 0; i < n; i++) { activated[next[lastPicker[i] + 1]++] = i; }
+
+		depth = 0;
+		value = 0;
+		for (int k = activationStart[0]; k < activationStart[1]; k++) {
+			value += cheapest[activated[k]];
+		}
+		root = value;
+	}
+
+	/**
+	 * Copies another bound, so a copy can follow another thread's search.
+	 * @param other bound to copy
+	 */
+	public LowerBound(LowerBound other) {
+		table = other.table;
+		position = other.position;
+		cheapest = other.cheapest;
+		pickerStart = other.pickerStart;
+		pickerEdges = other.pickerEdges;
+		picker = other.picker;
+		costCount = other.costCount.clone();
+		least = other.least.clone();
+		partnered = other.partnered.clone();
+		lastPicker = other.lastPicker;
+		sortedMembers = other.sortedMembers;
+		activationStart = other.activationStart;
+		activated = other.activated;
+		root = other.root;
+		depth = other.depth;
+		value = other.value;
+	}
+
+	/**
+	 * @return lower bound on the cost of the members from the current depth on
+	 */
+	public int value() {
+		return value;
+	}
+
+	/**
+	 * @return lower bound on the cost of a whole assignment
+	 */
+	public int root() {
+		return root;
+	}
+
+	/**
+	 * Lower bound on the cost of a whole assignment that does not depend on the
+	 * search order. Every member with a teammate ends up with a partner, and a
+	 * pick gives a partner to at most two of them, so at least half of them, 
+	 * rounded up, pick someone, each at least their cheapest cost. Often higher 
+	 * than root() in large teams, where nearly everyone can be picked before 
+	 * their turn.
+	 * @param table costs of the snapshot being searched
+	 * @return sum of the lowest cheapest costs of half the members with teammates
+	 */
+	public static int pairs(CostTable table) {
+		OrganizationSnapshot snapshot = table.snapshot();
+
+		// members with teammates by cheapest cost
+		int[] count = new int[PairingAssignment.MAX_COST + 1];
+		int members = 0;
+		for (int i = 0; i < snapshot.size(); i++) {
+			int min = 0;
+			for (int e = snapshot.firstEdge(i); e < snapshot.endEdge(i); e++) {
+				if (min == 0 || table.freeCost(e) < min) { min = table.freeCost(e); }
+			}
+			if (min > 0) { count[min]++; members++; }
+		}
+
+		int pickers = (members + 1) / 2;
+		int bound = 0;
+		for (int c = 1; c <= PairingAssignment.MAX_COST && pickers > 0; c++) {
+			int picked = Math.min(pickers, count[c]);
+			bound += picked * c;
+			pickers -= picked;
+		}
+		return bound;
+	}
+
+	/**
+	 * Whether a member counts towards the bound at the current depth, if they
+	 * have no partner.
+	 */
+	private boolean counts(int member) {
+		return position[member] >= depth && lastPicker[member] < depth;
+	}
+
+	/**
+	 * Finds members that on their own keep the bound at the current depth at
+	 * least as high as required: members without a partner who count, the most
+	 * costly first. Only their cheapest free costs are added up, which do not
+	 * depend on who else has a partner. For NogoodStore to record why a 
+	 * teammate was pruned.
+	 * @param state of the search
+	 * @param required value the members' cheapest free costs must add up to
+	 * @param members filled with the ids found
+	 * @return number of members filled in, or -1 if more are needed than fit
+	 */
+	int explain(SearchState state, int required, int[] members) {
+		int count = 0;
+		int sum = 0;
+		for (int c = PairingAssignment.MAX_COST; c > 0 && sum < required; c--) {
+			for (int d = depth; d < sortedMembers.length && sum < required; d++) {
+				int member = sortedMembers[d];
+				if (cheapest[member] == c && lastPicker[member] < depth
+						&& !state.hasPartner(member)) {
+					if (count == members.length) { return -1; }
+					members[count++] = member;
+					sum += c;
+				}
+			}
+		}
+		return sum >= required ? count : -1;
+	}
+
+	/**
+	 * Called by SearchState when a member gains their first partner.
+	 * @param member id
+	 */
+	void paired(int member) {
+		partnered[member] = true;
+		if (counts(member)) { value -= least[member]; }
+		for (int k = pickerStart[member]; k < pickerStart[member + 1]; k++) {
+			int e = pickerEdges[k];
+			recount(picker[e], table.freeCost(e), table.cost(e, true));
+		}
+	}
+
+	/**
+	 * Called by SearchState when a member loses their last partner.
+	 * @param member id
+	 */
+	void unpaired(int member) {
+		partnered[member] = false;
+		if (counts(member)) { value += least[member]; }
+		for (int k = pickerStart[member]; k < pickerStart[member + 1]; k++) {
+			int e = pickerEdges[k];
+			recount(picker[e], table.cost(e, true), table.freeCost(e));
+		}
+	}
+
+	/**
+	 * Moves a teammate of a member from one cost to another, updating the
+	 * member's lowest cost, and the bound if they count towards it.
+	 * @param member id
+	 * @param from cost of the teammate before
+	 * @param to cost of the teammate now
+	 */
+	private void recount(int member, int from, int to) {
+		costCount[member * COSTS + from]--;
+		costCount[member * COSTS + to]++;
+		int c = 1;
+		while (costCount[member * COSTS + c] == 0) { c++; }
+		if (c != least[member]) {
+			if (!partnered[member] && counts(member)) { value += c - least[member]; }
+			least[member] = c;
+		}
+	}
+
+	/**
+	 * Moves from the current depth to the next one. The member at the current
+	 * depth stops counting, and members nobody before the next depth can pick
+	 * start counting.
+	 * @param state of the search
+	 */
+	public void advance(SearchState state) {
+		int current = sortedMembers[depth];
+		if (!state.hasPartner(current)) { value -= least[current]; }
+
+		depth++;
+		for (int k = activationStart[depth]; k < activationStart[depth + 1]; k++) {
+			int member = activated[k];
+			if (!state.hasPartner(member) && position[member] >= depth) {
+				value += least[member];
+			}
+		}
+	}
+
+	/**
+	 * Reverses advance(). The state must be as it was after advance().
+	 * @param state of the search
+	 */
+	public void retreat(SearchState state) {
+		for (int k = activationStart[depth]; k < activationStart[depth + 1]; k++) {
+			int member = activated[k];
+			if (!state.hasPartner(member) && position[member] >= depth) {
+				value -= least[member];
+			}
+		}
+		depth--;
+
+		int current = sortedMembers[depth];
+		if (!state.hasPartner(current)) { value += least[current]; }
+	}
+}
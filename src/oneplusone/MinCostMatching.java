@@ -0,0 +1,288 @@
+/**
+ * MinCostMatching.java
+ *
+ * Polynomial time alternative to WeightedCSP, for organizations too large to
+ * search exhaustively.
+ *
+ * Most of the cost of an assignment comes from pairs whose members pick each
+ * other: the first of the two in search order pays the cost of pairing with a
+ * free teammate, the second pays nothing. A member left over, because of an
+ * odd team or because all their teammates are paired, picks a teammate who
+ * already has a partner. This is solved as a matching on the teammate graph:
+ *
+ * 	cost = sum of leftover(v) over all members with teammates
+ * 	     - sum of (leftover(i) + leftover(j) - pair(i, j)) over matched pairs
+ *
+ * where leftover(v) is the cheapest cost of v picking a taken teammate and
+ * pair(i, j) the cost of the first of i and j picking the other. A maximum
+ * weight matching (WeightedMatching) with those edge weights minimizes it.
+ *
+ * A leftover member is then either given their cheapest taken teammate, or
+ * joined to a matched pair as a chain of three (a picks b, b picks c, in search
+ * order) when that is cheaper. The whole assignment is replayed in the order
+ * WeightedCSP searches members, so getCost() is counted exactly as WeightedCSP
+ * counts it. It is never lower than WeightedCSP's optimum and is usually equal
+ * to it. It can be higher where several chains of three beat the matching.
+ *
+ * Members with no teammates are left without a partner, as in WeightedCSP.
+ */
+
+package oneplusone;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+public class MinCostMatching {
+	private ArrayList<Person> people; // compiled into a snapshot on every solve
+	private OrganizationSnapshot snapshot;
+	Random random = new Random(); // orders teammates of equal cost
+	private static final int NONE = -1; // member picks nobody new
+	private static final int CHEAPEST = -2; // member picks cheapest teammate
+	private int cost;
+	private int leftover; // members with teammates that were not matched
+
+	/**
+	 * Constructor for MinCostMatching
+	 * @param people, compiled into a snapshot on each solve()
+	 */
+	public MinCostMatching(ArrayList<Person> people) {
+		this.people = people;
+	}
+
+	/**
+	 * Constructor for MinCostMatching
+	 * @param snapshot to solve
+	 */
+	public MinCostMatching(OrganizationSnapshot snapshot) {
+		this.snapshot = snapshot;
+	}
+
+	/**
+	 * Matches the members, then gives every unmatched member with teammates a
+	 * partner.
+	 * @return PairingAssignment, recorded into the members.
+	 */
+	public PairingAssignment solve() {
+		PairingAssignment assignment = search();
+		assignment.record();
+		return assignment;
+	}
+
+	/**
+	 * solve() without recording the result into the members.
+	 * @see solve()
+	 */
+	PairingAssignment search() {
+		if (people != null) { snapshot = OrganizationSnapshot.compile(people); }
+		CostTable table = new CostTable(snapshot, random);
+		int n = snapshot.size();
+		int[] sortedMembers = WeightedCSP.sortMembers(snapshot);
+		int[] position = new int[n]; // id => turn in search order
+		for (int d = 0; d < n; d++) { position[sortedMembers[d]] = d; }
+
+		// cheapest cost of a member being left out of the matching, picking a
+		// taken teammate
+		int[] leftoverCost = new int[n];
+		for (int i = 0; i < n; i++) {
+			for (int e = snapshot.firstEdge(i); e < snapshot.endEdge(i); e++) {
+				int c = table.cost(e, true);
+				if (leftoverCost[i] == 0 || c < leftoverCost[i]) { leftoverCost[i] = c; }
+			}
+		}
+
+		// one matching edge per pair of mutual teammates, added in candidate order
+		// so that ties between equally good matchings are broken at random. The
+		// pair is paid for by whichever of the two is searched first.
+		ArrayList<Integer> pairEdges = new ArrayList<Integer>();
+		ArrayList<Integer> pairWeights = new ArrayList<Integer>();
+		for (int i = 0; i < n; i++) {
+			for (int k = snapshot.firstEdge(i); k < snapshot.endEdge(i); k++) {
+				int e = table.candidate(k);
+				int j = snapshot.neighbor(e);
+				int back = snapshot.reverse(e);
+				if (back == -1 || position[j] < position[i]) { continue; }
+
+				int weight = leftoverCost[i] + leftoverCost[j] - table.freeCost(e);
+				if (weight > 0) {
+					pairEdges.add(e);
+					pairWeights.add(weight);
+				}
+			}
+		}
+
+		int[] from = new int[pairEdges.size()];
+		int[] to = new int[pairEdges.size()];
+		int[] weights = new int[pairEdges.size()];
+		for (int k = 0; k < from.length; k++) {
+			from[k] = snapshot.neighbor(snapshot.reverse(pairEdges.get(k)));
+			to[k] = snapshot.neighbor(pairEdges.get(k));
+			weights[k] = pairWeights.get(k);
+		}
+		int[] mate = new WeightedMatching(n, from, to, weights).solve();
+		return complete(table, sortedMembers, mate);
+	}
+
+	/**
+	 * Gives every member left out of a matching a partner, then replays the
+	 * whole assignment in search order to count its cost. Used as well by
+	 * engines that find the matching another way.
+	 * @param table costs of the snapshot
+	 * @param sortedMembers ids in the order WeightedCSP searches them
+	 * @param mate id => matched mutual teammate, or -1
+	 * @return PairingAssignment, not recorded
+	 */
+	PairingAssignment complete(CostTable table, int[] sortedMembers, int[] mate) {
+		int n = snapshot.size();
+		int[] position = new int[n]; // id => turn in search order
+		for (int d = 0; d < n; d++) { position[sortedMembers[d]] = d; }
+
+		// the edge each member picks on their turn. NONE if they are picked by
+		// someone earlier, CHEAPEST if they take their cheapest teammate then.
+		int[] pick = new int[n];
+		for (int i = 0; i < n; i++) {
+			pick[i] = mate[i] == -1 ? CHEAPEST : NONE;
+			if (mate[i] != -1 && position[i] < position[mate[i]]) { 
+				pick[i] = edge(i, mate[i]); 
+			}
+		}
+
+		// a leftover member may instead join a matched pair as a chain of three,
+		// each of the first two picking the next one in search order while they
+		// are still free. Each pair takes in at most one leftover member.
+		leftover = 0;
+		boolean[] extended = new boolean[n];
+		for (int current : sortedMembers) {
+			if (mate[current] != -1 || snapshot.degree(current) == 0) { continue; }
+			leftover++;
+
+			int bestExtra = Integer.MAX_VALUE;
+			for (int e = snapshot.firstEdge(current); e < snapshot.endEdge(current); e++) {
+				bestExtra = Math.min(bestExtra, table.cost(e, true));
+			}
+			int[] bestChain = null;
+			for (int e = snapshot.firstEdge(current); e < snapshot.endEdge(current); e++) {
+				int teammate = snapshot.neighbor(e);
+				if (mate[teammate] == -1 || extended[teammate]) { continue; }
+
+				int[] chain = chain(current, teammate, mate[teammate], position);
+				if (chain == null) { continue; }
+				int pairEdge = pick[teammate] >= 0 ? pick[teammate] : pick[mate[teammate]];
+				int extra = table.freeCost(chain[0]) + table.freeCost(chain[1]) 
+						- table.freeCost(pairEdge);
+				if (extra < bestExtra) {
+					bestExtra = extra;
+					bestChain = chain;
+				}
+			}
+
+			if (bestChain != null) {
+				int first = snapshot.neighbor(snapshot.reverse(bestChain[0]));
+				int second = snapshot.neighbor(bestChain[0]);
+				int third = snapshot.neighbor(bestChain[1]);
+				pick[first] = bestChain[0];
+				pick[second] = bestChain[1];
+				pick[third] = NONE;
+				extended[first] = extended[second] = extended[third] = true;
+			}
+		}
+
+		// replay in search order, so the cost is counted as WeightedCSP counts it
+		SearchState replay = new SearchState(table);
+		PairingAssignment assignment = new PairingAssignment(snapshot);
+		cost = 0;
+		for (int current : sortedMembers) {
+			if (snapshot.degree(current) == 0) { continue; }
+			int edge = pick[current];
+			if (edge == NONE && replay.hasPartner(current)) { continue; }
+			if (edge < 0) { edge = cheapest(current, replay); }
+
+			int c = replay.cost(edge);
+			if (c != 0) {
+				replay.assign(current, edge);
+				assignment.assignPairing(current, snapshot.neighbor(edge));
+				cost += c;
+			}
+		}
+
+		// optimal if it meets the lower bound WeightedCSP would start from
+		int rootBound = new LowerBound(table, sortedMembers).root();
+		assignment.setResult(cost, rootBound, cost <= rootBound);
+
+		return assignment;
+	}
+
+	/**
+	 * Orders three members by search order, into a chain where the first picks
+	 * the second and the second picks the third.
+	 * @param position id => turn in search order
+	 * @return edges from first to second and from second to third, or null if
+	 * 	they are not mutual teammates
+	 */
+	private int[] chain(int a, int b, int c, int[] position) {
+		int[] members = { a, b, c };
+		for (int i = 1; i < 3; i++) {
+			for (int j = i; j > 0 && position[members[j]] < position[members[j - 1]]; j--) {
+				int swap = members[j];
+				members[j] = members[j - 1];
+				members[j - 1] = swap;
+			}
+		}
+
+		int[] chain = { edge(members[0], members[1]), edge(members[1], members[2]) };
+		if (chain[0] == -1 || chain[1] == -1) { return null; }
+		if (snapshot.reverse(chain[0]) == -1 || snapshot.reverse(chain[1]) == -1) {
+			return null;
+		}
+		return chain;
+	}
+
+	/**
+	 * @return edge from member to teammate, or -1 if there is none
+	 */
+	private int edge(int member, int teammate) {
+		for (int e = snapshot.firstEdge(member); e < snapshot.endEdge(member); e++) {
+			if (snapshot.neighbor(e) == teammate) { return e; }
+		}
+		return -1;
+	}
+
+	/**
+	 * @param member id
+	 * @param state giving the current cost of each edge
+	 * @return member's cheapest edge, first in candidate order among equals
+	 */
+	private int cheapest(int member, SearchState state) {
+		CostTable table = state.table();
+		int best = -1;
+		for (int k = snapshot.firstEdge(member); k < snapshot.endEdge(member); k++) {
+			int e = table.candidate(k);
+			if (best == -1 || state.cost(e) < state.cost(best)) { best = e; }
+		}
+		return best;
+	}
+
+	/**
+	 * Makes solves repeatable: teammates of equal cost, and so ties between
+	 * equally good matchings, are ordered with this random.
+	 * @param random
+	 */
+	public void setRandom(Random random) {
+		this.random = random;
+	}
+
+	/**
+	 * @return cost of the assignment found by the last solve, counted the same
+	 * 	way as WeightedCSP.getCost()
+	 */
+	public int getCost() {
+		return cost;
+	}
+
+	/**
+	 * @return number of members with teammates left out of the matching in the
+	 * 	last solve, who picked an already taken teammate
+	 */
+	public int getLeftover() {
+		return leftover;
+	}
+}
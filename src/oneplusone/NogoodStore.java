@@ -0,0 +1,272 @@
+/**
+ * NogoodStore.java
+ *
+ * Bounded store of nogoods learned by WeightedCSP: small sets of facts about
+ * a partial assignment that are known to keep the cost of completing it at
+ * least some bound. A state that has every fact of a nogood stored for its
+ * depth, with a bound too high to beat the best found so far, is not searched.
+ *
+ * A fact is something the search reads from its state: whether a member has
+ * a partner, whether the pair across an edge is made, or which pair a member
+ * made on their turn. While a state's subtree is searched, every fact read
+ * below it is logged: the teammates' costs of each member reached, the
+ * members a lower bound prune counted (see LowerBound.explain()), the twins
+ * compared to skip a teammate, and the facts of nogoods that pruned a state.
+ * When the subtree fails to beat the best, its facts, with their values in
+ * the state it started from, are a nogood. Another state with the same values
+ * is searched exactly the same way below, so its completion costs no less.
+ *
+ * Subtrees that read more facts than a nogood holds, or that were pruned by
+ * the transposition table, whose entries cannot be told apart by their facts,
+ * are not recorded, nor are any of the subtrees they are in.
+ *
+ * Each depth keeps a few nogoods, the oldest replaced first. Nogoods depend on
+ * the fixed search order, as the depth a member is searched at is not part of
+ * them.
+ */
+
+package oneplusone;
+
+import java.util.Arrays;
+
+public class NogoodStore {
+	public static final int MAX_FACTS = 12; // most facts in a nogood
+	public static final int SLOTS = 4; // nogoods kept per depth
+	private static final int COMPACT_AT = 8 * MAX_FACTS; // facts logged by a state
+		// before they are compacted
+	private final OrganizationSnapshot snapshot;
+	private final SearchState state;
+	private final LowerBound bound; // explains bound prunes, or null
+	private final int[] pairMade; // id => edge of pair made on member's turn, or -1
+	private final int members;
+	private final int[] facts; // (depth * SLOTS + slot) * MAX_FACTS => fact
+	private final int[] values; // same index => value the fact must have
+	private final int[] sizes; // depth * SLOTS + slot => facts, -1 if empty
+	private final int[] bounds; // same index => lower bound on completion cost
+	private final int[] next; // depth => slot to store into next
+	private final int[] logStart; // depth => start in log of the state's facts
+	private final int[] explained; // members counted by a bound prune
+	private int[] log; // facts read on the current path, see enter()
+	private int top; // end of log
+	private int current = -1; // depth of the innermost state entered
+	private int unexplained; // states on the path up to this depth are not
+		// recorded, -1 if all may be
+	private long checks;
+	private long hits;
+	private long learned;
+
+	/**
+	 * @param snapshot being searched
+	 * @param state of the search
+	 * @param bound of the search, or null
+	 * @param pairMade the search's id => edge of pair made on member's turn
+	 * @param depths number of members searched
+	 */
+	public NogoodStore(OrganizationSnapshot snapshot, SearchState state,
+			LowerBound bound, int[] pairMade, int depths) {
+		this.snapshot = snapshot;
+		this.state = state;
+		this.bound = bound;
+		this.pairMade = pairMade;
+		members = snapshot.size();
+		facts = new int[depths * SLOTS * MAX_FACTS];
+		values = new int[facts.length];
+		sizes = new int[depths * SLOTS];
+		Arrays.fill(sizes, -1);
+		bounds = new int[sizes.length];
+		next = new int[depths];
+		logStart = new int[depths];
+		explained = new int[MAX_FACTS];
+		log = new int[64];
+		unexplained = -1;
+	}
+
+	/**
+	 * Looks for a nogood that prunes the current state, counting a check. The
+	 * facts of a nogood found are logged, as they explain the prune.
+	 * @param depth of the state
+	 * @param needed cost its completion must be under to beat the best so far
+	 * @return whether the state's completion is known to cost at least needed
+	 */
+	public boolean prunes(int depth, int needed) {
+		checks++;
+		for (int s = depth * SLOTS; s < (depth + 1) * SLOTS; s++) {
+			if (sizes[s] == -1 || bounds[s] < needed) { continue; }
+			int first = s * MAX_FACTS;
+			int f = 0;
+			while (f < sizes[s] && value(facts[first + f]) == values[first + f]) {
+				f++;
+			}
+			if (f == sizes[s]) {
+				hits++;
+				for (f = 0; f < sizes[s]; f++) { read(facts[first + f]); }
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Starts logging the facts read below a state at the given depth.
+	 * @param depth of the state
+	 */
+	public void enter(int depth) {
+		logStart[depth] = top;
+		current = depth;
+		if (unexplained >= depth) { unexplained = depth - 1; }
+	}
+
+	/**
+	 * Logs the facts that the costs of a member's teammates are read from:
+	 * whether each pair is made, and whether each teammate has a partner if
+	 * that changes the cost. None of the pairs of a member without a partner 
+	 * are made, which is one fact instead of one per pair.
+	 * @param member id
+	 */
+	public void teammates(int member) {
+		CostTable table = state.table();
+		boolean free = !state.hasPartner(member);
+		if (free) { read(member); }
+		for (int e = snapshot.firstEdge(member); e < snapshot.endEdge(member); e++) {
+			if (!free) { read(2 * members + e); }
+			if (table.cost(e, true) != table.freeCost(e)) { 
+				read(snapshot.neighbor(e)); 
+			}
+		}
+	}
+
+	/**
+	 * Logs whether a member has a partner.
+	 * @param member id
+	 */
+	public void partner(int member) {
+		read(member);
+	}
+
+	/**
+	 * Logs which pair a member made on their turn.
+	 * @param member id
+	 */
+	public void pick(int member) {
+		read(members + member);
+	}
+
+	/**
+	 * Logs the members that kept the bound of the next depth at least as high
+	 * as required, when a teammate was pruned by it. Must be called before the
+	 * bound retreats.
+	 * @param depth of the state whose teammate was pruned
+	 * @param required cost the bound had to reach for the prune
+	 */
+	public void boundPrune(int depth, int required) {
+		int count = bound.explain(state, required, explained);
+		if (count == -1) {
+			unexplained(depth);
+			return;
+		}
+		for (int k = 0; k < count; k++) { read(explained[k]); }
+	}
+
+	/**
+	 * Marks the state at the given depth, and the states above it, as not to
+	 * be recorded, as something was read below it that is not a fact.
+	 * @param depth
+	 */
+	public void unexplained(int depth) {
+		unexplained = Math.max(unexplained, depth);
+	}
+
+	/**
+	 * Ends the state at the given depth, whose state must be as it was when it
+	 * was entered. Unless it is not to be recorded, the facts read below it are
+	 * stored as a nogood, and kept in the log for the states above.
+	 * @param depth of the state
+	 * @param completion lower bound on the cost of completing the state
+	 * @param record whether the search below finished, so the bound holds
+	 */
+	public void exit(int depth, int completion, boolean record) {
+		int from = logStart[depth];
+		current = depth - 1;
+		if (!record) { unexplained(depth); }
+		if (!compact(depth)) { return; }
+		if (completion <= 0) {
+			if (unexplained >= current) { top = from; }
+			return;
+		}
+
+		int s = depth * SLOTS + next[depth];
+		next[depth] = (next[depth] + 1) % SLOTS;
+		sizes[s] = top - from;
+		bounds[s] = completion;
+		for (int k = from; k < top; k++) {
+			facts[s * MAX_FACTS + k - from] = log[k];
+			values[s * MAX_FACTS + k - from] = value(log[k]);
+		}
+		learned++;
+		if (unexplained >= current) { top = from; }
+	}
+
+	/**
+	 * Leaves each fact read below the state at the given depth in the log once.
+	 * If it is not to be recorded, or there are too many facts, none are left.
+	 * @return whether the state's facts are left
+	 */
+	private boolean compact(int depth) {
+		int from = logStart[depth];
+		if (unexplained < depth) {
+			Arrays.sort(log, from, top);
+			int end = from;
+			for (int k = from; k < top; k++) {
+				if (end == from || log[k] != log[end - 1]) { log[end++] = log[k]; }
+			}
+			top = end;
+			if (top - from > MAX_FACTS) { unexplained(depth); }
+		}
+		if (unexplained >= depth) {
+			top = from;
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return value of a fact in the current state
+	 */
+	private int value(int fact) {
+		if (fact < members) { return state.hasPartner(fact) ? 1 : 0; }
+		if (fact < 2 * members) { return pairMade[fact - members]; }
+		return state.isPaired(fact - 2 * members) ? 1 : 0;
+	}
+
+	/**
+	 * Logs a fact for the innermost state, unless it is not to be recorded. The
+	 * state's facts are compacted every so often, so the log stays short.
+	 */
+	private void read(int fact) {
+		if (current < 0 || unexplained >= current) { return; }
+		if (top - logStart[current] >= COMPACT_AT && !compact(current)) { return; }
+		if (top == log.length) { log = Arrays.copyOf(log, 2 * log.length); }
+		log[top++] = fact;
+	}
+
+	/**
+	 * @return states looked up
+	 */
+	public long getChecks() {
+		return checks;
+	}
+
+	/**
+	 * @return states pruned by a nogood
+	 */
+	public long getHits() {
+		return hits;
+	}
+
+	/**
+	 * @return nogoods stored
+	 */
+	public long getLearned() {
+		return learned;
+	}
+}
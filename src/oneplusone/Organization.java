@@ -14,18 +14,26 @@ package oneplusone;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Set;
+import oneplusone.Person.Teammate;
 
 public class Organization {
 	private static final boolean TEST = false;
 	private String name;
 	private HashMap<String, Person> people;
 	private HashMap<String, Team> teams;
+	private HashSet<String> gainedTeammates; // members, since the last pairings
+	private ArrayList<PlannedWeek> plan; // weeks planned ahead, next one first
+	private String engine; // see PairingSolvers, null for the default
+	private int round; // weeks paired, for round-robin schedules (see RoundRobin)
 	
 	public Organization(String organizationName) {
 		name = organizationName;
 		people = new HashMap<String, Person>(); 
 		teams = new HashMap<String, Team>();
+		gainedTeammates = new HashSet<String>();
 	}
 	
 	/**
@@ -33,8 +41,247 @@ public class Organization {
 	 * @return completed pairing assignment.
 	 */
 	public PairingAssignment getPairings() {
-		WeightedCSP csp = new WeightedCSP(new ArrayList<Person>(people.values()));
-		return csp.solve();		
+		return getPairings(0, null);
+	}
+	
+	/**
+	 * Get pairings for 1+1 within an organization, spending at most budget 
+	 * milliseconds searching. If weeks were planned with planPairings() and the 
+	 * plan still fits, the next planned week is used instead of searching.
+	 * @param budget in milliseconds, 0 or less for no limit
+	 * @param token to cancel the search with, or null
+	 * @return best pairing assignment found in the budget, see isOptimal().
+	 */
+	public PairingAssignment getPairings(long budget, CancellationToken token) {
+		PairingAssignment planned = nextPlannedWeek();
+		if (planned != null) {
+			planned.record();
+			gainedTeammates().clear();
+			round++;
+			return planned;
+		}
+		
+		PairingAssignment assignment = 
+				PairingSolvers.solve(getEngine(), compile(), budget, token, null);
+		assignment.record();
+		gainedTeammates().clear();
+		round++;
+		return assignment;
+	}
+	
+	/**
+	 * Repairs this week's pairings after the teams have changed, instead of 
+	 * pairing everyone again with getPairings().
+	 * 
+	 * Only members whose pairings no longer fit are paired again: members who 
+	 * gained teammates, members with teammates but no partner, and members 
+	 * whose partner left the organization or their teams. Their teammates are 
+	 * paired again with them, along with anyone they were paired with, so that 
+	 * nobody keeps half of a pair. Everyone else keeps their pairs and history.
+	 * 
+	 * The pairs being redone are undone first, so their costs are worked out 
+	 * from the week before, as they were by getPairings(). Only the members 
+	 * being paired again are compiled and searched, so the search grows with 
+	 * the size of the change rather than the size of the organization.
+	 * 
+	 * @param budget in milliseconds, 0 or less for no limit
+	 * @param token to cancel the search with, or null
+	 * @return pairings of the whole organization. Cost, lower bound and 
+	 * 	isOptimal() are those of the members paired again.
+	 */
+	public PairingAssignment repairPairings(long budget, CancellationToken token) {
+		plan = null;
+		LinkedHashSet<Person> region = repairRegion();
+		ArrayList<Person> repaired = new ArrayList<Person>(region);
+		for (Person member : repaired) { member.undoPreviousMatchups(); }
+		
+		// the week being repaired is the one getPairings() last paired
+		PairingAssignment part = PairingSolvers.solve(getEngine(), 
+				OrganizationSnapshot.compile(repaired)
+						.withRound(Math.max(0, round - 1)), 
+				budget, token, null);
+		part.record();
+		gainedTeammates().clear();
+		
+		// everyone else keeps last week's pairs
+		ArrayList<Person> members = new ArrayList<Person>(people.values());
+		HashMap<Person, Integer> indices = new HashMap<Person, Integer>();
+		for (int i = 0; i < members.size(); i++) { indices.put(members.get(i), i); }
+		PairingAssignment assignment = new PairingAssignment(members);
+		for (int i = 0; i < members.size(); i++) {
+			if (region.contains(members.get(i))) { continue; }
+			for (Person partner : members.get(i).getPreviousMatchups()) {
+				assignment.assignPairing(i, indices.get(partner));
+			}
+		}
+		assignment.merge(part);
+		assignment.setResult(part.getCost(), part.getLowerBound(), 
+				part.isOptimal());
+		assignment.setEngine(part.getEngine(), part.getEngineParameters());
+		assignment.setSolveTime(part.getSolveTime());
+		
+		return assignment;
+	}
+	
+	/**
+	 * Plans the pairings of the next weeks, so that the runs of those weeks 
+	 * only read them. Each week is planned from the history the weeks before it 
+	 * would leave, as a run on that week would pair it.
+	 * 
+	 * The plan is dropped as soon as it no longer fits: once the teams are 
+	 * edited through the organization, pairings are repaired, or a planned pair 
+	 * is no longer a pair of teammates.
+	 * 
+	 * @see SchedulePlanner
+	 * @param weeks to plan
+	 * @param budget in milliseconds for each week, 0 or less for no limit
+	 * @param token to cancel the search with, or null
+	 * @return pairings of each week, in order
+	 */
+	public ArrayList<PairingAssignment> planPairings(int weeks, long budget, 
+			CancellationToken token) {
+		SchedulePlanner planner = new SchedulePlanner(compile(), getEngine());
+		ArrayList<PairingAssignment> planned = planner.plan(weeks, budget, token);
+		
+		plan = new ArrayList<PlannedWeek>();
+		for (PairingAssignment week : planned) { plan.add(new PlannedWeek(week)); }
+		return planned;
+	}
+	
+	/**
+	 * @return number of weeks planned and not run yet
+	 */
+	public int getPlannedWeeks() {
+		return plan == null ? 0 : plan.size();
+	}
+	
+	/**
+	 * Takes the next planned week off the plan, dropping the whole plan instead 
+	 * if it no longer fits the organization.
+	 * @return pairings of the week, not recorded yet, or null if there are none
+	 */
+	private PairingAssignment nextPlannedWeek() {
+		if (plan == null || plan.isEmpty()) { return null; }
+		PlannedWeek week = plan.remove(0);
+		
+		ArrayList<Person> members = new ArrayList<Person>(people.values());
+		HashMap<Person, Integer> indices = new HashMap<Person, Integer>();
+		for (int i = 0; i < members.size(); i++) { indices.put(members.get(i), i); }
+		PairingAssignment assignment = new PairingAssignment(members);
+		HashSet<Person> paired = new HashSet<Person>();
+		
+		for (int k = 0; k < week.pairCount(); k++) {
+			Person first = people.get(week.first(k));
+			Person second = people.get(week.second(k));
+			if (first == null || second == null || !first.isTeammate(second)) {
+				plan = null;
+				return null;
+			}
+			assignment.assignPairing(indices.get(first), indices.get(second));
+			paired.add(first);
+			paired.add(second);
+		}
+		
+		// someone without a partner was added after the plan
+		for (Person member : members) {
+			if (member.teammateCount() > 0 && !paired.contains(member)) {
+				plan = null;
+				return null;
+			}
+		}
+		
+		assignment.setResult(week.getCost(), week.getLowerBound(), 
+				week.isOptimal());
+		assignment.setEngine(week.getEngine(), week.getEngineParameters());
+		assignment.setSolveTime(week.getSolveTime());
+		return assignment;
+	}
+	
+	/**
+	 * @see repairPairings()
+	 * @return members to pair again, closed under this week's pairs
+	 */
+	private LinkedHashSet<Person> repairRegion() {
+		LinkedHashSet<Person> affected = new LinkedHashSet<Person>();
+		for (Person member : people.values()) {
+			HashSet<Person> partners = member.getPreviousMatchups();
+			if (gainedTeammates().contains(member.getName())
+					|| (partners.isEmpty() && member.teammateCount() > 0)) {
+				affected.add(member);
+				continue;
+			}
+			for (Person partner : partners) {
+				if (!people.containsKey(partner.getName()) 
+						|| !member.isTeammate(partner)) {
+					affected.add(member);
+					break;
+				}
+			}
+		}
+		
+		LinkedHashSet<Person> region = new LinkedHashSet<Person>();
+		ArrayList<Person> toVisit = new ArrayList<Person>();
+		for (Person member : affected) {
+			toVisit.add(member);
+			for (Teammate tm : member.getTeammates()) { toVisit.add(tm.person); }
+		}
+		
+		// partners of members in the region join it, and so on along the pairs
+		while (!toVisit.isEmpty()) {
+			Person member = toVisit.remove(toVisit.size() - 1);
+			if (!region.add(member)) { continue; }
+			for (Person partner : member.getPreviousMatchups()) {
+				if (people.containsKey(partner.getName())) { toVisit.add(partner); }
+			}
+		}
+		return region;
+	}
+	
+	/**
+	 * Organizations stored before repairs were tracked have no set yet.
+	 * @return names of members who gained teammates since the last pairings
+	 */
+	private HashSet<String> gainedTeammates() {
+		if (gainedTeammates == null) { gainedTeammates = new HashSet<String>(); }
+		return gainedTeammates;
+	}
+	
+	/**
+	 * @return name of the engine pairings are made with, see PairingSolvers
+	 */
+	public String getEngine() {
+		return engine == null ? PairingSolvers.DEFAULT : engine;
+	}
+	
+	/**
+	 * Sets the engine pairings are made with. Plans made with another engine 
+	 * are kept.
+	 * @param engineName registered in PairingSolvers
+	 * @return whether there is an engine by that name
+	 */
+	public boolean setEngine(String engineName) {
+		if (PairingSolvers.get(engineName) == null) { return false; }
+		engine = engineName;
+		return true;
+	}
+	
+	/**
+	 * @return number of weeks paired with getPairings(). Repairs are part of 
+	 * 	the week they repair.
+	 */
+	public int getRound() {
+		return round;
+	}
+	
+	/**
+	 * Compiles the members of the organization, their teammates and their 
+	 * pairing history into an immutable snapshot for the solver, in the week
+	 * after the last one paired.
+	 * @return snapshot of the organization
+	 */
+	public OrganizationSnapshot compile() {
+		return OrganizationSnapshot.compile(new ArrayList<Person>(people.values()))
+				.withRound(round);
 	}
 	
 	public String getName() {
@@ -82,7 +329,10 @@ public class Organization {
 			}
 			
 			if (TEST) System.out.println("Adding " + memberEmail + " to " + teamName);
-			team.addMember(member);
+			if (team.addMember(member)) { 
+				gainedTeammates().add(memberEmail); 
+				plan = null;
+			}
 			
 			return true;
 			
@@ -170,6 +420,24 @@ public class Organization {
 		// remove from org
 		System.out.println("Removing " + memberEmail + " from " + name);
 		people.remove(memberEmail);
+		plan = null;
+	}
+	
+	/**
+	 * Removes a member from one team, and the teammate links that came from it.
+	 * The member stays in the organization and their other teams.
+	 * 
+	 * @param memberEmail of member to remove
+	 * @param teamName of team to remove them from
+	 */
+	public void removeMemberFromTeam(String memberEmail, String teamName) {
+		Person member = people.get(memberEmail);
+		Team team = teams.get(teamName);
+		if (member == null || team == null) { return; }
+		
+		System.out.println("Removing " + memberEmail + " from " + teamName);
+		team.removeMember(member);
+		plan = null;
 	}
 	
 	/**
@@ -188,6 +456,7 @@ public class Organization {
 		
 		// remove from org
 		teams.remove(teamName);
+		plan = null;
 	}
 	
 	public boolean equals(Object other) {
@@ -0,0 +1,353 @@
+/**
+ * OrganizationSnapshot.java
+ *
+ * Immutable, int-indexed copy of an organization's members, compiled once
+ * before solving.
+ *
+ * Members are given dense ids from 0 to size()-1. The teammate graph is stored
+ * in compressed sparse row form: the teammates of member i are the edges
+ * firstEdge(i) to endEdge(i)-1, and each edge holds the teammate's id, the
+ * number of shared teams and the cycle and last-week flags of that teammate
+ * as seen from member i.
+ *
+ * Nothing in a snapshot changes after compile(), so one snapshot can be read
+ * by any number of solvers and threads at once. Changes made to the Person
+ * objects afterwards (including PairingAssignment.record()) are not seen.
+ */
+
+package oneplusone;
+
+import java.util.HashMap;
+import java.util.List;
+import oneplusone.Person.Teammate;
+
+public class OrganizationSnapshot {
+	private final Person[] members; // id => member
+	private final int[] offsets; // id => first edge, offsets[size()] = edges
+	private final int[] neighbors; // edge => teammate id
+	private final int[] links; // edge => shared teams
+	private final int[] reverse; // edge => edge in other direction, -1 if none
+	private final boolean[] matchedInCycle; // edge => matched this cycle
+	private final boolean[] matchedLastTime; // edge => matched last time
+	private final Teammate[] teammates; // edge => Teammate wrapper
+	private final int maxDegree;
+	private final int round; // weeks paired before this one, see RoundRobin
+
+	private OrganizationSnapshot(Person[] members, int[] offsets,
+			int[] neighbors, int[] links, int[] reverse, boolean[] matchedInCycle,
+			boolean[] matchedLastTime, Teammate[] teammates, int maxDegree, 
+			int round) {
+		this.members = members;
+		this.offsets = offsets;
+		this.neighbors = neighbors;
+		this.links = links;
+		this.reverse = reverse;
+		this.matchedInCycle = matchedInCycle;
+		this.matchedLastTime = matchedLastTime;
+		this.teammates = teammates;
+		this.maxDegree = maxDegree;
+		this.round = round;
+	}
+
+	/**
+	 * Compiles a snapshot of the given people. Ids follow the order of the
+	 * list. Teammates that are not in the list are left out.
+	 *
+	 * @param people to compile
+	 * @return snapshot of the people and their teammates
+	 */
+	public static OrganizationSnapshot compile(List<Person> people) {
+		int n = people.size();
+		Person[] members = people.toArray(new Person[n]);
+		HashMap<Person, Integer> ids = new HashMap<Person, Integer>();
+		for (int i = 0; i < n; i++) { ids.put(members[i], i); }
+
+		// count edges first so that every array is allocated exactly once
+		int[] offsets = new int[n + 1];
+		Teammate[][] teammatesOf = new Teammate[n][];
+		for (int i = 0; i < n; i++) {
+			teammatesOf[i] = members[i].getTeammates().toArray(new Teammate[0]);
+			int count = 0;
+			for (Teammate tm : teammatesOf[i]) {
+				if (ids.containsKey(tm.person)) { count++; }
+			}
+			offsets[i + 1] = offsets[i] + count;
+		}
+
+		int edges = offsets[n];
+		int[] neighbors = new int[edges];
+		int[] links = new int[edges];
+		boolean[] matchedInCycle = new boolean[edges];
+		boolean[] matchedLastTime = new boolean[edges];
+		Teammate[] teammates = new Teammate[edges];
+		int maxDegree = 0;
+
+		for (int i = 0; i < n; i++) {
+			int e = offsets[i];
+			for (Teammate tm : teammatesOf[i]) {
+				Integer id = ids.get(tm.person);
+				if (id == null) { continue; }
+
+				neighbors[e] = id;
+				links[e] = tm.getLinks();
+				matchedInCycle[e] = tm.matchedInCycle();
+				matchedLastTime[e] = members[i].previouslyMatchedWith(tm.person);
+				teammates[e] = tm;
+				e++;
+			}
+			maxDegree = Math.max(maxDegree, offsets[i + 1] - offsets[i]);
+		}
+
+		// pair up each edge with the edge going the other way
+		int[] reverse = new int[edges];
+		HashMap<Long, Integer> edgeOf = new HashMap<Long, Integer>();
+		for (int i = 0; i < n; i++) {
+			for (int e = offsets[i]; e < offsets[i + 1]; e++) {
+				edgeOf.put(((long) i << 32) | neighbors[e], e);
+			}
+		}
+		for (int i = 0; i < n; i++) {
+			for (int e = offsets[i]; e < offsets[i + 1]; e++) {
+				Integer back = edgeOf.get(((long) neighbors[e] << 32) | i);
+				reverse[e] = back == null ? -1 : back;
+			}
+		}
+
+		return new OrganizationSnapshot(members, offsets, neighbors, links,
+				reverse, matchedInCycle, matchedLastTime, teammates, maxDegree, 0);
+	}
+
+	/**
+	 * Takes the members with the given ids out into a snapshot of their own, as
+	 * they were when this snapshot was compiled. Ids follow the order given.
+	 * Teammates outside of the subset are left out.
+	 *
+	 * @param ids of the members to keep
+	 * @return snapshot of those members
+	 */
+	public OrganizationSnapshot subset(int[] ids) {
+		int n = ids.length;
+		int[] newId = new int[members.length];
+		for (int i = 0; i < newId.length; i++) { newId[i] = -1; }
+		for (int i = 0; i < n; i++) { newId[ids[i]] = i; }
+
+		// keep edges inside the subset, remembering where each one went
+		Person[] subMembers = new Person[n];
+		int[] subOffsets = new int[n + 1];
+		int[] newEdge = new int[neighbors.length];
+		int edges = 0;
+		int subMaxDegree = 0;
+		for (int i = 0; i < n; i++) {
+			subMembers[i] = members[ids[i]];
+			for (int e = offsets[ids[i]]; e < offsets[ids[i] + 1]; e++) {
+				newEdge[e] = newId[neighbors[e]] == -1 ? -1 : edges++;
+			}
+			subOffsets[i + 1] = edges;
+			subMaxDegree = Math.max(subMaxDegree, subOffsets[i + 1] - subOffsets[i]);
+		}
+
+		int[] subNeighbors = new int[edges];
+		int[] subLinks = new int[edges];
+		int[] subReverse = new int[edges];
+		boolean[] subInCycle = new boolean[edges];
+		boolean[] subLastTime = new boolean[edges];
+		Teammate[] subTeammates = new Teammate[edges];
+		for (int i = 0; i < n; i++) {
+			for (int e = offsets[ids[i]]; e < offsets[ids[i] + 1]; e++) {
+				int k = newEdge[e];
+				if (k == -1) { continue; }
+				subNeighbors[k] = newId[neighbors[e]];
+				subLinks[k] = links[e];
+				subReverse[k] = reverse[e] == -1 ? -1 : newEdge[reverse[e]];
+				subInCycle[k] = matchedInCycle[e];
+				subLastTime[k] = matchedLastTime[e];
+				subTeammates[k] = teammates[e];
+			}
+		}
+
+		return new OrganizationSnapshot(subMembers, subOffsets, subNeighbors,
+				subLinks, subReverse, subInCycle, subLastTime, subTeammates,
+				subMaxDegree, round);
+	}
+
+	/**
+	 * Same members with only some of their teammates. Ids are kept. An edge
+	 * whose other direction is left out becomes one way.
+	 *
+	 * @param keep edge => whether to keep it
+	 * @return snapshot with the kept edges
+	 */
+	public OrganizationSnapshot keepEdges(boolean[] keep) {
+		int n = members.length;
+		int[] keptOffsets = new int[n + 1];
+		int[] newEdge = new int[neighbors.length];
+		int edges = 0;
+		int keptMaxDegree = 0;
+		for (int i = 0; i < n; i++) {
+			for (int e = offsets[i]; e < offsets[i + 1]; e++) {
+				newEdge[e] = keep[e] ? edges++ : -1;
+			}
+			keptOffsets[i + 1] = edges;
+			keptMaxDegree = Math.max(keptMaxDegree, keptOffsets[i + 1] - keptOffsets[i]);
+		}
+
+		int[] keptNeighbors = new int[edges];
+		int[] keptLinks = new int[edges];
+		int[] keptReverse = new int[edges];
+		boolean[] keptInCycle = new boolean[edges];
+		boolean[] keptLastTime = new boolean[edges];
+		Teammate[] keptTeammates = new Teammate[edges];
+		for (int e = 0; e < neighbors.length; e++) {
+			int k = newEdge[e];
+			if (k == -1) { continue; }
+			keptNeighbors[k] = neighbors[e];
+			keptLinks[k] = links[e];
+			keptReverse[k] = reverse[e] == -1 ? -1 : newEdge[reverse[e]];
+			keptInCycle[k] = matchedInCycle[e];
+			keptLastTime[k] = matchedLastTime[e];
+			keptTeammates[k] = teammates[e];
+		}
+
+		return new OrganizationSnapshot(members, keptOffsets, keptNeighbors,
+				keptLinks, keptReverse, keptInCycle, keptLastTime, keptTeammates,
+				keptMaxDegree, round);
+	}
+
+	/**
+	 * Same members and teammates with another history, as if they had been
+	 * compiled after more weeks were recorded. The teammate graph is shared, not
+	 * copied. The arrays are kept as they are and must not be changed after.
+	 *
+	 * @param matchedInCycle edge => matched this cycle
+	 * @param matchedLastTime edge => matched last time
+	 * @return snapshot with the given history
+	 */
+	public OrganizationSnapshot withHistory(boolean[] matchedInCycle,
+			boolean[] matchedLastTime) {
+		return new OrganizationSnapshot(members, offsets, neighbors, links,
+				reverse, matchedInCycle, matchedLastTime, teammates, maxDegree, 
+				round);
+	}
+
+	/**
+	 * Same members, teammates and history in another week of round-robin 
+	 * schedules. Nothing is copied.
+	 *
+	 * @param round weeks paired before this one
+	 * @return snapshot of the given week
+	 */
+	public OrganizationSnapshot withRound(int round) {
+		return new OrganizationSnapshot(members, offsets, neighbors, links,
+				reverse, matchedInCycle, matchedLastTime, teammates, maxDegree, 
+				round);
+	}
+
+	/**
+	 * @return number of members
+	 */
+	public int size() {
+		return members.length;
+	}
+
+	/**
+	 * @return number of edges (teammate relations, counted once per direction)
+	 */
+	public int edgeCount() {
+		return neighbors.length;
+	}
+
+	/**
+	 * @return weeks paired before this one, 0 unless set with withRound()
+	 */
+	public int round() {
+		return round;
+	}
+
+	/**
+	 * @return largest number of teammates of any member
+	 */
+	public int maxDegree() {
+		return maxDegree;
+	}
+
+	/**
+	 * @param id of member
+	 * @return the member
+	 */
+	public Person member(int id) {
+		return members[id];
+	}
+
+	/**
+	 * @param id of member
+	 * @return number of teammates of member
+	 */
+	public int degree(int id) {
+		return offsets[id + 1] - offsets[id];
+	}
+
+	/**
+	 * @param id of member
+	 * @return first edge of member
+	 */
+	public int firstEdge(int id) {
+		return offsets[id];
+	}
+
+	/**
+	 * @param id of member
+	 * @return one past the last edge of member
+	 */
+	public int endEdge(int id) {
+		return offsets[id + 1];
+	}
+
+	/**
+	 * @param edge
+	 * @return id of the teammate at the end of the edge
+	 */
+	public int neighbor(int edge) {
+		return neighbors[edge];
+	}
+
+	/**
+	 * @param edge
+	 * @return number of teams shared across the edge
+	 */
+	public int links(int edge) {
+		return links[edge];
+	}
+
+	/**
+	 * @param edge
+	 * @return the same teammate relation seen from the other side, -1 if the
+	 * 	relation is one way.
+	 */
+	public int reverse(int edge) {
+		return reverse[edge];
+	}
+
+	/**
+	 * @param edge
+	 * @return whether the teammate has been matched with in this cycle
+	 */
+	public boolean matchedInCycle(int edge) {
+		return matchedInCycle[edge];
+	}
+
+	/**
+	 * @param edge
+	 * @return whether the member was matched with the teammate last time
+	 */
+	public boolean matchedLastTime(int edge) {
+		return matchedLastTime[edge];
+	}
+
+	/**
+	 * @param edge
+	 * @return the Teammate wrapper behind the edge
+	 */
+	public Teammate teammate(int edge) {
+		return teammates[edge];
+	}
+}
@@ -25,18 +25,78 @@ import oneplusone.Person.Teammate;
 public class PairingAssignment {
 	private static final boolean TEST = WeightedCSP.TEST; 
 	public static final int MAX_COST = 5; // per teammate add
-	private HashMap<Person, HashSet<Person>> pairings; 
+	private OrganizationSnapshot snapshot; // teammate data, compiled lazily
+	private ArrayList<Person> members; // index => member
+	private HashMap<Person, Integer> indices; // member => index
+	private int words; // number of longs in a bitset over members
+	private long[][] pairings; // bitset per member of who they are paired with
+	private int[] partnerCount; // number of bits set in pairings[i]
+	private long[] hasPartner; // bitset of members with at least one partner
+	
+	// teammate data for a member, captured from the snapshot the first time 
+	// their teammates are sorted.
+	private long[][] teammateBits;
+	private long[][] lastTimeBits;
+	private long[][] inCycleBits;
+	private int[] edgeByIndex; // scratch, teammate index => edge
+	
+	// set by the solver that produced the assignment
+	private int cost; 
+	private int lowerBound; // proven lower bound on the optimal cost
+	private boolean optimal = true; // false if the solver stopped early
+	
+	// set by PairingSolvers, null if the solver was used directly
+	private String engine;
+	private String engineParameters;
+	private long solveTime; // milliseconds
+	private SolveStats stats; // set by the solver, null if it keeps none
 
 	/**
 	 * Constructor for PairingAssignment
-	 * Instantiates pairings HashMap.
+	 * Gives every member a dense index and instantiates the pairing bitsets.
+	 * Teammate data is compiled from the members the first time it is needed.
 	 * @param sortedMembers, in order used by WeightedCSP
 	 */
 	public PairingAssignment(ArrayList<Person> sortedMembers) {
-		pairings = new HashMap<Person, HashSet<Person>>();
-		for (int i = 0; i < sortedMembers.size(); i++) {
-			pairings.put(sortedMembers.get(i), new HashSet<Person>());
-		}
+		this(null, sortedMembers);
+	}
+	
+	/**
+	 * Constructor for PairingAssignment
+	 * Indices of members are their ids in the snapshot.
+	 * @param snapshot of the members used by WeightedCSP
+	 */
+	public PairingAssignment(OrganizationSnapshot snapshot) {
+		this(snapshot, membersOf(snapshot));
+	}
+	
+	private PairingAssignment(OrganizationSnapshot snapshot, 
+			ArrayList<Person> sortedMembers) {
+		int n = sortedMembers.size();
+		this.snapshot = snapshot;
+		members = new ArrayList<Person>(sortedMembers);
+		indices = new HashMap<Person, Integer>();
+		for (int i = 0; i < n; i++) { indices.put(sortedMembers.get(i), i); }
+		
+		words = (n + 63) >>> 6;
+		pairings = new long[n][words];
+		partnerCount = new int[n];
+		hasPartner = new long[words];
+		
+		teammateBits = new long[n][];
+		lastTimeBits = new long[n][];
+		inCycleBits = new long[n][];
+		edgeByIndex = new int[n];
+	}
+	
+	/**
+	 * @param snapshot
+	 * @return members of the snapshot, in id order
+	 */
+	private static ArrayList<Person> membersOf(OrganizationSnapshot snapshot) {
+		ArrayList<Person> members = new ArrayList<Person>(snapshot.size());
+		for (int i = 0; i < snapshot.size(); i++) { members.add(snapshot.member(i)); }
+		return members;
 	}
 	
 	/**
@@ -51,37 +111,71 @@ public class PairingAssignment {
 	 * 4 - last person matched up with (includes previous match up)
 	 * 5 - last person matched up with, matched with someone else 
 	 * 
+	 * @see getSortedEdges()
 	 * @param p Person to get teammates from
 	 * @return 2D arraylist, index is the cost of pairing and, value is list of
 	 * 	list of teammates at that cost.
 	 */
 	public ArrayList<ArrayList<Teammate>> getSortedTeammates(Person p, String tabs) {
 		if (p == null) { return null; }
-		if (TEST) { System.out.println(tabs + "\tsorting teammates"); }
+		
+		ArrayList<ArrayList<Integer>> edges = getSortedEdges(indices.get(p), tabs);
 		
 		ArrayList<ArrayList<Teammate>> sorted= new ArrayList<ArrayList<Teammate>>();
-		for (int c = 0; c <= MAX_COST; c++) {sorted.add(new ArrayList<Teammate>());}
-		
-		for (Teammate tm : p.getTeammates()) {
-			boolean matchedPreviously = tm.matchedInCycle();
-			boolean matchedUp = pairings.get(tm.person).size() > 0;
-			boolean matchedLastTime = p.previouslyMatchedWith(tm.person);
-			boolean alreadyPaired = pairings.get(p).contains(tm.person);
-			int cost;
+		for (int c = 0; c <= MAX_COST; c++) {
+			sorted.add(new ArrayList<Teammate>());
+			for (int e : edges.get(c)) { sorted.get(c).add(snapshot.teammate(e)); }
+		}
+		
+		return sorted;
+	}
+	
+	/**
+	 * Same as getSortedTeammates(), but by index, returning snapshot edges.
+	 * 
+	 * Costs are worked out a word (64 members) at a time by combining the 
+	 * teammate, history and pairing bitsets, rather than checking each flag of
+	 * each teammate separately.
+	 * 
+	 * @param i index of member to get teammates from
+	 * @return 2D arraylist, index is the cost of pairing and, value is list of
+	 * 	edges to teammates at that cost.
+	 */
+	public ArrayList<ArrayList<Integer>> getSortedEdges(int i, String tabs) {
+		if (TEST) { System.out.println(tabs + "\tsorting teammates"); }
+		
+		ArrayList<ArrayList<Integer>> sorted= new ArrayList<ArrayList<Integer>>();
+		for (int c = 0; c <= MAX_COST; c++) {sorted.add(new ArrayList<Integer>());}
+		
+		if (teammateBits[i] == null) { captureTeammates(i); }
+		
+		long[] tmBits = teammateBits[i];
+		long[] last = lastTimeBits[i];
+		long[] inCycle = inCycleBits[i];
+		long[] paired = pairings[i];
+		for (int e = snapshot.firstEdge(i); e < snapshot.endEdge(i); e++) {
+			edgeByIndex[snapshot.neighbor(e)] = e;
+		}
+		
+		for (int w = 0; w < words; w++) {
+			long tm = tmBits[w];
+			if (tm == 0) { continue; }
 			
-			// determine cost of teammate based on values
-			if (alreadyPaired) { cost = 0; } // already paired with teammate
-			else if (matchedLastTime & matchedUp) { cost = 5; } 
-			else if (matchedLastTime) { cost = 4; } 
-			else if (matchedPreviously) { cost = 3; } 
-			else if (matchedUp) { cost = 2; } 
-			else { cost = 1; } // regular add, no issues
+			long alreadyPaired = tm & paired[w];
+			long rest = tm & ~alreadyPaired;
+			long matchedUp = hasPartner[w];
+			long lastTime = rest & last[w];
+			long previously = rest & ~last[w] & inCycle[w];
+			long fresh = rest & ~last[w] & ~inCycle[w];
 			
-			// add teammates to array under appropriate cost
-			sorted.get(cost).add(tm);
-			if (TEST) {
-				System.out.println(tabs+"\t\t"+ tm.person +" given cost of "+ cost);
-			}
+			// determine cost of teammates based on values, add to array under the
+			// appropriate cost
+			addEdges(sorted.get(0), alreadyPaired, w, tabs);
+			addEdges(sorted.get(1), fresh & ~matchedUp, w, tabs);
+			addEdges(sorted.get(2), fresh & matchedUp, w, tabs);
+			addEdges(sorted.get(3), previously, w, tabs);
+			addEdges(sorted.get(4), lastTime & ~matchedUp, w, tabs);
+			addEdges(sorted.get(5), lastTime & matchedUp, w, tabs);
 		}
 		
 		// shuffle teammates that have the same cost
@@ -90,14 +184,66 @@ public class PairingAssignment {
 		return sorted;
 	}
 	
+	/**
+	 * Adds the edges to the teammates whose bits are set in one word of a cost 
+	 * class.
+	 * @param list of edges at a cost
+	 * @param bits of the cost class in word w
+	 * @param w index of word
+	 */
+	private void addEdges(ArrayList<Integer> list, long bits, int w, 
+			String tabs) {
+		while (bits != 0) {
+			int index = (w << 6) + Long.numberOfTrailingZeros(bits);
+			bits &= bits - 1;
+			list.add(edgeByIndex[index]);
+			if (TEST) { System.out.println(tabs+"\t\t"+ members.get(index) +" added"); }
+		}
+	}
+	
+	/**
+	 * Builds the teammate, last-time and in-cycle bitsets for a member from the
+	 * snapshot, compiling the snapshot first if needed.
+	 * @param i index of member
+	 */
+	private void captureTeammates(int i) {
+		if (snapshot == null) { snapshot = OrganizationSnapshot.compile(members); }
+		
+		long[] tmBits = new long[words];
+		long[] last = new long[words];
+		long[] inCycle = new long[words];
+		
+		for (int e = snapshot.firstEdge(i); e < snapshot.endEdge(i); e++) {
+			int index = snapshot.neighbor(e);
+			int word = index >>> 6;
+			long bit = 1L << index;
+			tmBits[word] |= bit;
+			if (snapshot.matchedLastTime(e)) { last[word] |= bit; }
+			if (snapshot.matchedInCycle(e)) { inCycle[word] |= bit; }
+		}
+		
+		teammateBits[i] = tmBits;
+		lastTimeBits[i] = last;
+		inCycleBits[i] = inCycle;
+	}
+	
 	/**
 	 * Assigns a person-teammate pair. Does both sides.
 	 * @param Person 
 	 * @param Teammate
 	 */
 	public void assignPairing(Person person, Teammate teammate) {
-		pairings.get(person).add(teammate.person);			
-		pairings.get(teammate.person).add(person);
+		assignPairing(indices.get(person), indices.get(teammate.person));
+	}
+	
+	/**
+	 * Assigns a pair by index. Does both sides.
+	 * @param i index of member
+	 * @param j index of teammate
+	 */
+	public void assignPairing(int i, int j) {
+		setPaired(i, j);
+		setPaired(j, i);
 	}
 	
 	/**
@@ -106,8 +252,62 @@ public class PairingAssignment {
 	 * @param Teammate teammate
 	 */
 	public void unassignPairing(Person person, Teammate teammate) {
-		pairings.get(person).remove(teammate.person);		
-		pairings.get(teammate.person).remove(person);
+		unassignPairing(indices.get(person), indices.get(teammate.person));
+	}
+	
+	/**
+	 * Unassigns a pair by index. Does both sides.
+	 * @param i index of member
+	 * @param j index of teammate
+	 */
+	public void unassignPairing(int i, int j) {
+		clearPaired(i, j);
+		clearPaired(j, i);
+	}
+	
+	/**
+	 * Marks j as one of i's partners, keeping partner counts in step.
+	 */
+	private void setPaired(int i, int j) {
+		long bit = 1L << j;
+		if ((pairings[i][j >>> 6] & bit) != 0) { return; }
+		pairings[i][j >>> 6] |= bit;
+		if (partnerCount[i]++ == 0) { hasPartner[i >>> 6] |= 1L << i; }
+	}
+	
+	/**
+	 * Removes j from i's partners, keeping partner counts in step.
+	 */
+	private void clearPaired(int i, int j) {
+		long bit = 1L << j;
+		if ((pairings[i][j >>> 6] & bit) == 0) { return; }
+		pairings[i][j >>> 6] &= ~bit;
+		if (--partnerCount[i] == 0) { hasPartner[i >>> 6] &= ~(1L << i); }
+	}
+	
+	/**
+	 * @param i index of member
+	 * @param j index of teammate
+	 * @return whether the members at i and j are paired
+	 */
+	boolean isPaired(int i, int j) {
+		return (pairings[i][j >>> 6] & (1L << j)) != 0;
+	}
+	
+	/**
+	 * @param i index of member
+	 * @return the partners of the member at index i.
+	 */
+	private HashSet<Person> partnersOf(int i) {
+		HashSet<Person> partners = new HashSet<Person>();
+		for (int w = 0; w < words; w++) {
+			long bits = pairings[i][w];
+			while (bits != 0) {
+				partners.add(members.get((w << 6) + Long.numberOfTrailingZeros(bits)));
+				bits &= bits - 1;
+			}
+		}
+		return partners;
 	}
 
 	/**
@@ -115,7 +315,7 @@ public class PairingAssignment {
 	 * @return whether or not the assignment is complete at this point
 	 */
 	public boolean isCompleted(int indexOfMember) {
-		return indexOfMember >= pairings.keySet().size();
+		return indexOfMember >= members.size();
 	}
 	
 	/**
@@ -124,8 +324,9 @@ public class PairingAssignment {
 	 * been matched up with before.
 	 */
 	public void record() {
-		for (Person p : pairings.keySet()) {
-			p.setPreviousMatchups(pairings.get(p));
+		for (int i = 0; i < members.size(); i++) {
+			Person p = members.get(i);
+			p.setPreviousMatchups(partnersOf(i));
 			
 			if (p.cycleFull()) {
 				if (TEST) { System.out.println("resetting cycle for " + p); }
@@ -134,6 +335,116 @@ public class PairingAssignment {
 		}
 	}
 	
+	/**
+	 * Adds every pair of another assignment to this one. Every member of the 
+	 * other assignment must be a member of this one.
+	 * @param part assignment of some of the members, such as one component
+	 */
+	void merge(PairingAssignment part) {
+		for (int i = 0; i < part.members.size(); i++) {
+			int member = indices.get(part.members.get(i));
+			for (int w = 0; w < part.words; w++) {
+				long bits = part.pairings[i][w];
+				while (bits != 0) {
+					int j = (w << 6) + Long.numberOfTrailingZeros(bits);
+					setPaired(member, indices.get(part.members.get(j)));
+					bits &= bits - 1;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Called by the solver once the assignment is final.
+	 * @param cost of the assignment
+	 * @param lowerBound proven lower bound on the cost of any assignment
+	 * @param optimal whether the cost is proven to be the lowest possible
+	 */
+	void setResult(int cost, int lowerBound, boolean optimal) {
+		this.cost = cost;
+		this.lowerBound = lowerBound;
+		this.optimal = optimal;
+	}
+	
+	/**
+	 * Called by PairingSolvers with the engine that produced the assignment.
+	 * @param engine name
+	 * @param parameters of the engine
+	 */
+	void setEngine(String engine, String parameters) {
+		this.engine = engine;
+		this.engineParameters = parameters;
+	}
+	
+	/**
+	 * Called by PairingSolvers once the engine is done.
+	 * @param millis the engine took
+	 */
+	void setSolveTime(long millis) {
+		solveTime = millis;
+	}
+	
+	/**
+	 * Called by the solver that produced the assignment.
+	 * @param stats of the solve
+	 */
+	void setStats(SolveStats stats) {
+		this.stats = stats;
+	}
+	
+	/**
+	 * @return what the solve that produced the assignment did, null if the 
+	 * 	solver keeps no stats
+	 */
+	public SolveStats getStats() {
+		return stats;
+	}
+	
+	/**
+	 * @return name of the engine that produced the assignment, null if it was 
+	 * 	not solved through PairingSolvers
+	 */
+	public String getEngine() {
+		return engine;
+	}
+	
+	/**
+	 * @return parameters of the engine that produced the assignment
+	 */
+	public String getEngineParameters() {
+		return engineParameters;
+	}
+	
+	/**
+	 * @return milliseconds the engine took to produce the assignment
+	 */
+	public long getSolveTime() {
+		return solveTime;
+	}
+	
+	/**
+	 * @return cost of the assignment, as counted by the solver
+	 */
+	public int getCost() {
+		return cost;
+	}
+	
+	/**
+	 * @return proven lower bound on the cost of any assignment of these members.
+	 * 	Equal to getCost() if the assignment is optimal.
+	 */
+	public int getLowerBound() {
+		return lowerBound;
+	}
+	
+	/**
+	 * @return whether the assignment is proven optimal. False if the solver ran
+	 * 	out of time or was cancelled before finishing its search.
+	 */
+	public boolean isOptimal() {
+		return optimal;
+	}
+	
 	/**
 	 * Used in unit testing.
 	 * @return copy of the pairings established.
@@ -142,8 +453,8 @@ public class PairingAssignment {
 		HashMap<Person, HashSet<Person>> newPairings = 
 				new HashMap<Person, HashSet<Person>>();
 		
-		for (Person key : pairings.keySet()) {
-			newPairings.put(key, new HashSet<Person>(pairings.get(key)));
+		for (int i = 0; i < members.size(); i++) {
+			newPairings.put(members.get(i), partnersOf(i));
 		}
 		
 		return newPairings;
@@ -156,18 +467,18 @@ public class PairingAssignment {
 		StringBuffer pairingsBuffer = new StringBuffer();
 		
 		// get members, sort alphabetically
-		ArrayList<Person> members = new ArrayList<Person>(pairings.keySet());
-		Collections.sort(members, new AlphaCompare());
+		ArrayList<Person> alphabetical = new ArrayList<Person>(members);
+		Collections.sort(alphabetical, new AlphaCompare());
 		
 		Date date = new Date();
 		pairingsBuffer.append("\n1+1 Pairings generated for " + date + ": \n");
 		
 		// print member
-		for (Person member : members) {
+		for (Person member : alphabetical) {
 			pairingsBuffer.append("\t" + member.getName() + ": \n");
 			
 			// print matches with member
-			for (Person paired : pairings.get(member)) {
+			for (Person paired : partnersOf(indices.get(member))) {
 				pairingsBuffer.append("\t\t" + paired.getName() + "\n");
 			}			
 		}
@@ -37,6 +37,9 @@ public class PairingDriver {
 	
 		System.out.println("\tEXECUTE");
 		System.out.println("\t\trun\t\trun pairings for this week."); //TODO run
+		System.out.println("\t\trep\t\trepair this week's pairings after edits.");
+		System.out.println("\t\tplan\t\tplan pairings for the next weeks.");
+		System.out.println("\t\teng\t\tchoose pairing engine.");
 		
 		System.out.println("\tVIEW");
 		System.out.println("\t\tvo\t\tview organization tree");
@@ -55,6 +58,8 @@ public class PairingDriver {
 		System.out.println("\t\tdorg\t\tdelete organization");
 
 		System.out.println("\tOTHER");
+		System.out.println("\t\tmet\t\tview solver metrics");
+		System.out.println("\t\ttr\t\tturn search tracing on or off, or view it");
 		System.out.println("\t\t?\t\tdisplay commands");
 		System.out.println("\t\tq\t\tquit");
 		System.out.println("\t---------------------------------------------------");
@@ -81,7 +86,10 @@ public class PairingDriver {
 	private static void saveDatabase(Organization org) {
 		if (org == null) { return; }
 		System.out.println("Saving " + org.getName() + "...");
+		long start = System.currentTimeMillis();
 		db.store(org);
+		SearchTrace.record(SearchTrace.SAVE, 0, org.getName(), 
+				System.currentTimeMillis() - start, 0, 0, 0);
 		System.out.println("Saved.");
 	}
 	
@@ -127,6 +135,97 @@ public class PairingDriver {
 		return selected;
 	}
 	
+	/**
+	 * Prompts user for how long run may search for pairings.
+	 * @return budget in milliseconds, 0 for no limit.
+	 */
+	private static long getBudgetFromUser() {
+		while (true) {
+			System.out.print("\nEnter time budget in seconds (blank for no limit): ");
+			String budget = user_input.nextLine().trim();
+			if (budget.isEmpty()) { return 0; }
+			
+			try {
+				return (long) (Double.parseDouble(budget) * 1000);
+			} catch (NumberFormatException e) {
+				System.out.println("\"" + budget + "\" is not a number of seconds.");
+			}
+		}
+	}
+	
+	/**
+	 * Prints pairings, the engine that made them and whether they are optimal.
+	 * @param pairings to print
+	 */
+	private static void displayPairings(PairingAssignment pairings) {
+		System.out.println(pairings);
+		if (pairings.getEngine() != null) {
+			System.out.println("Paired by " + pairings.getEngine() + " (" + 
+					pairings.getEngineParameters() + ") in " + 
+					pairings.getSolveTime() + " ms.");
+		}
+		if (!pairings.isOptimal()) {
+			System.out.println("Not proven optimal. Cost " + 
+					pairings.getCost() + ", lowest possible is at least " + 
+					pairings.getLowerBound() + ".");
+		}
+	}
+	
+	/**
+	 * Prompts the user for the engine an organization is paired with.
+	 * @param org to set the engine of
+	 */
+	private static void setEngineFromUser(Organization org) {
+		System.out.println("\nEngines: " + PairingSolvers.names() + 
+				" (currently " + org.getEngine() + ")");
+		while (true) {
+			System.out.print("Enter engine (blank to keep): ");
+			String engine = user_input.nextLine().trim();
+			if (engine.isEmpty() || org.setEngine(engine)) { return; }
+			System.out.println("\"" + engine + "\" is not an engine.");
+		}
+	}
+	
+	/**
+	 * Turns search tracing on or off, or prints the events traced so far, as 
+	 * the user chooses.
+	 */
+	private static void traceFromUser() {
+		System.out.println("\nTracing is " + 
+				(SearchTrace.isEnabled() ? "on" : "off") + ".");
+		System.out.print("Enter on, off or view: ");
+		String choice = user_input.nextLine().trim();
+		
+		if (choice.equals("on")) {
+			SearchTrace.enable(SearchTrace.DEFAULT_CAPACITY);
+		} else if (choice.equals("off")) {
+			SearchTrace.disable();
+		} else if (choice.equals("view")) {
+			for (String event : SearchTrace.events()) { System.out.println(event); }
+			System.out.println(SearchTrace.getCount() + " events traced, the last " + 
+					SearchTrace.DEFAULT_CAPACITY + " are kept.");
+		}
+	}
+	
+	/**
+	 * Prompts the user for a number of weeks to plan.
+	 * @return number of weeks, at least 1
+	 */
+	private static int getWeeksFromUser() {
+		while (true) {
+			System.out.print("\nEnter number of weeks to plan: ");
+			String weeks = user_input.nextLine().trim();
+			
+			try {
+				int count = Integer.parseInt(weeks);
+				if (count >= 1) { return count; }
+			} catch (NumberFormatException e) {
+				// asked again below
+			}
+			System.out.println("\"" + weeks + "\" is not a number of weeks.");
+		}
+	}
+	
 	/**
 	 * Retrieves an existing team from the user given a selected organization.
 	 * @see getOrganizationFromUser()
@@ -305,7 +404,7 @@ public class PairingDriver {
 		if (member == null) { return; }
 		
 		// remove member from team
-		team.removeMember(member);
+		org.removeMemberFromTeam(member.getName(), team.getName());
 		
 		saveDatabase(org);
 	}
@@ -484,11 +583,46 @@ public class PairingDriver {
 				case "run":
 					selected = getOrganizationFromUser();
 					if (selected != null) {
-						System.out.println(selected.getPairings());
+						displayPairings(selected.getPairings(getBudgetFromUser(), null));
 						saveDatabase(selected); // save matchups
 					}
 					break;
 				
+				// re-pair only the members affected by edits since the last run
+				case "rep":
+					selected = getOrganizationFromUser();
+					if (selected != null) {
+						displayPairings(selected.repairPairings(getBudgetFromUser(), null));
+						saveDatabase(selected); // save matchups
+					}
+					break;
+				
+				// plan the next weeks, later runs use the plan
+				case "plan":
+					selected = getOrganizationFromUser();
+					if (selected != null) {
+						int weeks = getWeeksFromUser();
+						int total = 0;
+						for (PairingAssignment week : 
+								selected.planPairings(weeks, getBudgetFromUser(), null)) {
+							System.out.println(week);
+							total += week.getCost();
+						}
+						System.out.println("Planned " + weeks + " weeks, total cost " + 
+								total + ". Each run uses the next week of the plan.");
+						saveDatabase(selected); // save plan
+					}
+					break;
+				
+				// choose the engine pairings are made with
+				case "eng":
+					selected = getOrganizationFromUser();
+					if (selected != null) {
+						setEngineFromUser(selected);
+						saveDatabase(selected);
+					}
+					break;
+				
 				// add member to team
 				case "amt":
 					selected = getOrganizationFromUser();
@@ -552,6 +686,16 @@ public class PairingDriver {
 					loadOrganizationFromFile();
 					break;
 			
+				// solver metrics, also published through JMX
+				case "met":
+					System.out.println("\n" + SolverMetrics.get().report());
+					break;
+				
+				// search tracing
+				case "tr":
+					traceFromUser();
+					break;
+				
 				// help
 				case "?":	
 					displayCommands(); 
@@ -0,0 +1,40 @@
+/**
+ * PairingSolver.java
+ *
+ * An engine that pairs the members of a snapshot. Engines are registered by
+ * name in PairingSolvers, which Organization picks its engine from.
+ *
+ * An engine is shared by every solve, possibly from several threads at once,
+ * so it keeps no state between searches.
+ */
+
+package oneplusone;
+
+import java.util.Random;
+
+public interface PairingSolver {
+
+	/**
+	 * @return name the engine is registered under
+	 */
+	String getName();
+
+	/**
+	 * @return settings of the engine, recorded with each of its results
+	 */
+	String getParameters();
+
+	/**
+	 * Pairs the members of the snapshot without recording the result into them.
+	 * The cost, lower bound and whether it is optimal are set on the result.
+	 * @param snapshot to pair
+	 * @param deadline System.currentTimeMillis() after which to stop, or
+	 * 	WeightedCSP.NO_DEADLINE. Engines that cannot stop early ignore it.
+	 * @param token to cancel the search with, or null
+	 * @param random to order teammates of equal cost with, or null for an
+	 * 	unseeded one
+	 * @return best PairingAssignment found
+	 */
+	PairingAssignment search(OrganizationSnapshot snapshot, long deadline,
+			CancellationToken token, Random random);
+}
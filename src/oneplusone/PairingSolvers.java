@@ -0,0 +1,379 @@
+/**
+ * PairingSolvers.java
+ *
+ * Registry of the engines that can pair an organization, by name:
+ *
+ * 	exact		ComponentWeightedCSP, optimal, exponential in the worst case
+ * 	parallel	ParallelWeightedCSP, optimal, on several threads, cannot stop early
+ * 	matching	MinCostMatching, polynomial, never cheaper than exact
+ * 	auto		exact or matching, chosen for each component of the teammate graph
+ * 	limited		LimitedWeightedCSP on each component, a few teammates per member
+ * 	annealing	AnnealingSearch, local search for very large organizations
+ * 	roundrobin	RoundRobin for components that are cliques, exact for the others
+ *
+ * auto searches a component exactly when it has at most AUTO_EXACT_EDGES
+ * teammate edges, a measure of both its size and how densely its members are
+ * teammates, and pairs larger ones by matching. Past that size the exact
+ * search of a component can take far longer than a run should. An exact
+ * search is given the time budget, or AUTO_EXACT_MILLIS without one. If it
+ * runs out of time, the matching is worked out as well and the cheaper of the
+ * two is kept, with the higher of their lower bounds. The budget does not
+ * take part in the choice itself, which is made on size alone before any
+ * search, so a short budget on a small component still starts exact and
+ * relies on the fallback.
+ *
+ * limited is for very large teams, where exact spends its time sorting every
+ * teammate at every node. Each member tries only their LIMITED_TEAMMATES
+ * cheapest teammates, more if a search of those ends above the lower bound.
+ *
+ * roundrobin pairs a component whose members are all teammates of each other
+ * by the week of a round-robin schedule, in linear time, and searches the
+ * others as exact does.
+ *
+ * solve() records which engine made a result, its parameters and how long it
+ * took in the PairingAssignment, and passes its stats on to SolverMetrics.
+ */
+
+package oneplusone;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class PairingSolvers {
+	public static final String EXACT = "exact";
+	public static final String PARALLEL = "parallel";
+	public static final String MATCHING = "matching";
+	public static final String AUTO = "auto";
+	public static final String LIMITED = "limited";
+	public static final String ANNEALING = "annealing";
+	public static final String ROUND_ROBIN = "roundrobin";
+	public static final String DEFAULT = AUTO;
+	static final int AUTO_EXACT_EDGES = 200; // most edges searched exactly
+	static final long AUTO_EXACT_MILLIS = 5000; // exact search without a budget
+	static final int LIMITED_TEAMMATES = LimitedWeightedCSP.DEFAULT_LIMIT;
+	private static final int THREADS = Runtime.getRuntime().availableProcessors();
+	private static final LinkedHashMap<String, PairingSolver> engines =
+			new LinkedHashMap<String, PairingSolver>();
+
+	static {
+		register(new Exact());
+		register(new Parallel());
+		register(new Matching());
+		register(new Auto());
+		register(new Limited());
+		register(new Annealing());
+		register(new RoundRobinEngine());
+	}
+
+	/**
+	 * Adds an engine, replacing any registered under the same name.
+	 * @param engine to add
+	 */
+	public static synchronized void register(PairingSolver engine) {
+		engines.put(engine.getName(), engine);
+	}
+
+	/**
+	 * @param name of engine
+	 * @return engine registered under the name, null if there is none
+	 */
+	public static synchronized PairingSolver get(String name) {
+		return engines.get(name);
+	}
+
+	/**
+	 * @return names of the registered engines, in the order they were added
+	 */
+	public static synchronized ArrayList<String> names() {
+		return new ArrayList<String>(engines.keySet());
+	}
+
+	/**
+	 * Pairs a snapshot with the named engine, without recording the result.
+	 * @param name of engine
+	 * @param snapshot to pair
+	 * @param budget in milliseconds, 0 or less for no limit
+	 * @param token to cancel the search with, or null
+	 * @param random to order teammates of equal cost with, or null
+	 * @return best PairingAssignment found, with the engine that found it
+	 * @throws IllegalArgumentException if no engine has the name
+	 */
+	public static PairingAssignment solve(String name,
+			OrganizationSnapshot snapshot, long budget, CancellationToken token,
+			Random random) {
+		PairingSolver engine = get(name);
+		if (engine == null) {
+			throw new IllegalArgumentException("No pairing engine named " + name);
+		}
+
+		long start = System.currentTimeMillis();
+		long deadline = WeightedCSP.NO_DEADLINE;
+		if (budget > 0) { deadline = start + budget; }
+		PairingAssignment result = engine.search(snapshot, deadline, token, random);
+
+		// engines made of others may have said which they used
+		if (result.getEngine() == null) {
+			result.setEngine(engine.getName(), engine.getParameters());
+		}
+		result.setSolveTime(System.currentTimeMillis() - start);
+
+		// engines that do not search a tree keep no stats of their own
+		SolveStats stats = result.getStats();
+		if (stats == null) {
+			stats = new SolveStats();
+			result.setStats(stats);
+		}
+		stats.cost = result.getCost();
+		stats.lowerBound = result.getLowerBound();
+		stats.optimal = result.isOptimal();
+		stats.solveMillis = result.getSolveTime();
+		SolverMetrics.get().record(result.getEngine(), stats);
+		return result;
+	}
+
+	/**
+	 * ComponentWeightedCSP, each component on its own thread.
+	 */
+	private static class Exact implements PairingSolver {
+		public String getName() {
+			return EXACT;
+		}
+
+		public String getParameters() {
+			return "parallelism=" + THREADS;
+		}
+
+		public PairingAssignment search(OrganizationSnapshot snapshot,
+				long deadline, CancellationToken token, Random random) {
+			ComponentWeightedCSP csp = new ComponentWeightedCSP(snapshot, THREADS);
+			csp.setRandom(random);
+			return csp.search(deadline, token);
+		}
+	}
+
+	/**
+	 * ParallelWeightedCSP over the whole snapshot.
+	 */
+	private static class Parallel implements PairingSolver {
+		public String getName() {
+			return PARALLEL;
+		}
+
+		public String getParameters() {
+			return "threads=" + THREADS + ", no deadline";
+		}
+
+		public PairingAssignment search(OrganizationSnapshot snapshot,
+				long deadline, CancellationToken token, Random random) {
+			ParallelWeightedCSP csp = new ParallelWeightedCSP(snapshot, THREADS);
+			if (random != null) { csp.random = random; }
+			return csp.search();
+		}
+	}
+
+	/**
+	 * MinCostMatching over the whole snapshot.
+	 */
+	private static class Matching implements PairingSolver {
+		public String getName() {
+			return MATCHING;
+		}
+
+		public String getParameters() {
+			return "";
+		}
+
+		public PairingAssignment search(OrganizationSnapshot snapshot,
+				long deadline, CancellationToken token, Random random) {
+			MinCostMatching matching = new MinCostMatching(snapshot);
+			if (random != null) { matching.random = random; }
+			return matching.search();
+		}
+	}
+
+	/**
+	 * Exact or matching for each component, see the top of the file.
+	 */
+	private static class Auto implements PairingSolver {
+		public String getName() {
+			return AUTO;
+		}
+
+		public String getParameters() {
+			return "exactEdges=" + AUTO_EXACT_EDGES 
+					+ ", exactMillis=" + AUTO_EXACT_MILLIS;
+		}
+
+		public PairingAssignment search(OrganizationSnapshot snapshot,
+				long deadline, CancellationToken token, Random random) {
+			final AtomicInteger exact = new AtomicInteger();
+			final AtomicInteger matched = new AtomicInteger();
+			final AtomicInteger fellBack = new AtomicInteger();
+
+			ComponentWeightedCSP csp = new ComponentWeightedCSP(snapshot, THREADS);
+			csp.setRandom(random);
+			csp.setEngine(new PairingSolver() {
+				public String getName() {
+					return AUTO;
+				}
+
+				public String getParameters() {
+					return "";
+				}
+
+				public PairingAssignment search(OrganizationSnapshot component,
+						long deadline, CancellationToken token, Random random) {
+					if (component.edgeCount() > AUTO_EXACT_EDGES) {
+						matched.incrementAndGet();
+						return new Matching().search(component, deadline, token, random);
+					}
+
+					long exactDeadline = deadline;
+					if (deadline == WeightedCSP.NO_DEADLINE) {
+						exactDeadline = System.currentTimeMillis() + AUTO_EXACT_MILLIS;
+					}
+					WeightedCSP search = new WeightedCSP(component);
+					if (random != null) { search.random = random; }
+					PairingAssignment result = search.search(exactDeadline, token);
+					if (result.isOptimal()) {
+						exact.incrementAndGet();
+						return result;
+					}
+
+					// out of time, the matching may have done better
+					fellBack.incrementAndGet();
+					PairingAssignment matching =
+							new Matching().search(component, deadline, token, random);
+					int lowerBound = 
+							Math.max(result.getLowerBound(), matching.getLowerBound());
+					if (matching.getCost() < result.getCost()) { result = matching; }
+					result.setResult(result.getCost(), lowerBound, 
+							result.getCost() <= lowerBound);
+					return result;
+				}
+			});
+
+			PairingAssignment result = csp.search(deadline, token);
+			result.setEngine(AUTO, getParameters() + ", components exact=" 
+					+ exact + " matching=" + matched + " fell back=" + fellBack);
+			return result;
+		}
+	}
+	/**
+	 * LimitedWeightedCSP for each component, see the top of the file.
+	 */
+	private static class Limited implements PairingSolver {
+		public String getName() {
+			return LIMITED;
+		}
+
+		public String getParameters() {
+			return "teammates=" + LIMITED_TEAMMATES;
+		}
+
+		public PairingAssignment search(OrganizationSnapshot snapshot,
+				long deadline, CancellationToken token, Random random) {
+			final AtomicInteger widened = new AtomicInteger();
+
+			ComponentWeightedCSP csp = new ComponentWeightedCSP(snapshot, THREADS);
+			csp.setRandom(random);
+			csp.setEngine(new PairingSolver() {
+				public String getName() {
+					return LIMITED;
+				}
+
+				public String getParameters() {
+					return "";
+				}
+
+				public PairingAssignment search(OrganizationSnapshot component,
+						long deadline, CancellationToken token, Random random) {
+					LimitedWeightedCSP search = 
+							new LimitedWeightedCSP(component, LIMITED_TEAMMATES);
+					if (random != null) { search.setRandom(random); }
+					PairingAssignment result = search.search(deadline, token);
+					if (search.getWidenings() > 0) { widened.incrementAndGet(); }
+					return result;
+				}
+			});
+
+			PairingAssignment result = csp.search(deadline, token);
+			result.setEngine(LIMITED, getParameters() + ", components widened=" 
+					+ widened);
+			return result;
+		}
+	}
+
+	/**
+	 * AnnealingSearch over the whole snapshot.
+	 */
+	private static class Annealing implements PairingSolver {
+		public String getName() {
+			return ANNEALING;
+		}
+
+		public String getParameters() {
+			return "restarts=" + AnnealingSearch.DEFAULT_RESTARTS;
+		}
+
+		public PairingAssignment search(OrganizationSnapshot snapshot,
+				long deadline, CancellationToken token, Random random) {
+			AnnealingSearch search = new AnnealingSearch(snapshot);
+			if (random != null) { search.setRandom(random); }
+			return search.search(deadline, token);
+		}
+	}
+
+	/**
+	 * RoundRobin or WeightedCSP for each component, see the top of the file.
+	 */
+	private static class RoundRobinEngine implements PairingSolver {
+		public String getName() {
+			return ROUND_ROBIN;
+		}
+
+		public String getParameters() {
+			return "";
+		}
+
+		public PairingAssignment search(OrganizationSnapshot snapshot,
+				long deadline, CancellationToken token, Random random) {
+			final AtomicInteger scheduled = new AtomicInteger();
+			final AtomicInteger searched = new AtomicInteger();
+
+			ComponentWeightedCSP csp = new ComponentWeightedCSP(snapshot, THREADS);
+			csp.setRandom(random);
+			csp.setEngine(new PairingSolver() {
+				public String getName() {
+					return ROUND_ROBIN;
+				}
+
+				public String getParameters() {
+					return "";
+				}
+
+				public PairingAssignment search(OrganizationSnapshot component,
+						long deadline, CancellationToken token, Random random) {
+					if (RoundRobin.isClique(component)) {
+						scheduled.incrementAndGet();
+						RoundRobin search = new RoundRobin(component);
+						if (random != null) { search.setRandom(random); }
+						return search.search();
+					}
+
+					searched.incrementAndGet();
+					WeightedCSP search = new WeightedCSP(component);
+					if (random != null) { search.random = random; }
+					return search.search(deadline, token);
+				}
+			});
+
+			PairingAssignment result = csp.search(deadline, token);
+			result.setEngine(ROUND_ROBIN, "components round robin=" + scheduled 
+					+ " searched=" + searched);
+			return result;
+		}
+	}
+}
@@ -0,0 +1,251 @@
+/**
+ * ParallelWeightedCSP.java
+ *
+ * Parallel version of WeightedCSP. Finds an assignment of the same (optimal)
+ * cost, using a fork/join pool.
+ *
+ * The top levels of the search tree are split into ForkJoin tasks, each with
+ * its own copy of the search state. Below the split depth each task runs the
+ * same branch and bound as WeightedCSP.wBacktracking. All tasks share one
+ * incumbent cost through an AtomicInteger, so every worker prunes against the
+ * best complete assignment found by any worker.
+ */
+
+package oneplusone;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ParallelWeightedCSP {
+	private static final int TASKS_PER_THREAD = 16; // used to pick split depth
+	private final int parallelism;
+	private ArrayList<Person> people; // compiled into a snapshot on every solve
+	private OrganizationSnapshot snapshot;
+	Random random = new Random(); // orders teammates of equal cost
+	private int[] sortedMembers;
+	private int splitDepth; // depths above this are forked into tasks
+	private AtomicInteger incumbent; // best cost found by any task
+	private int[] bestPath; // depth => edge chosen in best assignment, or -1
+	private AtomicLong nodes; // search nodes over all tasks
+	private ThreadLocal<CandidateBuffer> buffers; // one per worker thread
+
+	/**
+	 * Constructor for ParallelWeightedCSP
+	 * @param people, compiled into a snapshot on each solve()
+	 * @param parallelism, number of worker threads
+	 */
+	public ParallelWeightedCSP(ArrayList<Person> people, int parallelism) {
+		this.people = people;
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Constructor for ParallelWeightedCSP
+	 * @param snapshot to solve
+	 * @param parallelism, number of worker threads
+	 */
+	public ParallelWeightedCSP(OrganizationSnapshot snapshot, int parallelism) {
+		this.snapshot = snapshot;
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Searches for the optimal assignment on a pool of parallelism threads.
+	 * @return optimal PairingAssignment, recorded into the members.
+	 */
+	public PairingAssignment solve() {
+		PairingAssignment assignment = search();
+		assignment.record();
+		return assignment;
+	}
+
+	/**
+	 * solve() without recording the result into the members.
+	 * @see solve()
+	 * @return optimal PairingAssignment
+	 */
+	public PairingAssignment search() {
+		if (people != null) { snapshot = OrganizationSnapshot.compile(people); }
+		sortedMembers = WeightedCSP.sortMembers(snapshot);
+		splitDepth = chooseSplitDepth();
+		incumbent = new AtomicInteger(Integer.MAX_VALUE);
+		bestPath = null;
+		nodes = new AtomicLong();
+		
+		// a task is done with the buffer before it invokes its subtasks, so the
+		// tasks run by one thread can share that thread's buffer.
+		buffers = new ThreadLocal<CandidateBuffer>() {
+			@Override
+			protected CandidateBuffer initialValue() {
+				return new CandidateBuffer(snapshot, sortedMembers.length);
+			}
+		};
+
+		CostTable table = new CostTable(snapshot, random);
+		int[] path = new int[sortedMembers.length];
+
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try {
+			pool.invoke(new SearchTask(new SearchState(table), path, 0, 0));
+		} finally {
+			pool.shutdown();
+		}
+
+		PairingAssignment assignment = new PairingAssignment(snapshot);
+		for (int i = 0; bestPath != null && i < bestPath.length; i++) {
+			if (bestPath[i] != -1) {
+				assignment.assignPairing(sortedMembers[i], snapshot.neighbor(bestPath[i]));
+			}
+		}
+		assignment.setResult(incumbent.get(), incumbent.get(), true);
+
+		return assignment;
+	}
+
+	/**
+	 * @return cost of the assignment found by the last solve
+	 */
+	public int getCost() {
+		return incumbent.get();
+	}
+
+	/**
+	 * @return number of search nodes expanded by all tasks in the last solve
+	 */
+	public long getNodes() {
+		return nodes.get();
+	}
+
+	/**
+	 * Picks the shallowest depth at which the product of the teammate counts
+	 * above it gives every thread several tasks to balance over.
+	 * @return split depth
+	 */
+	private int chooseSplitDepth() {
+		long tasks = 1;
+		int depth = 0;
+		while (depth < sortedMembers.length
+				&& tasks < (long) parallelism * TASKS_PER_THREAD) {
+			tasks *= Math.max(1, snapshot.degree(sortedMembers[depth]));
+			depth++;
+		}
+		return depth;
+	}
+
+	/**
+	 * Offers a complete assignment. Kept if it beats the incumbent.
+	 * @param cost of assignment
+	 * @param path edges chosen at each depth
+	 */
+	private synchronized void offer(int cost, int[] path) {
+		if (bestPath == null || cost < incumbent.get()) {
+			bestPath = path.clone();
+			incumbent.set(cost);
+		}
+	}
+
+	/**
+	 * Task searching the subtree below a partial assignment. Above splitDepth it
+	 * forks one task per candidate, below it searches sequentially.
+	 */
+	private class SearchTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final SearchState state;
+		private final int[] path;
+		private final int depth;
+		private final int costSoFar;
+		private CandidateBuffer candidates;
+		private long expanded;
+
+		SearchTask(SearchState state, int[] path, int depth, int costSoFar) {
+			this.state = state;
+			this.path = path;
+			this.depth = depth;
+			this.costSoFar = costSoFar;
+		}
+
+		@Override
+		protected void compute() {
+			candidates = buffers.get();
+			if (depth < splitDepth && depth < sortedMembers.length) {
+				split();
+			} else {
+				search(depth, costSoFar);
+			}
+			nodes.addAndGet(expanded);
+		}
+
+		/**
+		 * Forks a task for every candidate of the member at this depth that could
+		 * still beat the incumbent, each with its own copy of the state.
+		 */
+		private void split() {
+			expanded++;
+			int current = sortedMembers[depth];
+			int[] start = candidates.sort(depth, current, state);
+			ArrayList<SearchTask> tasks = new ArrayList<SearchTask>();
+
+			for (int cost = 0; cost <= PairingAssignment.MAX_COST
+					&& cost + costSoFar < incumbent.get(); cost++) {
+				for (int k = start[cost]; k < start[cost + 1]; k++) {
+					int edge = candidates.get(k);
+					SearchState copy = new SearchState(state);
+					int[] childPath = path.clone();
+					childPath[depth] = edge;
+					if (cost != 0) { copy.assign(current, edge); }
+					tasks.add(new SearchTask(copy, childPath, depth + 1, costSoFar + cost));
+				}
+			}
+
+			// a member without teammates is skipped
+			if (start[0] == start[PairingAssignment.MAX_COST + 1]) {
+				int[] childPath = path.clone();
+				childPath[depth] = -1;
+				tasks.add(new SearchTask(state, childPath, depth + 1, costSoFar));
+			}
+
+			invokeAll(tasks);
+		}
+
+		/**
+		 * Sequential branch and bound below the split depth, pruning against the
+		 * shared incumbent.
+		 * @param indexOfMember depth
+		 * @param costSoFar
+		 */
+		private void search(int indexOfMember, int costSoFar) {
+			expanded++;
+			if (indexOfMember >= sortedMembers.length) {
+				if (costSoFar < incumbent.get()) { offer(costSoFar, path); }
+				return;
+			}
+
+			int current = sortedMembers[indexOfMember];
+			int[] start = candidates.sort(indexOfMember, current, state);
+
+			for (int cost = 0; cost <= PairingAssignment.MAX_COST
+					&& cost + costSoFar < incumbent.get(); cost++) {
+				for (int k = start[cost]; k < start[cost + 1]; k++) {
+					int edge = candidates.get(k);
+					path[indexOfMember] = edge;
+					boolean newPair = cost != 0;
+					if (newPair) { state.assign(current, edge); }
+
+					search(indexOfMember + 1, costSoFar + cost);
+
+					if (newPair) { state.unassign(current, edge); }
+				}
+			}
+
+			// a member without teammates is skipped
+			if (start[0] == start[PairingAssignment.MAX_COST + 1]) {
+				path[indexOfMember] = -1;
+				search(indexOfMember + 1, costSoFar);
+			}
+		}
+	}
+}
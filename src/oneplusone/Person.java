@@ -24,6 +24,11 @@ public class Person {
 	private HashSet<Person> previousMatch;
 	private int cycleCount;
 	
+	// state before the last setPreviousMatchups(), see undoPreviousMatchups()
+	private HashSet<Person> priorMatch;
+	private int priorCycleCount;
+	private HashSet<String> priorMatchedInCycle;
+	
 	public Person(String memberEmail) {
 		id = memberEmail;
 		teams = new HashMap<String, Team>();
@@ -138,6 +143,13 @@ public class Person {
 		return id.equals(((Person) other).getName());
 	}
 	
+	/**
+	 * Consistent with equals(), so people can be used as hash keys.
+	 */
+	public int hashCode() {
+		return id.hashCode();
+	}
+	
 	public String toString() {
 		return id;
 	}
@@ -165,6 +177,14 @@ public class Person {
 		return cycleCount >= teammates.size();
 	}
 	
+	/**
+	 * @see Person.cycleFull()
+	 * @return number of teammates matched with in this cycle
+	 */
+	public int getCycleCount() {
+		return cycleCount;
+	}
+	
 	/**
 	 * Resets the cycle. Should be called when a cycle is over.
 	 * 
@@ -188,6 +208,21 @@ public class Person {
 		return previousMatch.contains(person);
 	}
 	
+	/**
+	 * @return a copy of the people this person was matched with last week.
+	 */
+	public HashSet<Person> getPreviousMatchups() {
+		return new HashSet<Person>(previousMatch);
+	}
+	
+	/**
+	 * @param person
+	 * @return whether the person shares at least one team with this person.
+	 */
+	public boolean isTeammate(Person person) {
+		return teammates.containsKey(person.getName());
+	}
+	
 	/**
 	 * @return a copy of the teammates of this person.
 	 */
@@ -201,6 +236,13 @@ public class Person {
 	 * @param matchups of people
 	 */
 	public void setPreviousMatchups(HashSet<Person> matchups) {
+		priorMatch = previousMatch;
+		priorCycleCount = cycleCount;
+		priorMatchedInCycle = new HashSet<String>();
+		for (Teammate tm : teammates.values()) {
+			if (tm.matched) { priorMatchedInCycle.add(tm.person.getName()); }
+		}
+		
 		previousMatch = matchups;
 		
 		for (Person tm : matchups) {
@@ -212,6 +254,37 @@ public class Person {
 		}
 	}
 	
+	/**
+	 * Undoes the last setPreviousMatchups(), including any reset of the cycle 
+	 * that followed it, so that the week can be paired again. Teammates added 
+	 * since then are not matched in the cycle. Can only be undone once. Without
+	 * the state from before the week, as for a member loaded from a database 
+	 * written before it was kept, or once undone, the matchups are cleared and 
+	 * taken out of the cycle, as if they had been new in it.
+	 * @see Organization.repairPairings()
+	 */
+	public void undoPreviousMatchups() {
+		if (priorMatch == null) {
+			for (Person partner : previousMatch) {
+				Teammate tm = teammates.get(partner.getName());
+				if (tm != null && tm.matched) {
+					tm.matched = false;
+					cycleCount--;
+				}
+			}
+			previousMatch = new HashSet<Person>();
+			return;
+		}
+		
+		previousMatch = priorMatch;
+		cycleCount = priorCycleCount;
+		for (Teammate tm : teammates.values()) {
+			tm.matched = priorMatchedInCycle.contains(tm.person.getName());
+		}
+		priorMatch = null;
+		priorMatchedInCycle = null;
+	}
+	
 	/**
 	 * Wrapper class for a person.
 	 * Used to store a reference to a teammate along with certain information:
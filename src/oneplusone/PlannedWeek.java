@@ -0,0 +1,93 @@
+/**
+ * PlannedWeek.java
+ *
+ * One week of pairings planned ahead by SchedulePlanner, stored with the
+ * organization until a run uses it. Members are kept by name, so a week still
+ * reads the same after the organization is stored and loaded again.
+ */
+
+package oneplusone;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+
+public class PlannedWeek {
+	private ArrayList<String> pairs; // names, two by two
+	private int cost;
+	private int lowerBound;
+	private boolean optimal;
+	private String engine;
+	private String engineParameters;
+	private long solveTime;
+
+	/**
+	 * Constructor for PlannedWeek
+	 * @param assignment planned for the week
+	 */
+	public PlannedWeek(PairingAssignment assignment) {
+		pairs = new ArrayList<String>();
+		HashMap<Person, HashSet<Person>> pairings = assignment.getCopyOfPairings();
+		for (Person member : pairings.keySet()) {
+			for (Person partner : pairings.get(member)) {
+				if (member.getName().compareTo(partner.getName()) < 0) {
+					pairs.add(member.getName());
+					pairs.add(partner.getName());
+				}
+			}
+		}
+		cost = assignment.getCost();
+		lowerBound = assignment.getLowerBound();
+		optimal = assignment.isOptimal();
+		engine = assignment.getEngine();
+		engineParameters = assignment.getEngineParameters();
+		solveTime = assignment.getSolveTime();
+	}
+
+	/**
+	 * @return number of pairs planned
+	 */
+	public int pairCount() {
+		return pairs.size() / 2;
+	}
+
+	/**
+	 * @param k index of pair
+	 * @return name of the first member of the k-th pair
+	 */
+	public String first(int k) {
+		return pairs.get(2 * k);
+	}
+
+	/**
+	 * @param k index of pair
+	 * @return name of the second member of the k-th pair
+	 */
+	public String second(int k) {
+		return pairs.get(2 * k + 1);
+	}
+
+	public int getCost() {
+		return cost;
+	}
+
+	public int getLowerBound() {
+		return lowerBound;
+	}
+
+	public boolean isOptimal() {
+		return optimal;
+	}
+
+	public String getEngine() {
+		return engine;
+	}
+
+	public String getEngineParameters() {
+		return engineParameters;
+	}
+
+	public long getSolveTime() {
+		return solveTime;
+	}
+}
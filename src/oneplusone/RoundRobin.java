@@ -0,0 +1,143 @@
+/**
+ * RoundRobin.java
+ *
+ * Pairs a clique, a group whose members are all teammates of each other such
+ * as an organization that is one big team, by the round-robin schedule of a
+ * tournament instead of searching.
+ *
+ * The circle method: one member stays in place and the others turn around a
+ * circle, one place a week. Each week the member in place is paired with the
+ * one in front of them, and the others with the one across the circle. With
+ * an even number m of members, over m - 1 weeks everyone is paired with
+ * everyone else exactly once, which is what each member's cycle (see
+ * Person.cycleFull()) waits for before it starts over. So is the schedule.
+ * With an odd number, the place is kept by nobody and the circle has m places,
+ * so the schedule takes m weeks. The member in front of the empty place is
+ * left over and joins a pair, as in MinCostMatching, so each week they meet
+ * someone they are also paired with in another week.
+ *
+ * The week is the snapshot's round(), which Organization counts and keeps.
+ * Members are placed by name, so that the circle is the same every week.
+ * Pairing takes O(n) apart from that. When the history comes from the same
+ * schedule, every pair is new in the cycle and the result meets the lower
+ * bound. History left by other engines may make some pairs repeats, and the
+ * result is then not proven optimal. So may members joining or leaving, as an
+ * odd number of them places everyone around a different circle.
+ */
+
+package oneplusone;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+public class RoundRobin {
+	private final OrganizationSnapshot snapshot;
+	Random random = new Random(); // orders teammates of equal cost
+	private int cost;
+
+	/**
+	 * Constructor for RoundRobin
+	 * @param snapshot of a clique, see isClique()
+	 */
+	public RoundRobin(OrganizationSnapshot snapshot) {
+		this.snapshot = snapshot;
+	}
+
+	/**
+	 * @param snapshot
+	 * @return whether the snapshot has at least two members, all of whom are
+	 * 	teammates of each other
+	 */
+	public static boolean isClique(OrganizationSnapshot snapshot) {
+		int n = snapshot.size();
+		if (n < 2) { return false; }
+		for (int i = 0; i < n; i++) {
+			if (snapshot.degree(i) != n - 1) { return false; }
+			for (int e = snapshot.firstEdge(i); e < snapshot.endEdge(i); e++) {
+				if (snapshot.reverse(e) == -1) { return false; }
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Pairs the clique as the schedule does in the snapshot's round.
+	 * @return PairingAssignment of the week, not recorded
+	 * @throws IllegalArgumentException if the snapshot is not a clique
+	 */
+	public PairingAssignment search() {
+		if (!isClique(snapshot)) {
+			throw new IllegalArgumentException("Round robin needs a clique");
+		}
+		long start = System.currentTimeMillis();
+		int n = snapshot.size();
+
+		// the circle: the member in place, or -1 for nobody, then the others
+		Integer[] byName = new Integer[n];
+		for (int i = 0; i < n; i++) { byName[i] = i; }
+		Arrays.sort(byName, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				return snapshot.member(a).getName().compareTo(
+						snapshot.member(b).getName());
+			}
+		});
+		int places = n + n % 2;
+		int fixed = n % 2 == 0 ? byName[0] : -1;
+		int[] circle = new int[places - 1];
+		for (int k = 0; k < circle.length; k++) {
+			circle[k] = byName[k + 1 - n % 2];
+		}
+
+		// pairs of the week
+		int week = (snapshot.round() % circle.length + circle.length)
+				% circle.length;
+		int[] mate = new int[n];
+		match(fixed, circle[week], mate);
+		for (int k = 1; k < places / 2; k++) {
+			match(circle[(week + k) % circle.length],
+					circle[(week - k + circle.length) % circle.length], mate);
+		}
+
+		int[] sortedMembers = WeightedCSP.sortMembers(snapshot);
+		CostTable table = new CostTable(snapshot, random);
+		PairingAssignment result = new MinCostMatching(snapshot)
+				.complete(table, sortedMembers, mate);
+		cost = result.getCost();
+		int lowerBound = Math.min(cost, Math.max(LowerBound.pairs(table),
+				new LowerBound(table, sortedMembers).root()));
+		result.setResult(cost, lowerBound, cost <= lowerBound);
+
+		SolveStats stats = new SolveStats();
+		stats.cost = cost;
+		stats.lowerBound = lowerBound;
+		stats.optimal = result.isOptimal();
+		stats.solveMillis = System.currentTimeMillis() - start;
+		stats.firstMillis = stats.bestMillis = stats.solveMillis;
+		result.setStats(stats);
+		return result;
+	}
+
+	/**
+	 * Makes the costs of teammates repeatable.
+	 * @param random to order teammates of equal cost with
+	 */
+	public void setRandom(Random random) {
+		this.random = random;
+	}
+
+	/**
+	 * Matches two members, or leaves one over if the other is nobody.
+	 */
+	private static void match(int a, int b, int[] mate) {
+		if (a != -1) { mate[a] = b; }
+		if (b != -1) { mate[b] = a; }
+	}
+
+	/**
+	 * @return cost of the assignment found by the last search
+	 */
+	public int getCost() {
+		return cost;
+	}
+}
@@ -0,0 +1,109 @@
+/**
+ * SchedulePlanner.java
+ *
+ * Plans the pairings of several weeks in one go, without recording any of them
+ * into the members.
+ *
+ * The organization is compiled once. Each week is solved by an engine from
+ * PairingSolvers on a snapshot with the history the members would have
+ * by then, kept here per edge the way PairingAssignment.record() would keep it
+ * in the Person objects: who was matched last week, who was matched in the
+ * cycle, and cycles reset once a member has been matched with every teammate.
+ *
+ * Every week is searched as a run on that week would search it, so with the
+ * same random the plan is the pairings that the same number of runs would
+ * make. Only the teammate graph is shared between weeks. Costs depend on the
+ * history, so each week builds its own CostTable.
+ */
+
+package oneplusone;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+public class SchedulePlanner {
+	private final OrganizationSnapshot snapshot; // teammate graph of every week
+	private final String engine; // registered in PairingSolvers
+	private final boolean[] inCycle; // edge => matched this cycle
+	private final boolean[] lastTime; // edge => matched last week
+	private final int[] cycleCount; // id => teammates matched this cycle
+	private int weeksPlanned; // weeks planned so far
+	private Random random; // seeds each week's search, null if unseeded
+
+	/**
+	 * Constructor for SchedulePlanner
+	 * @param snapshot of the whole organization, with the history of this week
+	 * @param engine to pair each week with, see PairingSolvers
+	 */
+	public SchedulePlanner(OrganizationSnapshot snapshot, String engine) {
+		this.snapshot = snapshot;
+		this.engine = engine;
+		int edges = snapshot.edgeCount();
+		inCycle = new boolean[edges];
+		lastTime = new boolean[edges];
+		for (int e = 0; e < edges; e++) {
+			inCycle[e] = snapshot.matchedInCycle(e);
+			lastTime[e] = snapshot.matchedLastTime(e);
+		}
+		cycleCount = new int[snapshot.size()];
+		for (int i = 0; i < snapshot.size(); i++) {
+			cycleCount[i] = snapshot.member(i).getCycleCount();
+		}
+	}
+
+	/**
+	 * @param random to order teammates of equal cost with in every week, or 
+	 * 	null for unseeded
+	 */
+	public void setRandom(Random random) {
+		this.random = random;
+	}
+
+	/**
+	 * Plans the next weeks, each one from the history left by those before it.
+	 * Planning again goes on from the last week planned.
+	 * @param weeks to plan
+	 * @param budget in milliseconds for each week, 0 or less for no limit
+	 * @param token to cancel the search with, or null
+	 * @return assignment of each week in order, none of them recorded
+	 */
+	public ArrayList<PairingAssignment> plan(int weeks, long budget,
+			CancellationToken token) {
+		ArrayList<PairingAssignment> planned = new ArrayList<PairingAssignment>();
+		for (int w = 0; w < weeks; w++) {
+			PairingAssignment assignment = PairingSolvers.solve(engine, 
+					snapshot.withHistory(inCycle.clone(), lastTime.clone())
+							.withRound(snapshot.round() + weeksPlanned), budget, 
+					token, random);
+			advance(assignment);
+			weeksPlanned++;
+			planned.add(assignment);
+		}
+		return planned;
+	}
+
+	/**
+	 * Moves the history on by a week, as recording the assignment would.
+	 * @see Person.setPreviousMatchups()
+	 * @param assignment of the week, indexed by snapshot id
+	 */
+	private void advance(PairingAssignment assignment) {
+		for (int i = 0; i < snapshot.size(); i++) {
+			for (int e = snapshot.firstEdge(i); e < snapshot.endEdge(i); e++) {
+				lastTime[e] = assignment.isPaired(i, snapshot.neighbor(e));
+				if (lastTime[e] && !inCycle[e]) {
+					cycleCount[i]++;
+					inCycle[e] = true;
+				}
+			}
+
+			// cycle is full, every teammate is free again
+			if (cycleCount[i] >= snapshot.degree(i)) {
+				cycleCount[i] = 0;
+				for (int e = snapshot.firstEdge(i); e < snapshot.endEdge(i); e++) {
+					inCycle[e] = false;
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,158 @@
+/**
+ * SearchState.java
+ *
+ * State of a partial assignment during search, kept by int id and edge.
+ *
+ * Holds the part of each edge's cost that depends on the search: which pairs
+ * have been made and how many partners each member has. Both are updated as
+ * pairs are assigned and unassigned, so cost(edge) is two array reads on top
+ * of the CostTable.
+ *
+ * Not thread safe. Solvers searching in parallel use one state per thread.
+ */
+
+package oneplusone;
+
+public class SearchState {
+	private final OrganizationSnapshot snapshot;
+	private final CostTable table;
+	private final int[] partnerCount; // member => number of partners
+	private final boolean[] paired; // edge => pair across edge made
+	private LowerBound bound; // told when members gain or lose partners
+	private ZobristHash hash; // told when members or pairs change
+	private DynamicOrder order; // told when members or pairs change
+
+	/**
+	 * @param table with costs for the snapshot to search
+	 */
+	public SearchState(CostTable table) {
+		this.table = table;
+		snapshot = table.snapshot();
+		partnerCount = new int[snapshot.size()];
+		paired = new boolean[snapshot.edgeCount()];
+	}
+
+	/**
+	 * Copies another state, so a copy can be searched by another thread.
+	 * @param other state to copy
+	 */
+	public SearchState(SearchState other) {
+		table = other.table;
+		snapshot = other.snapshot;
+		partnerCount = other.partnerCount.clone();
+		paired = other.paired.clone();
+		if (other.bound != null) { bound = new LowerBound(other.bound); }
+	}
+
+	/**
+	 * Keeps a lower bound up to date as members gain and lose partners.
+	 * @param bound to keep up to date
+	 */
+	public void setBound(LowerBound bound) {
+		this.bound = bound;
+	}
+
+	/**
+	 * Keeps a hash of the state up to date as members and pairs change. Unlike
+	 * the bound, the hash is not copied with the state.
+	 * @param hash to keep up to date
+	 */
+	public void setHash(ZobristHash hash) {
+		this.hash = hash;
+	}
+	
+	/**
+	 * Keeps the counts used to choose the next member up to date as members and
+	 * pairs change. Not copied with the state.
+	 * @param order to keep up to date
+	 */
+	public void setOrder(DynamicOrder order) {
+		this.order = order;
+	}
+	
+	/**
+	 * @return the lower bound kept by this state, null if none.
+	 */
+	public LowerBound bound() {
+		return bound;
+	}
+
+	/**
+	 * @return the cost table used by this state
+	 */
+	public CostTable table() {
+		return table;
+	}
+
+	/**
+	 * @param edge
+	 * @return current cost of pairing across the edge, 0 if already paired.
+	 */
+	public int cost(int edge) {
+		if (paired[edge]) { return 0; }
+		return table.cost(edge, partnerCount[snapshot.neighbor(edge)] > 0);
+	}
+
+	/**
+	 * @param edge
+	 * @return whether the pair across the edge has been made
+	 */
+	public boolean isPaired(int edge) {
+		return paired[edge];
+	}
+
+	/**
+	 * @param member id
+	 * @return whether the member has at least one partner
+	 */
+	public boolean hasPartner(int member) {
+		return partnerCount[member] > 0;
+	}
+
+	/**
+	 * Pairs member with the teammate across the edge. Does both sides. The pair
+	 * must not already be made.
+	 * @param member id
+	 * @param edge from member to teammate
+	 */
+	public void assign(int member, int edge) {
+		paired[edge] = true;
+		int back = snapshot.reverse(edge);
+		if (back != -1) { paired[back] = true; }
+		if (hash != null) { hash.toggle(member, edge); }
+		if (order != null) { order.toggle(member, edge); }
+		addPartner(member);
+		addPartner(snapshot.neighbor(edge));
+	}
+
+	/**
+	 * Reverses assign().
+	 * @param member id
+	 * @param edge from member to teammate
+	 */
+	public void unassign(int member, int edge) {
+		paired[edge] = false;
+		int back = snapshot.reverse(edge);
+		if (back != -1) { paired[back] = false; }
+		if (hash != null) { hash.toggle(member, edge); }
+		if (order != null) { order.toggle(member, edge); }
+		removePartner(member);
+		removePartner(snapshot.neighbor(edge));
+	}
+
+	private void addPartner(int member) {
+		if (partnerCount[member]++ == 0) {
+			if (bound != null) { bound.paired(member); }
+			if (hash != null) { hash.paired(member); }
+			if (order != null) { order.paired(member); }
+		}
+	}
+
+	private void removePartner(int member) {
+		if (--partnerCount[member] == 0) {
+			if (bound != null) { bound.unpaired(member); }
+			if (hash != null) { hash.unpaired(member); }
+			if (order != null) { order.unpaired(member); }
+		}
+	}
+}
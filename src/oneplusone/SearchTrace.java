@@ -0,0 +1,146 @@
+/**
+ * SearchTrace.java
+ *
+ * Tracing of solves that can be turned on and off while oneplusone runs,
+ * instead of rebuilding with WeightedCSP.TEST. Events are kept in a ring
+ * buffer of fixed size, so a trace left on only ever holds the latest events
+ * and costs a fixed amount of memory:
+ *
+ * 	start		a WeightedCSP solve starts: members, teammate edges
+ * 	incumbent	the solve has a cheaper complete assignment: cost, node
+ * 	branching	one per depth when the solve ends: nodes, teammates searched
+ * 	end			the solve ends: cost, lower bound, nodes, optimal
+ * 	save		an organization is stored in the database
+ *
+ * Each event has the milliseconds since the trace was turned on, and the solve
+ * it belongs to, as components are solved side by side. A solve checks once,
+ * when it starts, whether tracing is on. When it is off, searching only tests
+ * a field against null at each node. When it is on, each node adds to the
+ * counts of its depth, which are only turned into events at the end.
+ */
+
+package oneplusone;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class SearchTrace {
+	public static final int DEFAULT_CAPACITY = 4096; // events kept
+	private static final String[] TYPES = 
+		{ "start", "incumbent", "branching", "end", "save" };
+	static final int START = 0;
+	static final int INCUMBENT = 1;
+	static final int BRANCHING = 2;
+	static final int END = 3;
+	static final int SAVE = 4;
+	private static volatile boolean enabled;
+	private static final AtomicLong solves = new AtomicLong(); // ids of solves
+	private static long enabledAt; // System.currentTimeMillis() when turned on
+	private static int[] types; // ring of events, by slot
+	private static long[] times;
+	private static long[] solveIds;
+	private static long[][] values; // slot => up to four values of the event
+	private static String[] labels; // slot => name, for save events
+	private static long count; // events recorded since turned on
+
+	/**
+	 * Turns tracing on, forgetting any earlier events.
+	 * @param capacity most events kept, older ones are overwritten
+	 */
+	public static synchronized void enable(int capacity) {
+		types = new int[capacity];
+		times = new long[capacity];
+		solveIds = new long[capacity];
+		values = new long[capacity][4];
+		labels = new String[capacity];
+		count = 0;
+		enabledAt = System.currentTimeMillis();
+		enabled = true;
+	}
+
+	/**
+	 * Turns tracing off. Events recorded so far can still be read.
+	 */
+	public static void disable() {
+		enabled = false;
+	}
+
+	/**
+	 * @return whether events are being recorded
+	 */
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * @return id for a new solve's events
+	 */
+	static long newSolve() {
+		return solves.incrementAndGet();
+	}
+
+	/**
+	 * Records an event, if tracing is on.
+	 * @param type of event
+	 * @param solve id, 0 for events of no solve
+	 * @param label name, or null
+	 * @param a to d values of the event, as listed at the top of the file
+	 */
+	static synchronized void record(int type, long solve, String label, long a,
+			long b, long c, long d) {
+		if (!enabled) { return; }
+		int slot = (int) (count++ % types.length);
+		types[slot] = type;
+		times[slot] = System.currentTimeMillis() - enabledAt;
+		solveIds[slot] = solve;
+		labels[slot] = label;
+		values[slot][0] = a;
+		values[slot][1] = b;
+		values[slot][2] = c;
+		values[slot][3] = d;
+	}
+
+	/**
+	 * @return events still in the buffer, oldest first, one line each
+	 */
+	public static synchronized ArrayList<String> events() {
+		ArrayList<String> lines = new ArrayList<String>();
+		if (types == null) { return lines; }
+		long first = Math.max(0, count - types.length);
+		for (long k = first; k < count; k++) {
+			int slot = (int) (k % types.length);
+			long[] v = values[slot];
+			StringBuffer line = new StringBuffer();
+			line.append(times[slot] + "ms " + TYPES[types[slot]]);
+			if (solveIds[slot] != 0) { line.append(" solve=" + solveIds[slot]); }
+			switch (types[slot]) {
+			case START:
+				line.append(" members=" + v[0] + " edges=" + v[1]);
+				break;
+			case INCUMBENT:
+				line.append(" cost=" + v[0] + " node=" + v[1]);
+				break;
+			case BRANCHING:
+				line.append(" depth=" + v[0] + " nodes=" + v[1] + " searched=" + v[2]);
+				break;
+			case END:
+				line.append(" cost=" + v[0] + " bound=" + v[1] + " nodes=" + v[2] + 
+						" optimal=" + (v[3] != 0));
+				break;
+			case SAVE:
+				line.append(" organization=" + labels[slot] + " millis=" + v[0]);
+				break;
+			}
+			lines.add(line.toString());
+		}
+		return lines;
+	}
+
+	/**
+	 * @return events recorded since tracing was turned on, including those
+	 * 	overwritten since
+	 */
+	public static synchronized long getCount() {
+		return count;
+	}
+}
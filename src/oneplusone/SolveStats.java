@@ -0,0 +1,150 @@
+/**
+ * SolveStats.java
+ *
+ * What one solve did, kept by the solver and handed out with its
+ * PairingAssignment: how much it searched, why it cut branches off, and when
+ * it found its assignments. PairingSolvers passes every solve's stats on to
+ * SolverMetrics.
+ *
+ * Solvers that do not search a tree leave the search counts at zero. Stats of
+ * components searched side by side are added up, taking the slowest time.
+ */
+
+package oneplusone;
+
+public class SolveStats {
+	long nodes; // calls to wBacktracking
+	long costPrunes; // teammates left untried, too costly for the best so far
+	long boundPrunes; // teammates whose lower bound could not beat the best
+	long tablePrunes; // states whose known completion could not beat the best
+	long twinSkips; // teammates skipped for a twin, see TwinClasses
+	long nogoodChecks; // states looked up in the NogoodStore
+	long nogoodPrunes; // states that matched a learned nogood
+	long nogoodsLearned; // nogoods stored
+	int maxDepth; // deepest member reached
+	long firstMillis = -1; // until a first complete assignment, -1 if none
+	long bestMillis = -1; // until the assignment returned was found
+	long solveMillis; // whole solve
+	int cost;
+	int lowerBound;
+	boolean optimal;
+
+	/**
+	 * Adds the stats of a component solved alongside the others.
+	 * @param part stats of the component
+	 */
+	void add(SolveStats part) {
+		nodes += part.nodes;
+		costPrunes += part.costPrunes;
+		boundPrunes += part.boundPrunes;
+		tablePrunes += part.tablePrunes;
+		twinSkips += part.twinSkips;
+		nogoodChecks += part.nogoodChecks;
+		nogoodPrunes += part.nogoodPrunes;
+		nogoodsLearned += part.nogoodsLearned;
+		maxDepth = Math.max(maxDepth, part.maxDepth);
+		firstMillis = Math.max(firstMillis, part.firstMillis);
+		bestMillis = Math.max(bestMillis, part.bestMillis);
+	}
+
+	/**
+	 * @return search nodes expanded
+	 */
+	public long getNodes() {
+		return nodes;
+	}
+
+	/**
+	 * @return times the teammates left at a cost were not tried, as even the
+	 * 	cheapest of them could not beat the best assignment found so far
+	 */
+	public long getCostPrunes() {
+		return costPrunes;
+	}
+
+	/**
+	 * @return teammates not searched below, as the lower bound of the members
+	 * 	still to come could not beat the best assignment found so far
+	 */
+	public long getBoundPrunes() {
+		return boundPrunes;
+	}
+
+	/**
+	 * @return states not searched, as the transposition table knew they could
+	 * 	not beat the best assignment found so far
+	 */
+	public long getTablePrunes() {
+		return tablePrunes;
+	}
+
+	/**
+	 * @return teammates not searched, as a twin of theirs was tried instead
+	 */
+	public long getTwinSkips() {
+		return twinSkips;
+	}
+
+	/**
+	 * @return states looked up among the learned nogoods, see NogoodStore
+	 */
+	public long getNogoodChecks() {
+		return nogoodChecks;
+	}
+
+	/**
+	 * @return states not searched, as a learned nogood showed they could not 
+	 * 	beat the best assignment found so far
+	 */
+	public long getNogoodPrunes() {
+		return nogoodPrunes;
+	}
+
+	/**
+	 * @return nogoods learned from subtrees that did not beat the best
+	 */
+	public long getNogoodsLearned() {
+		return nogoodsLearned;
+	}
+
+	/**
+	 * @return deepest member in search order the search reached
+	 */
+	public int getMaxDepth() {
+		return maxDepth;
+	}
+
+	/**
+	 * @return milliseconds until the first complete assignment, -1 if none
+	 */
+	public long getFirstSolutionMillis() {
+		return firstMillis;
+	}
+
+	/**
+	 * @return milliseconds until the assignment returned was found. If it is
+	 * 	optimal, the rest of the solve only proved it.
+	 */
+	public long getBestSolutionMillis() {
+		return bestMillis;
+	}
+
+	/**
+	 * @return milliseconds of the whole solve
+	 */
+	public long getSolveMillis() {
+		return solveMillis;
+	}
+
+	public int getCost() {
+		return cost;
+	}
+
+	public int getLowerBound() {
+		return lowerBound;
+	}
+
+	public boolean isOptimal() {
+		return optimal;
+	}
+}
@@ -0,0 +1,200 @@
+/**
+ * SolverMetrics.java
+ *
+ * Keeps the stats of every solve made through PairingSolvers, and publishes
+ * them as an MBean on the platform MBean server, so that they can be read from
+ * JConsole or any other JMX client while oneplusone runs.
+ *
+ * Besides the stats of the last solve, it keeps histograms of the nodes and
+ * milliseconds of all solves, in powers of two. The search is exponential in
+ * the worst case, so an organization growing past what it can search shows up
+ * as solves moving into buckets far to the right, well before a run no longer
+ * ends in time.
+ */
+
+package oneplusone;
+
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+public class SolverMetrics implements SolverMetricsMBean {
+	public static final String NAME = "oneplusone:type=SolverMetrics";
+	private static final int BUCKETS = 64; // enough for any long
+	private static SolverMetrics metrics; // created and published on first use
+	private long solves;
+	private long unproven;
+	private String lastEngine;
+	private SolveStats last; // null if there was no solve
+	private final long[] nodeHistogram = new long[BUCKETS];
+	private final long[] timeHistogram = new long[BUCKETS];
+
+	/**
+	 * @return the metrics of this process, published through JMX the first time
+	 */
+	public static synchronized SolverMetrics get() {
+		if (metrics == null) {
+			metrics = new SolverMetrics();
+			try {
+				ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, 
+						new ObjectName(NAME));
+			} catch (JMException e) {
+				System.err.println("Solver metrics not published to JMX: " + 
+						e.getMessage());
+			}
+		}
+		return metrics;
+	}
+
+	/**
+	 * Called by PairingSolvers after every solve.
+	 * @param engine that solved
+	 * @param stats of the solve
+	 */
+	synchronized void record(String engine, SolveStats stats) {
+		solves++;
+		if (!stats.optimal) { unproven++; }
+		lastEngine = engine;
+		last = stats;
+		nodeHistogram[bucket(stats.nodes)]++;
+		timeHistogram[bucket(stats.solveMillis)]++;
+	}
+
+	/**
+	 * @param value at least 0
+	 * @return 0 for 0, else the number of bits needed for value
+	 */
+	private static int bucket(long value) {
+		return value <= 0 ? 0 : 64 - Long.numberOfLeadingZeros(value);
+	}
+
+	public synchronized long getSolves() {
+		return solves;
+	}
+
+	public synchronized long getUnprovenSolves() {
+		return unproven;
+	}
+
+	public synchronized String getLastEngine() {
+		return lastEngine;
+	}
+
+	public synchronized long getLastNodes() {
+		return last == null ? 0 : last.nodes;
+	}
+
+	public synchronized long getLastCostPrunes() {
+		return last == null ? 0 : last.costPrunes;
+	}
+
+	public synchronized long getLastBoundPrunes() {
+		return last == null ? 0 : last.boundPrunes;
+	}
+
+	public synchronized long getLastTablePrunes() {
+		return last == null ? 0 : last.tablePrunes;
+	}
+
+	public synchronized long getLastTwinSkips() {
+		return last == null ? 0 : last.twinSkips;
+	}
+
+	public synchronized long getLastNogoodChecks() {
+		return last == null ? 0 : last.nogoodChecks;
+	}
+
+	public synchronized long getLastNogoodPrunes() {
+		return last == null ? 0 : last.nogoodPrunes;
+	}
+
+	public synchronized long getLastNogoodsLearned() {
+		return last == null ? 0 : last.nogoodsLearned;
+	}
+
+	public synchronized int getLastMaxDepth() {
+		return last == null ? 0 : last.maxDepth;
+	}
+
+	public synchronized long getLastFirstSolutionMillis() {
+		return last == null ? -1 : last.firstMillis;
+	}
+
+	public synchronized long getLastBestSolutionMillis() {
+		return last == null ? -1 : last.bestMillis;
+	}
+
+	public synchronized long getLastSolveMillis() {
+		return last == null ? 0 : last.solveMillis;
+	}
+
+	public synchronized int getLastCost() {
+		return last == null ? 0 : last.cost;
+	}
+
+	public synchronized int getLastLowerBound() {
+		return last == null ? 0 : last.lowerBound;
+	}
+
+	public synchronized boolean isLastOptimal() {
+		return last != null && last.optimal;
+	}
+
+	public synchronized long[] getNodeHistogram() {
+		return nodeHistogram.clone();
+	}
+
+	public synchronized long[] getTimeHistogram() {
+		return timeHistogram.clone();
+	}
+
+	public synchronized String report() {
+		StringBuffer report = new StringBuffer();
+		report.append("Solves: " + solves + " (" + unproven + " not proven optimal)\n");
+		if (last != null) {
+			report.append("Last solve, by " + lastEngine + ":\n");
+			report.append("\tcost " + last.cost + ", lower bound " + last.lowerBound + 
+					(last.optimal ? ", optimal" : ", not proven optimal") + "\n");
+			report.append("\tnodes " + last.nodes + ", deepest member " + 
+					last.maxDepth + "\n");
+			if (last.nogoodChecks > 0) {
+				report.append("\tnogoods learned " + last.nogoodsLearned + 
+						", pruned " + last.nogoodPrunes + " of " + last.nogoodChecks + 
+						" states checked\n");
+			}
+			report.append("\tpruned by cost " + last.costPrunes + ", by bound " + 
+					last.boundPrunes + ", by table " + last.tablePrunes + 
+					", twins skipped " + last.twinSkips + "\n");
+			report.append("\tfirst solution " + last.firstMillis + " ms, best " + 
+					last.bestMillis + " ms, whole solve " + last.solveMillis + " ms\n");
+		}
+		report.append("Solves by nodes:\n");
+		appendHistogram(report, nodeHistogram);
+		report.append("Solves by milliseconds:\n");
+		appendHistogram(report, timeHistogram);
+		return report.toString();
+	}
+
+	/**
+	 * Appends a line for each bucket that has solves in it.
+	 */
+	private static void appendHistogram(StringBuffer report, long[] histogram) {
+		for (int b = 0; b < BUCKETS; b++) {
+			if (histogram[b] == 0) { continue; }
+			String range = b == 0 ? "0" 
+					: (1L << (b - 1)) + "-" + ((1L << (b - 1)) * 2 - 1);
+			report.append("\t" + range + ": " + histogram[b] + "\n");
+		}
+	}
+
+	public synchronized void reset() {
+		solves = 0;
+		unproven = 0;
+		lastEngine = null;
+		last = null;
+		for (int b = 0; b < BUCKETS; b++) {
+			nodeHistogram[b] = 0;
+			timeHistogram[b] = 0;
+		}
+	}
+}
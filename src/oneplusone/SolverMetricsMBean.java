@@ -0,0 +1,77 @@
+/**
+ * SolverMetricsMBean.java
+ *
+ * Management interface of SolverMetrics, as seen through JMX under
+ * SolverMetrics.NAME.
+ */
+
+package oneplusone;
+
+public interface SolverMetricsMBean {
+
+	/**
+	 * @return solves recorded since the start or the last reset
+	 */
+	long getSolves();
+
+	/**
+	 * @return solves that were not proven optimal
+	 */
+	long getUnprovenSolves();
+
+	/**
+	 * @return engine of the last solve, null if there was none
+	 */
+	String getLastEngine();
+
+	long getLastNodes();
+
+	long getLastCostPrunes();
+
+	long getLastBoundPrunes();
+
+	long getLastTablePrunes();
+
+	long getLastTwinSkips();
+
+	long getLastNogoodChecks();
+
+	long getLastNogoodPrunes();
+
+	long getLastNogoodsLearned();
+
+	int getLastMaxDepth();
+
+	long getLastFirstSolutionMillis();
+
+	long getLastBestSolutionMillis();
+
+	long getLastSolveMillis();
+
+	int getLastCost();
+
+	int getLastLowerBound();
+
+	boolean isLastOptimal();
+
+	/**
+	 * @return number of solves by nodes expanded: bucket 0 for none, then
+	 * 	bucket b for 2^(b-1) to 2^b - 1 nodes
+	 */
+	long[] getNodeHistogram();
+
+	/**
+	 * @return number of solves by milliseconds taken, bucketed as nodes are
+	 */
+	long[] getTimeHistogram();
+
+	/**
+	 * @return everything above, as text
+	 */
+	String report();
+
+	/**
+	 * Forgets every solve recorded.
+	 */
+	void reset();
+}
@@ -0,0 +1,113 @@
+/**
+ * TranspositionTable.java
+ *
+ * Bounded table from ZobristHash values to a lower bound on the cost of
+ * completing that partial assignment, found by an earlier visit.
+ *
+ * The table is direct mapped: each hash has one slot, and storing into a slot
+ * that holds another hash evicts it. The number of slots is the largest power
+ * of two that fits in the memory cap given. Each slot keeps the full 64 bit
+ * hash, so a slot only answers for the hash it was stored with.
+ *
+ * Only lower bounds are stored, so a hit can prune a subtree but never
+ * replaces searching one. That keeps the search's record of best partners
+ * intact.
+ */
+
+package oneplusone;
+
+import java.util.Arrays;
+
+public class TranspositionTable {
+	public static final int BYTES_PER_ENTRY = 12;
+	private static final long EMPTY = 0; // hashes equal to EMPTY are stored as 1
+	private final long[] hashes; // slot => hash stored, or EMPTY
+	private final int[] bounds; // slot => lower bound on completion cost
+	private final int mask;
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	/**
+	 * @param maxBytes memory cap of the table. At least one slot is kept.
+	 */
+	public TranspositionTable(long maxBytes) {
+		long slots = Long.highestOneBit(Math.max(1, maxBytes / BYTES_PER_ENTRY));
+		slots = Math.min(slots, 1 << 30);
+		hashes = new long[(int) slots];
+		bounds = new int[(int) slots];
+		mask = (int) slots - 1;
+	}
+
+	/**
+	 * @return number of slots
+	 */
+	public int capacity() {
+		return hashes.length;
+	}
+
+	/**
+	 * Looks up a hash, counting a hit or a miss.
+	 * @param hash of partial assignment
+	 * @return stored lower bound on its completion cost, or -1 if none
+	 */
+	public int get(long hash) {
+		if (hash == EMPTY) { hash = 1; }
+		int slot = (int) hash & mask;
+		if (hashes[slot] == hash) {
+			hits++;
+			return bounds[slot];
+		}
+		misses++;
+		return -1;
+	}
+
+	/**
+	 * Stores a lower bound on a hash's completion cost, keeping the higher of
+	 * two bounds on the same hash. Evicts any other hash in the slot.
+	 * @param hash of partial assignment
+	 * @param bound on the cost of completing it
+	 */
+	public void put(long hash, int bound) {
+		if (hash == EMPTY) { hash = 1; }
+		int slot = (int) hash & mask;
+		if (hashes[slot] == hash) {
+			bounds[slot] = Math.max(bounds[slot], bound);
+		} else {
+			if (hashes[slot] != EMPTY) { evictions++; }
+			hashes[slot] = hash;
+			bounds[slot] = bound;
+		}
+	}
+
+	/**
+	 * Empties the table and its counters, so it can be reused by another solve.
+	 */
+	public void clear() {
+		Arrays.fill(hashes, EMPTY);
+		hits = 0;
+		misses = 0;
+		evictions = 0;
+	}
+
+	/**
+	 * @return number of lookups that found their hash
+	 */
+	public long getHits() {
+		return hits;
+	}
+
+	/**
+	 * @return number of lookups that did not find their hash
+	 */
+	public long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * @return number of stores that evicted another hash
+	 */
+	public long getEvictions() {
+		return evictions;
+	}
+}
@@ -0,0 +1,162 @@
+/**
+ * TwinClasses.java
+ *
+ * Groups the members of a snapshot that look the same to the search: they have
+ * the same teammates (apart from each other), and the cost of a pair with each
+ * of those teammates is the same for either of them, whoever picks, free or
+ * taken. In a flat team with a fresh history, everyone is in one class.
+ * Swapping two members of a class changes no cost, so the search can skip
+ * teammates that only lead to a copy of what it has already searched:
+ *
+ * 	Once two twins have both been searched, neither picks again, and the
+ * 	members still to come only see that they have a partner and what picking
+ * 	them costs. Picking one rather than the other changes nothing below, as
+ * 	long as neither made a pair with a member still to come, or both made it
+ * 	with the same one. Only the first of them in candidate order is tried.
+ *
+ * 	Of two twins without a partner that are searched one right after the
+ * 	other, picking the earlier one is never worse. Whatever the two of them do
+ * 	after the later one is picked, they can do in the other order after the
+ * 	earlier one is picked, for the same pairs at no more cost, as a free
+ * 	teammate never costs more than a taken one. Only the first of a run of
+ * 	them is tried.
+ *
+ * So that the search still picks among twins at random, shuffleRuns() puts
+ * each run of twins in the search order in a random order before the search.
+ * Nobody has a partner then, so the order of twins within a run does not
+ * change the best cost. Teammates are tried in CostTable's shuffled candidate
+ * order, so the first twin tried among searched ones is random as well.
+ */
+
+package oneplusone;
+
+import java.util.Random;
+
+public class TwinClasses {
+	private final int[] classOf; // id => class, the lowest id in it
+	private final boolean[] hasTwin; // id => class has another member
+	private boolean any; // some member has a twin
+
+	/**
+	 * @param table costs of the snapshot being searched
+	 */
+	public TwinClasses(CostTable table) {
+		OrganizationSnapshot snapshot = table.snapshot();
+		int n = snapshot.size();
+		classOf = new int[n];
+		hasTwin = new boolean[n];
+		for (int i = 0; i < n; i++) { classOf[i] = -1; }
+
+		// twins share their teammates, so only teammates of teammates are tried
+		for (int i = 0; i < n; i++) {
+			if (classOf[i] != -1) { continue; }
+			classOf[i] = i;
+			for (int e = snapshot.firstEdge(i); e < snapshot.endEdge(i); e++) {
+				int u = snapshot.neighbor(e);
+				for (int f = snapshot.firstEdge(u); f < snapshot.endEdge(u); f++) {
+					int j = snapshot.neighbor(f);
+					if (j > i && classOf[j] == -1 && twins(table, i, j)) {
+						classOf[j] = i;
+						hasTwin[i] = hasTwin[j] = any = true;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param member id
+	 * @return class of the member, the lowest id of its members
+	 */
+	public int of(int member) {
+		return classOf[member];
+	}
+
+	/**
+	 * @param member id
+	 * @return whether another member is in the member's class
+	 */
+	public boolean hasTwin(int member) {
+		return hasTwin[member];
+	}
+
+	/**
+	 * @return whether any member has a twin
+	 */
+	public boolean any() {
+		return any;
+	}
+
+	/**
+	 * Shuffles each run of consecutive members of one class in a search order.
+	 * Must be done before any pair is made.
+	 * @param sortedMembers ids in the order they are searched
+	 * @param random used to shuffle
+	 */
+	public void shuffleRuns(int[] sortedMembers, Random random) {
+		int first = 0;
+		for (int d = 1; d <= sortedMembers.length; d++) {
+			if (d < sortedMembers.length
+					&& classOf[sortedMembers[d]] == classOf[sortedMembers[first]]) {
+				continue;
+			}
+			for (int k = d - 1; k > first; k--) {
+				int swap = first + random.nextInt(k - first + 1);
+				int tmp = sortedMembers[k];
+				sortedMembers[k] = sortedMembers[swap];
+				sortedMembers[swap] = tmp;
+			}
+			first = d;
+		}
+	}
+
+	/**
+	 * @return whether every teammate of a, other than b, is a teammate of b who
+	 * 	pays the same to pick either, and the other way around
+	 */
+	private static boolean twins(CostTable table, int a, int b) {
+		OrganizationSnapshot snapshot = table.snapshot();
+		if (snapshot.degree(a) != snapshot.degree(b)) { return false; }
+
+		int shared = 0;
+		for (int e = snapshot.firstEdge(a); e < snapshot.endEdge(a); e++) {
+			int u = snapshot.neighbor(e);
+			if (u == b) { continue; }
+			int toA = snapshot.reverse(e);
+			int toB = edge(snapshot, u, b);
+			if (toA == -1 || toB == -1) { return false; }
+			if (table.cost(toA, false) != table.cost(toB, false)
+					|| table.cost(toA, true) != table.cost(toB, true)) {
+				return false;
+			}
+			int fromB = snapshot.reverse(toB);
+			if (fromB == -1 || table.cost(e, false) != table.cost(fromB, false)
+					|| table.cost(e, true) != table.cost(fromB, true)) {
+				return false;
+			}
+			shared++;
+		}
+
+		// same degree, so b has a as a teammate exactly when a has b. If they are
+		// teammates, each pays the same to pick the other.
+		int ab = edge(snapshot, a, b);
+		int ba = edge(snapshot, b, a);
+		if ((ab == -1) != (ba == -1)) { return false; }
+		if (ab != -1 && (table.cost(ab, false) != table.cost(ba, false)
+				|| table.cost(ab, true) != table.cost(ba, true))) {
+			return false;
+		}
+		return shared == snapshot.degree(b) - (ba != -1 ? 1 : 0);
+	}
+
+	/**
+	 * @return edge from member to teammate, or -1 if there is none
+	 */
+	private static int edge(OrganizationSnapshot snapshot, int member,
+			int teammate) {
+		for (int e = snapshot.firstEdge(member); e < snapshot.endEdge(member); e++) {
+			if (snapshot.neighbor(e) == teammate) { return e; }
+		}
+		return -1;
+	}
+}
@@ -4,10 +4,17 @@
  * Object which solves weighted constraint satisfaction problem posted by
  * oneplusone.
  * 
- * Constructor takes in a list of members in the organization.
+ * Constructor takes in a list of members in the organization, or an 
+ * OrganizationSnapshot compiled from them. The search only reads the snapshot.
  * 
  * solve() returns a PairingAssignment with a pairing given those members. It 
- * calls a recursive function, wBacktracking (short for weighted backtracking)
+ * calls a recursive function, wBacktracking (short for weighted backtracking),
+ * or by default its iterative version, iBacktracking, which keeps the same 
+ * search on an explicit stack so that large organizations cannot overflow the
+ * thread's stack. With deepening on (see setDeepening), the search is run
+ * once per cost threshold, lowest first, and stops at its first assignment.
+ * With nogoods on (see setNogoods), what made a subtree fail is recorded in a
+ * NogoodStore, so that states failing for the same reasons are not searched.
  */
 
 package oneplusone;
@@ -15,69 +22,525 @@ package oneplusone;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
-import oneplusone.Person.Teammate;
+import java.util.Random;
 
 public class WeightedCSP {
 	public static final boolean TEST = false;
+	public static final long NO_DEADLINE = Long.MAX_VALUE;
+	private static final int CHECK_INTERVAL = 1024; // nodes between time checks
+	private static final int FRAME = 5; // ints in a frame of iBacktracking
 	PairingAssignment assignment; 
-	ArrayList<Teammate> bestPartner; 
-	ArrayList<Person> sortedMembers; // sorted from lowest to highest # teammates
+	SearchState state; // pairs made so far during the search
+	Random random = new Random(); // orders teammates of equal cost
+	int[] bestPartner; // index in sortedMembers => edge to best teammate, or -1
+	int[] bestMember; // depth => member searched there on the best path
+	ArrayList<Person> people; // compiled into a snapshot on every solve
+	OrganizationSnapshot snapshot;
+	int[] sortedMembers; // ids sorted from lowest to highest # teammates
+	CandidateBuffer candidates; // teammates of each depth, grouped by cost
+	boolean useLowerBound = true;
+	boolean useForwardChecking = false;
+	LowerBound bound; // of the cost of members not reached yet, or null
+	boolean boundReached; // best found equals the root bound, search can stop
+	int goal = -1; // cost nothing can beat, known before the search, or -1
+	long tableBytes = 0; // memory cap of transposition table, 0 for none
+	TranspositionTable transpositions; // completion bounds of seen states
+	ZobristHash hash; // of the current partial assignment, or null
+	boolean useNogoods = false;
+	NogoodStore nogoods; // learned during the search, or null
+	boolean useDynamicOrder = false;
+	DynamicOrder order; // chooses the member at each depth, or null
+	boolean useSymmetryBreaking = true;
+	TwinClasses twins; // members that look the same to the search, or null
+	int[] position; // id => depth at which member is searched, fixed order
+	int[] pairMade; // id => edge of pair made on member's turn, or -1
+	boolean useIncumbent = true;
+	int incumbentCost; // cost of the starting solution, MAX_VALUE if none
+	long deadline; // System.currentTimeMillis() to stop at
+	CancellationToken token; // asks the search to stop, or null
+	boolean found; // a complete assignment has been found
+	boolean stopped; // out of time or cancelled, search unwinds
+	int bestCost;
 	int recursiveCalls;
+	SolveStats stats; // of the last solve
+	long startMillis; // when the last solve started
+	int bestFound; // cheapest complete assignment found by the search so far
+	long traceId; // of the last solve in SearchTrace
+	long[] depthNodes; // depth => nodes, null unless tracing
+	long[] depthSearched; // depth => teammates searched below, null unless tracing
+	boolean useIterative = true;
+	boolean useDeepening = false;
+	int threshold; // no assignment costs less, proven by deepening, or 0
+	int forced; // members at the front of the order paired by presolve()
+	int forcedCost; // of the pairs made by presolve()
+	int[] frames; // depth * FRAME => frame of iBacktracking, see save()
+	long[] frameKey; // depth => transposition table key of the frame's state
+	
 	/**
 	 * Constructor for WeightedCSP
-	 * Sorts list of members by lowest to highest number of teammates.
-	 * @see TeammatesCompare
+	 * The members are compiled into a snapshot each time solve() is called, so
+	 * that changes to teams and history between solves are picked up.
 	 * @param people
 	 */
 	public WeightedCSP(ArrayList<Person> people) {	
-		Collections.sort(people, new TeammatesCompare());
-		sortedMembers = people;
+		this.people = people;
+		assignment = null;
+		bestPartner = null;
+	}
+	
+	/**
+	 * Constructor for WeightedCSP
+	 * Solves the members exactly as they were when the snapshot was compiled.
+	 * @param snapshot
+	 */
+	public WeightedCSP(OrganizationSnapshot snapshot) {
+		this.snapshot = snapshot;
 		assignment = null;
 		bestPartner = null;
 	}
+	
+	/**
+	 * @return number of calls to wBacktracking in the last solve
+	 */
+	public int getRecursiveCalls() {
+		return recursiveCalls;
+	}
+	
+	/**
+	 * @return states looked up in the nogood store in the last solve
+	 */
+	public long getNogoodChecks() {
+		return nogoods == null ? 0 : nogoods.getChecks();
+	}
+	
+	/**
+	 * @return states pruned by a learned nogood in the last solve
+	 */
+	public long getNogoodHits() {
+		return nogoods == null ? 0 : nogoods.getHits();
+	}
+	
+	/**
+	 * @return nogoods learned in the last solve
+	 */
+	public long getNogoodsLearned() {
+		return nogoods == null ? 0 : nogoods.getLearned();
+	}
+	
+	/**
+	 * @return what the last solve did, see SolveStats
+	 */
+	public SolveStats getStats() {
+		return stats;
+	}
+	
+	/**
+	 * Makes solves repeatable: teammates of equal cost, and twins, are ordered 
+	 * with this random.
+	 * @param random
+	 */
+	public void setRandom(Random random) {
+		this.random = random;
+	}
+	
+	/**
+	 * Turns the iterative search on or off. On by default. When off, the 
+	 * recursive wBacktracking is used, which searches the same nodes in the same
+	 * order but needs a stack frame per member.
+	 * @param useIterative
+	 */
+	public void setIterative(boolean useIterative) {
+		this.useIterative = useIterative;
+	}
+	
+	/**
+	 * Turns cost threshold deepening on or off. Off by default. When on, the 
+	 * search looks for any assignment that costs no more than a threshold, 
+	 * starting from the lower bound and raising it by one each time none is 
+	 * found, so the first assignment found is optimal (see deepen()). Nodes
+	 * near the root are searched again for every threshold, but none deeper 
+	 * than the optimal cost allows, and no more memory is needed.
+	 * @param useDeepening
+	 */
+	public void setDeepening(boolean useDeepening) {
+		this.useDeepening = useDeepening;
+	}
+	
+	/**
+	 * Turns pruning with LowerBound on or off. On by default.
+	 * @param useLowerBound
+	 */
+	public void setLowerBound(boolean useLowerBound) {
+		this.useLowerBound = useLowerBound;
+	}
+	
+	/**
+	 * Turns forward checking of the lower bound on or off. Off by default. When
+	 * on, each member's cheapest cost in LowerBound follows the pairs made, so
+	 * members whose cheap teammates are all taken raise the bound as soon as 
+	 * it happens, rather than when the search reaches them. It prunes more
+	 * nodes, but each pair made costs a pass over the pairs to both members.
+	 * @param useForwardChecking
+	 */
+	public void setForwardChecking(boolean useForwardChecking) {
+		this.useForwardChecking = useForwardChecking;
+	}
+	
+	/**
+	 * Turns dynamic ordering on or off. Off by default. When on, the member
+	 * searched at each depth is chosen by DynamicOrder instead of following 
+	 * sortMembers(). Costs are counted in the order members are reached, so the 
+	 * best cost found can differ from the one found in the fixed order. 
+	 * LowerBound and the transposition table depend on the fixed order and are 
+	 * not used, DynamicOrder keeps a bound of its own.
+	 * @param useDynamicOrder
+	 */
+	public void setDynamicOrder(boolean useDynamicOrder) {
+		this.useDynamicOrder = useDynamicOrder;
+	}
+	
+	/**
+	 * Turns symmetry breaking on or off. On by default. When on, teammates that
+	 * TwinClasses shows can do no better than one already tried are skipped.
+	 * @param useSymmetryBreaking
+	 */
+	public void setSymmetryBreaking(boolean useSymmetryBreaking) {
+		this.useSymmetryBreaking = useSymmetryBreaking;
+	}
+	
+	/**
+	 * Turns starting solutions on or off. On by default. When on, the better of
+	 * the two Incumbent solutions is the cost to beat from the first node, and
+	 * is the answer if the search finds nothing cheaper.
+	 * @param useIncumbent
+	 */
+	public void setIncumbent(boolean useIncumbent) {
+		this.useIncumbent = useIncumbent;
+	}
+	
+	/**
+	 * Stops the search as soon as it finds an assignment that costs no more than
+	 * the goal, which is then optimal. For a search of part of a problem whose
+	 * lower bound is known from the whole, such as LimitedWeightedCSP's.
+	 * @param goal cost no assignment can beat, or -1 for none
+	 */
+	public void setGoal(int goal) {
+		this.goal = goal;
+	}
+	
+	/**
+	 * Turns nogood learning on or off. Off by default. When on, subtrees that
+	 * fail to beat the best found so far are recorded in a NogoodStore, and
+	 * states that match one of its nogoods are not searched. Nogoods depend on
+	 * the fixed order, so none are learned with dynamic ordering.
+	 * @param useNogoods
+	 */
+	public void setNogoods(boolean useNogoods) {
+		this.useNogoods = useNogoods;
+	}
+	
+	/**
+	 * @return cost of the starting solution of the last solve, or 
+	 * 	Integer.MAX_VALUE if there was none
+	 */
+	public int getIncumbentCost() {
+		return incumbentCost;
+	}
+	
+	/**
+	 * @return members paired before the last solve's search, whose picks were
+	 * 	forced, see presolve()
+	 */
+	public int getForced() {
+		return forced;
+	}
+	
+	/**
+	 * Turns the transposition table on or off. Off by default. The table is 
+	 * kept between solves of this WeightedCSP while its cap is unchanged.
+	 * @param maxBytes memory cap of the table, 0 to turn it off
+	 */
+	public void setTranspositionTable(long maxBytes) {
+		if (maxBytes != tableBytes) { transpositions = null; }
+		tableBytes = maxBytes;
+	}
+	
+	/**
+	 * @return transposition table lookups that found their state in the last 
+	 * 	solve
+	 */
+	public long getTableHits() {
+		return transpositions == null ? 0 : transpositions.getHits();
+	}
+	
+	/**
+	 * @return transposition table lookups that did not find their state in the
+	 * 	last solve
+	 */
+	public long getTableMisses() {
+		return transpositions == null ? 0 : transpositions.getMisses();
+	}
+	
+	/**
+	 * @return cost of the assignment found by the last solve
+	 */
+	public int getCost() {
+		return bestCost;
+	}
+	
+	/**
+	 * Sorts the ids of a snapshot by lowest to highest number of teammates.
+	 * @see TeammatesCompare
+	 * @param snapshot
+	 * @return ids in the order they are searched
+	 */
+	static int[] sortMembers(OrganizationSnapshot snapshot) {
+		ArrayList<Integer> ids = new ArrayList<Integer>();
+		for (int i = 0; i < snapshot.size(); i++) { ids.add(i); }
+		Collections.sort(ids, new TeammatesCompare(snapshot));
+		
+		int[] sorted = new int[ids.size()];
+		for (int i = 0; i < sorted.length; i++) { sorted[i] = ids.get(i); }
+		return sorted;
+	}
 
 	/**
 	 * Calls weightedBacktracking function to get optimal assignment.
 	 * @return optimal PairingAssignment given sortedMembers
 	 */
 	public PairingAssignment solve() {
-		// create new assignment
-		assignment = new PairingAssignment(sortedMembers);
+		return solve(NO_DEADLINE, null);
+	}
+	
+	/**
+	 * Anytime version of solve(). If the deadline passes or the token is 
+	 * cancelled before the search is finished, the best assignment found so far
+	 * is returned, marked as not proven optimal (see PairingAssignment). The 
+	 * search always has one complete assignment before it stops, its starting
+	 * solution (see setIncumbent) or the first it finds.
+	 * @param deadline System.currentTimeMillis() after which to stop, or 
+	 * 	NO_DEADLINE
+	 * @param token to cancel the solve with, or null
+	 * @return best PairingAssignment found given sortedMembers
+	 */
+	public PairingAssignment solve(long deadline, CancellationToken token) {
+		PairingAssignment result = search(deadline, token);
+		
+		// records pairing data into Person objects, so that we remember who
+		// the last teammates were, and which teammates have been matched up with
+		// in the current cycle
+		result.record();
+		
+		return result;
+	}
+	
+	/**
+	 * solve() without recording the result into the members. Used by solvers
+	 * that merge several results before recording them.
+	 * @see solve(long, CancellationToken)
+	 */
+	PairingAssignment search(long deadline, CancellationToken token) {
+		this.deadline = deadline;
+		this.token = token;
+		found = false;
+		stopped = false;
+		stats = new SolveStats();
+		startMillis = System.currentTimeMillis();
+		depthNodes = null;
+		depthSearched = null;
+		
+		if (people != null) { snapshot = OrganizationSnapshot.compile(people); }
+		sortedMembers = sortMembers(snapshot);
+		
+		// create new assignment, and the cost table and state used to search
+		assignment = new PairingAssignment(snapshot);
+		CostTable table = new CostTable(snapshot, random);
+		twins = useSymmetryBreaking ? new TwinClasses(table) : null;
+		if (twins != null && !twins.any()) { twins = null; }
+		if (twins != null) { twins.shuffleRuns(sortedMembers, random); }
+		state = new SearchState(table);
+		bound = useLowerBound && !useDynamicOrder 
+				? new LowerBound(table, sortedMembers, useForwardChecking) : null;
+		state.setBound(bound);
+		order = useDynamicOrder ? new DynamicOrder(state) : null;
+		state.setOrder(order);
+		hash = null;
+		if (tableBytes > 0 && !useDynamicOrder) {
+			if (transpositions == null) { 
+				transpositions = new TranspositionTable(tableBytes); 
+			}
+			transpositions.clear();
+			hash = new ZobristHash(snapshot, sortedMembers, random);
+		}
+		state.setHash(hash);
+		boundReached = false;
+		position = new int[sortedMembers.length];
+		pairMade = new int[sortedMembers.length];
+		for (int d = 0; d < sortedMembers.length; d++) {
+			position[sortedMembers[d]] = d;
+			pairMade[d] = -1;
+		}
+		nogoods = useNogoods && order == null ? new NogoodStore(snapshot, state,
+				bound, pairMade, sortedMembers.length) : null;
 		
 		// instantiate new bestPartner list
-		bestPartner = new ArrayList<Teammate>();
-		for (int i = 0; i < sortedMembers.size(); i++) { bestPartner.add(null); }
+		bestPartner = new int[sortedMembers.length];
+		for (int i = 0; i < bestPartner.length; i++) { bestPartner[i] = -1; }
+		bestMember = sortedMembers.clone();
+		
+		candidates = new CandidateBuffer(snapshot, sortedMembers.length);
 		
 		recursiveCalls = 0;
+		if (SearchTrace.isEnabled()) {
+			traceId = SearchTrace.newSolve();
+			depthNodes = new long[sortedMembers.length + 1];
+			depthSearched = new long[sortedMembers.length + 1];
+			SearchTrace.record(SearchTrace.START, traceId, null, sortedMembers.length,
+					snapshot.edgeCount(), 0, 0);
+		}
 		
-		// call recursive backtracking method which uses assignment to parse 
+		// start from the better of the two starting solutions, which is kept in
+		// bestPartner unless the search finds a cheaper one
+		incumbentCost = Integer.MAX_VALUE;
+		if (useIncumbent) {
+			incumbentCost = seed(Incumbent.greedy(table, sortedMembers), 
+					incumbentCost);
+			incumbentCost = seed(Incumbent.repairLastWeek(table, sortedMembers), 
+					incumbentCost);
+			found = true;
+			int rootBound = bound != null ? bound.root() 
+					: order != null ? order.root() : 0;
+			boundReached = incumbentCost <= Math.max(rootBound, goal);
+			stats.firstMillis = stats.bestMillis = 
+					System.currentTimeMillis() - startMillis;
+			if (depthNodes != null) {
+				SearchTrace.record(SearchTrace.INCUMBENT, traceId, null, incumbentCost, 
+						0, 0, 0);
+			}
+		}
+		bestFound = incumbentCost;
+		
+		// call recursive backtracking method which uses state to parse 
 		// through options, storing best partnerships in bestPartner list.
-		int cost = wBacktracking(0, Integer.MAX_VALUE, 0);
+		// Members whose pick is forced are paired first, and not searched.
+		presolve();
+		threshold = 0;
+		int cost = useDeepening ? deepen(table)
+				: useIterative ? iBacktracking(forced, incumbentCost, forcedCost) 
+				: wBacktracking(forced, incumbentCost, forcedCost);
+		bestCost = cost;
+		
+		// the search proves the cost optimal unless it was stopped early, in which
+		// case the root bound, or the threshold deepening reached, is the best 
+		// proven
+		int rootBound = bound != null ? bound.root() 
+				: order != null ? order.root() : 0;
+		rootBound = Math.max(rootBound, threshold);
+		if (!stopped || cost <= Math.max(rootBound, goal)) {
+			assignment.setResult(cost, cost, true);
+		} else {
+			assignment.setResult(cost, rootBound, false);
+		}
+		stats.nodes = recursiveCalls;
+		stats.nogoodChecks = getNogoodChecks();
+		stats.nogoodPrunes = getNogoodHits();
+		stats.nogoodsLearned = getNogoodsLearned();
+		stats.cost = cost;
+		stats.lowerBound = assignment.getLowerBound();
+		stats.optimal = assignment.isOptimal();
+		stats.solveMillis = System.currentTimeMillis() - startMillis;
+		assignment.setStats(stats);
+		if (depthNodes != null) { traceEnd(); }
 		
 		if (cost == -1) { System.err.println("There was an error w/ solving CSP.");}
 		if (TEST) System.out.println("Cost of: " + cost);
-		if (TEST) System.out.println("Recursive calls: " + recursiveCalls);
+		if (TEST) {
+			System.out.println("Recursive calls: " + recursiveCalls + 
+					", nogood hits: " + getNogoodHits() + " of " + getNogoodChecks());
+		}
+		if (TEST) {
+			System.out.println("Table hits: " + getTableHits() + 
+					", misses: " + getTableMisses());
+		}
 		
-		// after backtracking, assignment actually has no assignments in it, as all
+		// after backtracking, state actually has no assignments in it, as all
 		// assignments are reversed in backtracking.
 
 		// to get the optimal assignment stored by wBacktracking, we use bestPartner
 		// list to add the optimal teammate pairings.		
-		for (int i = 0; i < bestPartner.size(); i++) {
-			Teammate teammate = bestPartner.get(i);
-			if (teammate != null) {
-				assignment.assignPairing(sortedMembers.get(i), teammate);
+		for (int i = 0; i < bestPartner.length; i++) {
+			int edge = bestPartner[i];
+			if (edge != -1) {
+				assignment.assignPairing(bestMember[i], snapshot.neighbor(edge));
 			}
 		}
 		
-		// records pairing data into Person objects, so that we remember who
-		// the last teammates were, and which teammates have been matched up with
-		// in the current cycle
-		assignment.record();
-		
 		return assignment;
 	}
 
+	/**
+	 * Searches once per cost threshold, from the lower bound up, for an 
+	 * assignment that costs no more than the threshold. Every threshold below 
+	 * has none, so the first found is optimal and the search stops there, as it
+	 * does at a goal. The starting solution caps the thresholds: if none below
+	 * its cost has an assignment, it is optimal. Transposition table entries
+	 * are lower bounds, so they carry over from one threshold to the next.
+	 * @param table costs of the snapshot being searched
+	 * @return cost of the assignment found, or incumbentCost if there is none
+	 * 	cheaper
+	 */
+	private int deepen(CostTable table) {
+		int rootBound = bound != null ? bound.root() 
+				: order != null ? order.root() : 0;
+		threshold = Math.max(rootBound, LowerBound.pairs(table));
+		int searchGoal = goal;
+		try {
+			for (; threshold < incumbentCost && !stopped; threshold++) {
+				goal = Math.max(searchGoal, threshold);
+				int cost = useIterative 
+						? iBacktracking(forced, threshold + 1, forcedCost)
+						: wBacktracking(forced, threshold + 1, forcedCost);
+				if (cost <= threshold) { return cost; }
+			}
+		} finally {
+			goal = searchGoal;
+		}
+		return incumbentCost;
+	}
+	
+	/**
+	 * Makes the picks of the members at the front of the search order who have
+	 * one teammate or none, as the search would: such a member has no choice,
+	 * so each of them would be a node with one branch at most. Members are
+	 * sorted by number of teammates, so they all come first. The search then 
+	 * starts after them, from the state they leave. Not done with dynamic 
+	 * ordering, where members are not searched in that order.
+	 */
+	private void presolve() {
+		forced = 0;
+		forcedCost = 0;
+		if (order != null) { return; }
+		CostTable table = state.table();
+		for (; forced < sortedMembers.length 
+				&& snapshot.degree(sortedMembers[forced]) <= 1; forced++) {
+			int current = sortedMembers[forced];
+			int edge = -1;
+			if (snapshot.degree(current) == 1) {
+				edge = table.candidate(snapshot.firstEdge(current));
+				int cost = state.cost(edge);
+				if (cost != 0) {
+					state.assign(current, edge);
+					pairMade[current] = edge;
+				}
+				forcedCost += cost;
+			}
+			bestPartner[forced] = edge;
+			bestMember[forced] = current;
+			if (bound != null) { bound.advance(state); }
+			if (hash != null) { hash.advance(); }
+		}
+	}
+	
 	/**
 	 * Implementation of weighted backtracking to produce a bestPartner list.
 	 * 
@@ -88,15 +551,29 @@ public class WeightedCSP {
 	 */
 	private int wBacktracking(int indexOfMember, int bestSoFar, int costSoFar) {
 		recursiveCalls++;
-		if (assignment == null) { return -1; }
+		if (state == null) { return -1; }
+		
+		// every so often, check whether the search has to stop
+		if (found && recursiveCalls % CHECK_INTERVAL == 0 && outOfTime()) {
+			stopped = true;
+		}
 		
-		// tabs used for prints in testing. corresponds to depth of recursion.
-		// thanks stack overflow -- http://stackoverflow.com/a/4903603/3739861
-		String tabs = new String(new char[indexOfMember]).replace("\0", "\t");
+		if (indexOfMember > stats.maxDepth) { stats.maxDepth = indexOfMember; }
+		if (depthNodes != null) { depthNodes[indexOfMember]++; }
 		
 		// check if all members have been iterated through, return cost if so
-		if (assignment.isCompleted(indexOfMember)) {
-			if(TEST) System.out.println(tabs+"Cost "+costSoFar+" found.");
+		if (indexOfMember >= sortedMembers.length) {
+			if (!found) { stats.firstMillis = System.currentTimeMillis() - startMillis; }
+			found = true;
+			if (costSoFar < bestFound) {
+				bestFound = costSoFar;
+				stats.bestMillis = System.currentTimeMillis() - startMillis;
+				if (depthNodes != null) {
+					SearchTrace.record(SearchTrace.INCUMBENT, traceId, null, costSoFar, 
+							recursiveCalls, 0, 0);
+				}
+			}
+			if(TEST) System.out.println(tabs(indexOfMember)+"Cost "+costSoFar+" found.");
 			return costSoFar;
 		
 		// iterate through all sensible options for teammates for this person
@@ -104,64 +581,626 @@ public class WeightedCSP {
 		// teammate into the bestPartner list.
 		} else {		
 			
-			Person current = sortedMembers.get(indexOfMember);
-			if (TEST) { System.out.println(tabs+"Finding pair for "+ current); }
+			// skip states whose completion is known to cost too much to beat the 
+			// best found so far
+			long key = 0;
+			if (hash != null) {
+				key = hash.value();
+				int completion = transpositions.get(key);
+				if (completion != -1 && (long) costSoFar + completion >= bestSoFar) {
+					stats.tablePrunes++;
+					if (nogoods != null) { nogoods.unexplained(indexOfMember); }
+					return bestSoFar;
+				}
+			}
 			
-			// get teammates sorted in terms of immediate cost to solution.
-			// ArrayList is 2D array, indices cost of teammate, values list of 
-			// teammate with taht cost.
-			ArrayList<ArrayList<Teammate>> sortedTM = 
-					assignment.getSortedTeammates(current, tabs);
+			// or that have what a nogood learned below another state has
+			if (nogoods != null) {
+				if (nogoods.prunes(indexOfMember, bestSoFar - costSoFar)) {
+					return bestSoFar;
+				}
+				nogoods.enter(indexOfMember);
+			}
+			
+			int current = order != null ? order.next() : sortedMembers[indexOfMember];
+			if (TEST) { 
+				System.out.println(tabs(indexOfMember)+"Finding pair for "+ 
+						snapshot.member(current)); 
+			}
+			
+			// get teammates grouped in terms of immediate cost to solution.
+			// teammates of cost c are candidates[start[c]] to candidates[start[c+1]-1]
+			int[] start = candidates.sort(indexOfMember, current, state);
+			if (nogoods != null) { nogoods.teammates(current); }
 			
 			// loop through each cost, unless adding that cost would give us a worse
 			// value than the value we have found so far.
-			for (int cost = 0; cost <= PairingAssignment.MAX_COST 
-					&& cost + costSoFar < bestSoFar; cost++ ) {
+			int cost;
+			for (cost = 0; cost <= PairingAssignment.MAX_COST 
+					&& cost + costSoFar < bestSoFar && !boundReached && !stopped; 
+					cost++ ) {
 				
 				// for each teammate at the cost, see what the best cost of using that
 				// teammate is. store best teammate.
-				for (Teammate tm : sortedTM.get(cost)) {	
-					if (TEST) { System.out.println(tabs+"\tAttempting "+ tm.person); }
+				for (int k = start[cost]; 
+						k < start[cost + 1] && !boundReached && !stopped; k++) {
+					int edge = candidates.get(k);
 					
-					assignment.assignPairing(current, tm);
+					// skip teammates whose twin is tried instead, doing at least as well
+					if (twins != null && triedTwin(start[cost], k, indexOfMember)) {
+						stats.twinSkips++;
+						continue;
+					}
+					if (TEST) { 
+						System.out.println(tabs(indexOfMember)+"\tAttempting "+ 
+								snapshot.member(snapshot.neighbor(edge))); 
+					}
 					
-					int pathCost = 
-							wBacktracking(indexOfMember+1, bestSoFar, costSoFar + cost);
+					// a pair that is already made costs nothing and is left as is
+					boolean newPair = cost != 0;
+					if (newPair) { 
+						state.assign(current, edge); 
+						pairMade[current] = edge;
+					}
+					if (bound != null) { bound.advance(state); }
+					if (hash != null) { hash.advance(); }
 					
-					// if choosing this teammate results in the lowest cost found so far
-					// at this depth, set as new best Partner.
-					if (pathCost < bestSoFar) {
-						bestSoFar = pathCost;
-						bestPartner.set(indexOfMember, tm);
-						if (TEST) {
-							System.out.println(tabs+"\tBest teammate set to "+ tm.person);
+					// skip teammates after which the rest of the members cannot be 
+					// paired for less than the best found so far
+					if ((bound == null || costSoFar + cost + bound.value() < bestSoFar)
+							&& (order == null || costSoFar + cost + order.value() < bestSoFar)) {
+						if (depthSearched != null) { depthSearched[indexOfMember]++; }
+						int pathCost = 
+								wBacktracking(indexOfMember+1, bestSoFar, costSoFar + cost);
+						
+						// if choosing this teammate results in the lowest cost found so 
+						// far at this depth, set as new best Partner.
+						if (pathCost < bestSoFar) {
+							bestSoFar = pathCost;
+							bestPartner[indexOfMember] = edge;
+							bestMember[indexOfMember] = current;
+							if (TEST) {
+								System.out.println(tabs(indexOfMember)+"\tBest teammate set to "+ 
+										snapshot.member(snapshot.neighbor(edge)));
+							}
+							
+							// nothing can be cheaper than the root bound or the goal
+							if ((bound != null && bestSoFar <= bound.root()) 
+									|| (order != null && bestSoFar <= order.root())
+									|| bestSoFar <= goal) { 
+								boundReached = true; 
+							}
+						} 
+					} else {
+						stats.boundPrunes++;
+						if (nogoods != null) { 
+							nogoods.boundPrune(indexOfMember, bestSoFar - costSoFar - cost); 
 						}
-					} 
+					}
 					
-					assignment.unassignPairing(current, tm);
+					if (hash != null) { hash.retreat(); }
+					if (bound != null) { bound.retreat(state); }
+					if (newPair) { 
+						state.unassign(current, edge); 
+						pairMade[current] = -1;
+					}
 				}
 			}
 			
-			// if there is no bestPartner set, that means the member does not actually
-			// have any teammates and wBacktracking was never called from this depth.
-			// Call wBacktracking to get bestPartners for the reset of the members.
-			if (bestPartner.get(indexOfMember) == null) {
-				wBacktracking(indexOfMember+1, bestSoFar, costSoFar);
+			if (cost <= PairingAssignment.MAX_COST && !boundReached && !stopped
+					&& start[cost] < start[PairingAssignment.MAX_COST + 1]) {
+				stats.costPrunes++;
+			}
+			
+			// if the member does not actually have any teammates, wBacktracking was 
+			// never called from this depth. Call wBacktracking to get bestPartners 
+			// for the rest of the members, and the cost of doing so.
+			if (start[0] == start[PairingAssignment.MAX_COST + 1]) {
+				if (bound != null) { bound.advance(state); }
+				if (hash != null) { hash.advance(); }
+				int pathCost = wBacktracking(indexOfMember+1, bestSoFar, costSoFar);
+				if (pathCost < bestSoFar) {
+					bestSoFar = pathCost;
+					bestPartner[indexOfMember] = -1;
+					bestMember[indexOfMember] = current;
+				}
+				if (hash != null) { hash.retreat(); }
+				if (bound != null) { bound.retreat(state); }
+			}
+			if (order != null) { order.previous(); }
+			
+			// no completion of this state costs less than bestSoFar - costSoFar, 
+			// unless the search was cut short
+			if (hash != null && !boundReached && !stopped) {
+				transpositions.put(key, bestSoFar - costSoFar);
+			}
+			if (nogoods != null) {
+				nogoods.exit(indexOfMember, bestSoFar - costSoFar, 
+						!boundReached && !stopped);
 			}
 			
 			// corresponds to cost of partnering w/ bestPartner at index of member
 			return bestSoFar;
 		}
 	}
+	
+	/**
+	 * wBacktracking without recursion. Each depth has a frame in preallocated
+	 * arrays holding what the recursive version keeps in its locals. The frame
+	 * being worked on is held in locals, saved when the search goes down and 
+	 * restored when it comes back. The last member's teammates lead straight 
+	 * to leaves, so their pairs are not made: the leaf only needs their cost, and
+	 * the last member's frame stays in locals while they are tried.
+	 * 
+	 * The nodes, their order, their counts and the best assignment are the same
+	 * as wBacktracking's.
+	 * 
+	 * @param first depth to start at
+	 * @param bestSoFar cost to beat at the root
+	 * @param costSoFar cost of the members before first
+	 * @return cost of assignment
+	 */
+	private int iBacktracking(int first, int bestSoFar, int costSoFar) {
+		int n = sortedMembers.length;
+		if (frames == null || frames.length < n * FRAME) {
+			frames = new int[n * FRAME];
+			frameKey = new long[n];
+		}
+		
+		// the search's objects never change during it, so they are kept in 
+		// locals rather than read from fields at every node
+		final SearchState state = this.state;
+		final CandidateBuffer candidates = this.candidates;
+		final LowerBound bound = this.bound;
+		final ZobristHash hash = this.hash;
+		final DynamicOrder order = this.order;
+		final TwinClasses twins = this.twins;
+		final SolveStats stats = this.stats;
+		final int[] pairMade = this.pairMade;
+		final int[] frames = this.frames;
+		
+		int d = first; // depth of the frame
+		int best = bestSoFar; // bestSoFar of the frame
+		int current = 0; // member searched by the frame
+		int[] start = null; // start of each cost's group of candidates
+		int cost = 0; // cost of the teammates being tried
+		int k = 0; // position in candidates of the teammate being tried
+		long key = 0;
+		int result = 0; // returned by the node gone back from
+		
+		enter:
+		while (true) {
+			boolean opened = false;
+			if (d >= n) {
+				result = leaf(d, costSoFar);
+			} else {
+				visit(d);
+				
+				// skip states whose completion is known to cost too much
+				key = 0;
+				if (hash != null) { key = hash.value(); }
+				int completion = hash != null ? transpositions.get(key) : -1;
+				if (completion != -1 && (long) costSoFar + completion >= best) {
+					stats.tablePrunes++;
+					if (nogoods != null) { nogoods.unexplained(d); }
+					result = best;
+				} else if (nogoods != null && nogoods.prunes(d, best - costSoFar)) {
+					result = best;
+				} else {
+					if (nogoods != null) { nogoods.enter(d); }
+					current = order != null ? order.next() : sortedMembers[d];
+					if (TEST) { 
+						System.out.println(tabs(d)+"Finding pair for "+ 
+								snapshot.member(current)); 
+					}
+					start = candidates.sort(d, current, state);
+					if (nogoods != null) { nogoods.teammates(current); }
+					
+					// level -1 is empty, so the first step checks level 0
+					cost = -1;
+					k = start[0];
+					opened = true;
+				}
+			}
+			
+			while (true) {
+				boolean fromLeaf = false; // result is of a leaf below this frame
+				if (opened) {
+					while (true) {
+						
+						// the teammates at this cost are done, or the search ends: go 
+						// to the next cost, unless adding it gives a worse value than 
+						// the best found so far
+						if (k >= start[cost + 1] || boundReached || stopped) {
+							cost++;
+							if (cost > PairingAssignment.MAX_COST 
+									|| cost + costSoFar >= best || boundReached || stopped) {
+								break;
+							}
+							k = start[cost];
+							continue;
+						}
+						int edge = candidates.get(k);
+						
+						// skip teammates whose twin is tried instead
+						if (twins != null && triedTwin(start[cost], k, d)) {
+							stats.twinSkips++;
+							k++;
+							continue;
+						}
+						if (TEST) { 
+							System.out.println(tabs(d)+"\tAttempting "+ 
+									snapshot.member(snapshot.neighbor(edge))); 
+						}
+						int below = costSoFar + cost;
+						
+						// the last member's teammates each lead straight to a leaf, 
+						// which only needs the cost. Both bounds are 0 there.
+						if (d + 1 == n) {
+							if ((bound == null && order == null) || below < best) {
+								if (depthSearched != null) { depthSearched[d]++; }
+								result = leaf(n, below);
+								fromLeaf = true;
+								break;
+							}
+							stats.boundPrunes++;
+							k++;
+							continue;
+						}
+						
+						// a pair that is already made costs nothing and is left as is
+						if (cost != 0) { 
+							state.assign(current, edge); 
+							pairMade[current] = edge;
+						}
+						if (bound != null) { bound.advance(state); }
+						if (hash != null) { hash.advance(); }
+						
+						// go down unless the rest of the members cannot be paired for 
+						// less than the best found so far
+						if ((bound == null || below + bound.value() < best)
+								&& (order == null || below + order.value() < best)) {
+							if (depthSearched != null) { depthSearched[d]++; }
+							save(d, best, costSoFar, current, cost, k, key);
+							d++;
+							costSoFar = below;
+							continue enter;
+						}
+						stats.boundPrunes++;
+						if (nogoods != null) { nogoods.boundPrune(d, best - below); }
+						
+						if (hash != null) { hash.retreat(); }
+						if (bound != null) { bound.retreat(state); }
+						if (cost != 0) { 
+							state.unassign(current, edge); 
+							pairMade[current] = -1;
+						}
+						k++;
+					}
+					
+					if (!fromLeaf) {
+						if (cost <= PairingAssignment.MAX_COST && !boundReached 
+								&& !stopped 
+								&& start[cost] < start[PairingAssignment.MAX_COST + 1]) {
+							stats.costPrunes++;
+						}
+						
+						// a member without teammates only goes on to the next member
+						if (start[0] == start[PairingAssignment.MAX_COST + 1]) {
+							if (bound != null) { bound.advance(state); }
+							if (hash != null) { hash.advance(); }
+							save(d, best, costSoFar, current, -1, k, key);
+							d++;
+							continue enter;
+						}
+						
+						result = finish(d, best, costSoFar, key);
+					}
+				}
+				
+				// go back to the frame above with the result
+				if (!fromLeaf) {
+					if (--d < first) { return result; }
+					int f = d * FRAME;
+					best = frames[f];
+					costSoFar = frames[f + 1];
+					current = frames[f + 2];
+					cost = frames[f + 3];
+					k = frames[f + 4];
+					
+					if (cost == -1) {
+						if (result < best) {
+							best = result;
+							bestPartner[d] = -1;
+							bestMember[d] = current;
+						}
+						if (hash != null) { hash.retreat(); }
+						if (bound != null) { bound.retreat(state); }
+						
+						// the member had no teammates, the frame is done
+						if (hash != null) { key = frameKey[d]; }
+						result = finish(d, best, costSoFar, key);
+						opened = false;
+						continue;
+					}
+					start = candidates.start(d);
+					if (hash != null) { key = frameKey[d]; }
+				}
+				
+				// if choosing this teammate results in the lowest cost found so far
+				// at this depth, set as new best Partner.
+				int edge = candidates.get(k);
+				if (result < best) {
+					best = result;
+					bestPartner[d] = edge;
+					bestMember[d] = current;
+					if (TEST) {
+						System.out.println(tabs(d)+"\tBest teammate set to "+ 
+								snapshot.member(snapshot.neighbor(edge)));
+					}
+					
+					// nothing can be cheaper than the root bound or the goal
+					if ((bound != null && best <= bound.root()) 
+							|| (order != null && best <= order.root())
+							|| best <= goal) { 
+						boundReached = true; 
+					}
+				}
+				
+				if (!fromLeaf) {
+					if (hash != null) { hash.retreat(); }
+					if (bound != null) { bound.retreat(state); }
+					if (cost != 0) { 
+						state.unassign(current, edge); 
+						pairMade[current] = -1;
+					}
+				}
+				k++;
+				opened = true;
+			}
+		}
+	}
+	
+	/**
+	 * Counts a node of iBacktracking at the given depth, as a call to 
+	 * wBacktracking is counted.
+	 */
+	private void visit(int depth) {
+		recursiveCalls++;
+		
+		// every so often, check whether the search has to stop
+		if (found && recursiveCalls % CHECK_INTERVAL == 0 && outOfTime()) {
+			stopped = true;
+		}
+		
+		if (depth > stats.maxDepth) { stats.maxDepth = depth; }
+		if (depthNodes != null) { depthNodes[depth]++; }
+	}
+	
+	/**
+	 * A leaf of iBacktracking, where all members have been iterated through.
+	 * @return cost of the assignment
+	 */
+	private int leaf(int depth, int costSoFar) {
+		visit(depth);
+		if (!found) { stats.firstMillis = System.currentTimeMillis() - startMillis; }
+		found = true;
+		if (costSoFar < bestFound) {
+			bestFound = costSoFar;
+			stats.bestMillis = System.currentTimeMillis() - startMillis;
+			if (depthNodes != null) {
+				SearchTrace.record(SearchTrace.INCUMBENT, traceId, null, costSoFar,
+						recursiveCalls, 0, 0);
+			}
+		}
+		if(TEST) System.out.println(tabs(depth)+"Cost "+costSoFar+" found.");
+		return costSoFar;
+	}
+	
+	/**
+	 * Saves the frame at depth d of iBacktracking before going down: its 
+	 * bestSoFar, costSoFar, member, the cost of the teammate tried and its 
+	 * position in candidates. The start of each cost's group is kept by the 
+	 * CandidateBuffer for the depth.
+	 * @param cost of the teammate tried, or -1 if the member has no teammates
+	 */
+	private void save(int d, int best, int costSoFar, int current, int cost, 
+			int k, long key) {
+		int f = d * FRAME;
+		frames[f] = best;
+		frames[f + 1] = costSoFar;
+		frames[f + 2] = current;
+		frames[f + 3] = cost;
+		frames[f + 4] = k;
+		if (hash != null) { frameKey[d] = key; }
+	}
+	
+	/**
+	 * Ends a frame of iBacktracking, as wBacktracking ends a call.
+	 * @param depth of the frame
+	 * @param bestSoFar of the frame
+	 * @param costSoFar of the frame
+	 * @param key of the frame's state in the transposition table
+	 * @return bestSoFar
+	 */
+	private int finish(int depth, int bestSoFar, int costSoFar, long key) {
+		if (order != null) { order.previous(); }
+		
+		// no completion of this state costs less than bestSoFar - costSoFar, 
+		// unless the search was cut short
+		if (hash != null && !boundReached && !stopped) {
+			transpositions.put(key, bestSoFar - costSoFar);
+		}
+		if (nogoods != null) {
+			nogoods.exit(depth, bestSoFar - costSoFar, !boundReached && !stopped);
+		}
+		return bestSoFar;
+	}
+	
+	/**
+	 * Counts the cost of a starting solution by going through the members in
+	 * search order: each makes the pair with their mate if it is not made yet,
+	 * or else picks their cheapest teammate if they have no partner. The state
+	 * is left as it was. If the cost is lower than best, the solution is stored
+	 * in bestPartner.
+	 * @param mate edge from each member to their mate, or -1
+	 * @param best cost to beat
+	 * @return cost of the solution
+	 */
+	private int seed(int[] mate, int best) {
+		int n = sortedMembers.length;
+		int[] members = new int[n];
+		int[] edges = new int[n];
+		int cost = 0;
+		for (int d = 0; d < n; d++) {
+			int current = order != null ? order.next() : sortedMembers[d];
+			int edge = -1;
+			if (mate[current] != -1 && !state.isPaired(mate[current])) {
+				edge = mate[current];
+			} else if (!state.hasPartner(current)) {
+				edge = cheapest(current);
+			}
+			if (edge != -1) {
+				cost += state.cost(edge);
+				state.assign(current, edge);
+			}
+			members[d] = current;
+			edges[d] = edge;
+		}
+		
+		for (int d = n - 1; d >= 0; d--) {
+			if (edges[d] != -1) { state.unassign(members[d], edges[d]); }
+			if (order != null) { order.previous(); }
+		}
+		
+		if (cost < best) {
+			System.arraycopy(members, 0, bestMember, 0, n);
+			System.arraycopy(edges, 0, bestPartner, 0, n);
+		}
+		return cost;
+	}
+	
+	/**
+	 * @param member id
+	 * @return member's cheapest edge at the current state, first in candidate
+	 * 	order among equals, or -1 if the member has no teammates
+	 */
+	private int cheapest(int member) {
+		CostTable table = state.table();
+		int best = -1;
+		for (int k = snapshot.firstEdge(member); k < snapshot.endEdge(member); k++) {
+			int e = table.candidate(k);
+			if (best == -1 || state.cost(e) < state.cost(best)) { best = e; }
+		}
+		return best;
+	}
+	
+	/**
+	 * Whether the candidate at k has a twin that is tried instead, which does
+	 * at least as well.
+	 * @see TwinClasses
+	 * @param first position of the first candidate at the same cost
+	 * @param k position of the candidate
+	 * @param depth being searched
+	 */
+	private boolean triedTwin(int first, int k, int depth) {
+		int teammate = snapshot.neighbor(candidates.get(k));
+		if (!twins.hasTwin(teammate)) { return false; }
+		
+		// a free twin searched right before, in the fixed order. Being free, it
+		// costs the same and is also a candidate.
+		if (!searched(teammate, depth)) {
+			if (nogoods != null) { nogoods.partner(teammate); }
+			if (order != null || state.hasPartner(teammate)) { return false; }
+			int before = position[teammate] - 1;
+			if (nogoods != null && before > depth) { 
+				nogoods.partner(sortedMembers[before]); 
+			}
+			return before > depth 
+					&& twins.of(sortedMembers[before]) == twins.of(teammate)
+					&& !state.hasPartner(sortedMembers[before]);
+		}
+		
+		// a searched twin tried before, at the same cost
+		long key = twinKey(teammate, depth);
+		for (int j = first; j < k; j++) {
+			if (twinKey(snapshot.neighbor(candidates.get(j)), depth) == key) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * @param teammate id
+	 * @param depth being searched
+	 * @return what the members still to come can tell about a searched 
+	 * 	teammate, its class and the member still to come it made a pair with, or
+	 * 	-1 if it has not been searched
+	 */
+	private long twinKey(int teammate, int depth) {
+		if (!searched(teammate, depth)) { return -1; }
+		if (nogoods != null) { nogoods.pick(teammate); }
+		int made = pairMade[teammate];
+		int target = made == -1 ? -1 : snapshot.neighbor(made);
+		if (target != -1 && searched(target, depth)) { target = -1; }
+		return (long) twins.of(teammate) * (snapshot.size() + 1) + target + 1;
+	}
+	
+	/**
+	 * @return whether the member has been searched by the given depth, counting
+	 * 	the member at that depth
+	 */
+	private boolean searched(int member, int depth) {
+		return order != null ? order.isSearched(member) : position[member] <= depth;
+	}
+	
+	/**
+	 * Records the branching at each depth the search reached, then the end of
+	 * the solve, in SearchTrace.
+	 */
+	private void traceEnd() {
+		for (int d = 0; d < depthNodes.length; d++) {
+			if (depthNodes[d] == 0) { continue; }
+			SearchTrace.record(SearchTrace.BRANCHING, traceId, null, d, 
+					depthNodes[d], depthSearched[d], 0);
+		}
+		SearchTrace.record(SearchTrace.END, traceId, null, stats.cost, 
+				stats.lowerBound, stats.nodes, stats.optimal ? 1 : 0);
+	}
+	
+	/**
+	 * @return whether the deadline has passed or the solve has been cancelled
+	 */
+	private boolean outOfTime() {
+		return (token != null && token.isCancelled()) 
+				|| (deadline != NO_DEADLINE && System.currentTimeMillis() >= deadline);
+	}
+	
+	/**
+	 * Used for prints in testing. corresponds to depth of recursion.
+	 * thanks stack overflow -- http://stackoverflow.com/a/4903603/3739861
+	 * @param depth
+	 * @return string of depth tabs
+	 */
+	private static String tabs(int depth) {
+		return new String(new char[depth]).replace("\0", "\t");
+	}
 
 	/**
-	 * Comparator used to compare two people by the number of teammates.
-	 * Sorts from lowest to highest.
-	 * Used in constructor on the list of people in organization.
+	 * Comparator used to compare two members of the snapshot by the number of 
+	 * teammates. Sorts from lowest to highest.
+	 * Used in sortMembers() on the ids of a snapshot.
 	 */
-	class TeammatesCompare implements Comparator<Person> {
-    public int compare(Person o1, Person o2) {
-        return o1.teammateCount() - o2.teammateCount();
+	static class TeammatesCompare implements Comparator<Integer> {
+		private OrganizationSnapshot snapshot;
+		
+		TeammatesCompare(OrganizationSnapshot snapshot) {
+			this.snapshot = snapshot;
+		}
+		
+    public int compare(Integer o1, Integer o2) {
+        return snapshot.degree(o1) - snapshot.degree(o2);
     }
 	}
 }
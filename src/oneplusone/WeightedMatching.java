@@ -0,0 +1,628 @@
+/**
+ * WeightedMatching.java
+ *
+ * Maximum weight matching on a general graph, using Edmonds' blossom algorithm
+ * with the primal-dual method of Galil ("Efficient algorithms for finding
+ * maximum matching in graphs", 1986). Runs in O(n^3) time.
+ *
+ * Follows the structure of Joris van Rantwijk's public domain mwmatching.py.
+ * Vertex dual variables are kept doubled, so with integer weights every
+ * quantity stays an integer.
+ *
+ * Used by MinCostMatching. Pure JDK, no state is kept between calls.
+ */
+
+package oneplusone;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+public class WeightedMatching {
+	private final int nvertex;
+	private final int nedge;
+	private final int[] edgeFrom;
+	private final int[] edgeTo;
+	private final int[] weight;
+	private final int[] endpoint; // endpoint p => vertex, edge k has 2k and 2k+1
+	private final int[][] neighbend; // vertex => endpoints of its edges' far ends
+
+	private int[] mate; // vertex => remote endpoint of its matched edge, or -1
+	private int[] label; // 0 free, 1 S-vertex/blossom, 2 T-vertex/blossom
+	private int[] labelend;
+	private int[] inblossom; // vertex => top-level blossom containing it
+	private int[] blossomparent;
+	private int[][] blossomchilds;
+	private int[] blossombase;
+	private int[][] blossomendps;
+	private int[] bestedge;
+	private int[][] blossombestedges;
+	private int[] unusedblossoms;
+	private int unusedCount;
+	private int[] dualvar;
+	private boolean[] allowedge;
+	private IntList queue;
+
+	/**
+	 * @param vertices number of vertices, numbered from 0
+	 * @param from first vertex of each edge
+	 * @param to second vertex of each edge
+	 * @param weights of each edge
+	 */
+	public WeightedMatching(int vertices, int[] from, int[] to, int[] weights) {
+		nvertex = vertices;
+		nedge = from.length;
+		edgeFrom = from;
+		edgeTo = to;
+		weight = weights;
+
+		endpoint = new int[2 * nedge];
+		int[] degree = new int[nvertex];
+		for (int k = 0; k < nedge; k++) {
+			endpoint[2 * k] = from[k];
+			endpoint[2 * k + 1] = to[k];
+			degree[from[k]]++;
+			degree[to[k]]++;
+		}
+		neighbend = new int[nvertex][];
+		for (int v = 0; v < nvertex; v++) { neighbend[v] = new int[degree[v]]; }
+		int[] filled = new int[nvertex];
+		for (int k = 0; k < nedge; k++) {
+			neighbend[from[k]][filled[from[k]]++] = 2 * k + 1;
+			neighbend[to[k]][filled[to[k]]++] = 2 * k;
+		}
+	}
+
+	/**
+	 * Computes a maximum weight matching (not necessarily of maximum size).
+	 * @return vertex => vertex it is matched to, or -1 if unmatched.
+	 */
+	public int[] solve() {
+		int maxweight = 0;
+		for (int k = 0; k < nedge; k++) { maxweight = Math.max(maxweight, weight[k]); }
+
+		mate = filled(nvertex, -1);
+		label = new int[2 * nvertex];
+		labelend = filled(2 * nvertex, -1);
+		inblossom = new int[nvertex];
+		for (int v = 0; v < nvertex; v++) { inblossom[v] = v; }
+		blossomparent = filled(2 * nvertex, -1);
+		blossomchilds = new int[2 * nvertex][];
+		blossombase = filled(2 * nvertex, -1);
+		for (int v = 0; v < nvertex; v++) { blossombase[v] = v; }
+		blossomendps = new int[2 * nvertex][];
+		bestedge = filled(2 * nvertex, -1);
+		blossombestedges = new int[2 * nvertex][];
+		unusedblossoms = new int[nvertex];
+		unusedCount = nvertex;
+		for (int b = 0; b < nvertex; b++) { unusedblossoms[b] = nvertex + b; }
+		dualvar = new int[2 * nvertex];
+		for (int v = 0; v < nvertex; v++) { dualvar[v] = maxweight; }
+		allowedge = new boolean[nedge];
+		queue = new IntList();
+
+		// each stage finds an augmenting path, or proves none improves weight
+		for (int t = 0; t < nvertex; t++) {
+			Arrays.fill(label, 0);
+			Arrays.fill(bestedge, -1);
+			for (int b = nvertex; b < 2 * nvertex; b++) { blossombestedges[b] = null; }
+			Arrays.fill(allowedge, false);
+			queue.clear();
+
+			for (int v = 0; v < nvertex; v++) {
+				if (mate[v] == -1 && label[inblossom[v]] == 0) { assignLabel(v, 1, -1); }
+			}
+
+			boolean augmented = false;
+			while (true) {
+				while (queue.size() > 0 && !augmented) {
+					int v = queue.pop();
+
+					for (int p : neighbend[v]) {
+						int k = p / 2;
+						int w = endpoint[p];
+						if (inblossom[v] == inblossom[w]) { continue; }
+
+						int kslack = 0;
+						if (!allowedge[k]) {
+							kslack = slack(k);
+							if (kslack <= 0) { allowedge[k] = true; }
+						}
+
+						if (allowedge[k]) {
+							if (label[inblossom[w]] == 0) {
+								assignLabel(w, 2, p ^ 1);
+							} else if (label[inblossom[w]] == 1) {
+								int base = scanBlossom(v, w);
+								if (base >= 0) {
+									addBlossom(base, k);
+								} else {
+									augmentMatching(k);
+									augmented = true;
+									break;
+								}
+							} else if (label[w] == 0) {
+								label[w] = 2;
+								labelend[w] = p ^ 1;
+							}
+						} else if (label[inblossom[w]] == 1) {
+							int b = inblossom[v];
+							if (bestedge[b] == -1 || kslack < slack(bestedge[b])) {
+								bestedge[b] = k;
+							}
+						} else if (label[w] == 0) {
+							if (bestedge[w] == -1 || kslack < slack(bestedge[w])) {
+								bestedge[w] = k;
+							}
+						}
+					}
+				}
+				if (augmented) { break; }
+
+				// no augmenting path with the current duals, work out how far the
+				// duals can move
+				int deltatype = 1;
+				int delta = Integer.MAX_VALUE;
+				int deltaedge = -1;
+				int deltablossom = -1;
+				for (int v = 0; v < nvertex; v++) { delta = Math.min(delta, dualvar[v]); }
+
+				for (int v = 0; v < nvertex; v++) {
+					if (label[inblossom[v]] == 0 && bestedge[v] != -1) {
+						int d = slack(bestedge[v]);
+						if (d < delta) {
+							delta = d;
+							deltatype = 2;
+							deltaedge = bestedge[v];
+						}
+					}
+				}
+
+				for (int b = 0; b < 2 * nvertex; b++) {
+					if (blossomparent[b] == -1 && label[b] == 1 && bestedge[b] != -1) {
+						int d = slack(bestedge[b]) / 2;
+						if (d < delta) {
+							delta = d;
+							deltatype = 3;
+							deltaedge = bestedge[b];
+						}
+					}
+				}
+
+				for (int b = nvertex; b < 2 * nvertex; b++) {
+					if (blossombase[b] >= 0 && blossomparent[b] == -1 && label[b] == 2
+							&& dualvar[b] < delta) {
+						delta = dualvar[b];
+						deltatype = 4;
+						deltablossom = b;
+					}
+				}
+
+				for (int v = 0; v < nvertex; v++) {
+					if (label[inblossom[v]] == 1) {
+						dualvar[v] -= delta;
+					} else if (label[inblossom[v]] == 2) {
+						dualvar[v] += delta;
+					}
+				}
+				for (int b = nvertex; b < 2 * nvertex; b++) {
+					if (blossombase[b] >= 0 && blossomparent[b] == -1) {
+						if (label[b] == 1) {
+							dualvar[b] += delta;
+						} else if (label[b] == 2) {
+							dualvar[b] -= delta;
+						}
+					}
+				}
+
+				if (deltatype == 1) {
+					break; // optimum reached
+				} else if (deltatype == 2) {
+					allowedge[deltaedge] = true;
+					int i = edgeFrom[deltaedge];
+					if (label[inblossom[i]] == 0) { i = edgeTo[deltaedge]; }
+					queue.add(i);
+				} else if (deltatype == 3) {
+					allowedge[deltaedge] = true;
+					queue.add(edgeFrom[deltaedge]);
+				} else {
+					expandBlossom(deltablossom, false);
+				}
+			}
+
+			if (!augmented) { break; }
+
+			// expand S-blossoms whose dual has dropped to zero
+			for (int b = nvertex; b < 2 * nvertex; b++) {
+				if (blossomparent[b] == -1 && blossombase[b] >= 0 && label[b] == 1
+						&& dualvar[b] == 0) {
+					expandBlossom(b, true);
+				}
+			}
+		}
+
+		int[] matched = new int[nvertex];
+		for (int v = 0; v < nvertex; v++) {
+			matched[v] = mate[v] >= 0 ? endpoint[mate[v]] : -1;
+		}
+		return matched;
+	}
+
+	private int slack(int k) {
+		return dualvar[edgeFrom[k]] + dualvar[edgeTo[k]] - 2 * weight[k];
+	}
+
+	/**
+	 * @param b vertex or blossom
+	 * @return vertices contained in b
+	 */
+	private IntList leaves(int b) {
+		IntList leaves = new IntList();
+		addLeaves(b, leaves);
+		return leaves;
+	}
+
+	private void addLeaves(int b, IntList leaves) {
+		if (b < nvertex) {
+			leaves.add(b);
+		} else {
+			for (int t : blossomchilds[b]) { addLeaves(t, leaves); }
+		}
+	}
+
+	/**
+	 * Labels the top-level blossom of w with t, reached through endpoint p.
+	 */
+	private void assignLabel(int w, int t, int p) {
+		int b = inblossom[w];
+		label[w] = label[b] = t;
+		labelend[w] = labelend[b] = p;
+		bestedge[w] = bestedge[b] = -1;
+		if (t == 1) {
+			queue.addAll(leaves(b));
+		} else if (t == 2) {
+			int base = blossombase[b];
+			assignLabel(endpoint[mate[base]], 1, mate[base] ^ 1);
+		}
+	}
+
+	/**
+	 * Traces back from v and w to find a new blossom or an augmenting path.
+	 * @return base of the new blossom, or -1 for an augmenting path
+	 */
+	private int scanBlossom(int v, int w) {
+		IntList path = new IntList();
+		int base = -1;
+		while (v != -1 || w != -1) {
+			int b = inblossom[v];
+			if ((label[b] & 4) != 0) {
+				base = blossombase[b];
+				break;
+			}
+			path.add(b);
+			label[b] = 5;
+			if (labelend[b] == -1) {
+				v = -1;
+			} else {
+				v = endpoint[labelend[b]];
+				b = inblossom[v];
+				v = endpoint[labelend[b]];
+			}
+			if (w != -1) {
+				int swap = v;
+				v = w;
+				w = swap;
+			}
+		}
+		for (int i = 0; i < path.size(); i++) { label[path.get(i)] = 1; }
+		return base;
+	}
+
+	/**
+	 * Makes a new blossom with the given base, through S-vertices joined by
+	 * edge k.
+	 */
+	private void addBlossom(int base, int k) {
+		int v = edgeFrom[k];
+		int w = edgeTo[k];
+		int bb = inblossom[base];
+		int bv = inblossom[v];
+		int bw = inblossom[w];
+		int b = unusedblossoms[--unusedCount];
+		blossombase[b] = base;
+		blossomparent[b] = -1;
+		blossomparent[bb] = b;
+
+		IntList path = new IntList();
+		IntList endps = new IntList();
+		while (bv != bb) {
+			blossomparent[bv] = b;
+			path.add(bv);
+			endps.add(labelend[bv]);
+			v = endpoint[labelend[bv]];
+			bv = inblossom[v];
+		}
+		path.add(bb);
+		path.reverse();
+		endps.reverse();
+		endps.add(2 * k);
+		while (bw != bb) {
+			blossomparent[bw] = b;
+			path.add(bw);
+			endps.add(labelend[bw] ^ 1);
+			w = endpoint[labelend[bw]];
+			bw = inblossom[w];
+		}
+		blossomchilds[b] = path.toArray();
+		blossomendps[b] = endps.toArray();
+
+		label[b] = 1;
+		labelend[b] = labelend[bb];
+		dualvar[b] = 0;
+
+		IntList inside = leaves(b);
+		for (int i = 0; i < inside.size(); i++) {
+			int leaf = inside.get(i);
+			if (label[inblossom[leaf]] == 2) { queue.add(leaf); }
+			inblossom[leaf] = b;
+		}
+
+		// least-slack edges from the new blossom to each other S-blossom
+		int[] bestedgeto = filled(2 * nvertex, -1);
+		for (int child : blossomchilds[b]) {
+			IntList edges = new IntList();
+			if (blossombestedges[child] == null) {
+				IntList childLeaves = leaves(child);
+				for (int i = 0; i < childLeaves.size(); i++) {
+					for (int p : neighbend[childLeaves.get(i)]) { edges.add(p / 2); }
+				}
+			} else {
+				edges.addAll(blossombestedges[child]);
+			}
+
+			for (int i = 0; i < edges.size(); i++) {
+				int e = edges.get(i);
+				int j = edgeTo[e];
+				if (inblossom[j] == b) { j = edgeFrom[e]; }
+				int bj = inblossom[j];
+				if (bj != b && label[bj] == 1
+						&& (bestedgeto[bj] == -1 || slack(e) < slack(bestedgeto[bj]))) {
+					bestedgeto[bj] = e;
+				}
+			}
+			blossombestedges[child] = null;
+			bestedge[child] = -1;
+		}
+
+		IntList best = new IntList();
+		for (int e : bestedgeto) { if (e != -1) { best.add(e); } }
+		blossombestedges[b] = best.toArray();
+		bestedge[b] = -1;
+		for (int e : blossombestedges[b]) {
+			if (bestedge[b] == -1 || slack(e) < slack(bestedge[b])) { bestedge[b] = e; }
+		}
+	}
+
+	/**
+	 * Expands blossom b. At the end of a stage (endstage) nested blossoms with
+	 * zero dual are expanded too, otherwise T-labels are rebuilt inside b.
+	 */
+	private void expandBlossom(int b, boolean endstage) {
+		for (int s : blossomchilds[b]) {
+			blossomparent[s] = -1;
+			if (s < nvertex) {
+				inblossom[s] = s;
+			} else if (endstage && dualvar[s] == 0) {
+				expandBlossom(s, endstage);
+			} else {
+				IntList inside = leaves(s);
+				for (int i = 0; i < inside.size(); i++) { inblossom[inside.get(i)] = s; }
+			}
+		}
+
+		if (!endstage && label[b] == 2) {
+			int[] childs = blossomchilds[b];
+			int[] endps = blossomendps[b];
+			int entrychild = inblossom[endpoint[labelend[b] ^ 1]];
+			int j = indexOf(childs, entrychild);
+			int jstep;
+			int endptrick;
+			if ((j & 1) != 0) {
+				j -= childs.length;
+				jstep = 1;
+				endptrick = 0;
+			} else {
+				jstep = -1;
+				endptrick = 1;
+			}
+
+			int p = labelend[b];
+			while (j != 0) {
+				label[endpoint[p ^ 1]] = 0;
+				label[endpoint[at(endps, j - endptrick) ^ endptrick ^ 1]] = 0;
+				assignLabel(endpoint[p ^ 1], 2, p);
+				allowedge[at(endps, j - endptrick) / 2] = true;
+				j += jstep;
+				p = at(endps, j - endptrick) ^ endptrick;
+				allowedge[p / 2] = true;
+				j += jstep;
+			}
+
+			int bv = at(childs, j);
+			label[endpoint[p ^ 1]] = label[bv] = 2;
+			labelend[endpoint[p ^ 1]] = labelend[bv] = p;
+			bestedge[bv] = -1;
+			j += jstep;
+
+			while (at(childs, j) != entrychild) {
+				bv = at(childs, j);
+				if (label[bv] == 1) {
+					j += jstep;
+					continue;
+				}
+				IntList inside = leaves(bv);
+				int v = -1;
+				for (int i = 0; i < inside.size(); i++) {
+					v = inside.get(i);
+					if (label[v] != 0) { break; }
+				}
+				if (label[v] != 0) {
+					label[v] = 0;
+					label[endpoint[mate[blossombase[bv]]]] = 0;
+					assignLabel(v, 2, labelend[v]);
+				}
+				j += jstep;
+			}
+		}
+
+		label[b] = labelend[b] = -1;
+		blossomchilds[b] = blossomendps[b] = null;
+		blossombase[b] = -1;
+		blossombestedges[b] = null;
+		bestedge[b] = -1;
+		unusedblossoms[unusedCount++] = b;
+	}
+
+	/**
+	 * Swaps matched and unmatched edges along the path through blossom b
+	 * between vertex v and the base.
+	 */
+	private void augmentBlossom(int b, int v) {
+		int t = v;
+		while (blossomparent[t] != b) { t = blossomparent[t]; }
+		if (t >= nvertex) { augmentBlossom(t, v); }
+
+		int[] childs = blossomchilds[b];
+		int[] endps = blossomendps[b];
+		int i = indexOf(childs, t);
+		int j = i;
+		int jstep;
+		int endptrick;
+		if ((i & 1) != 0) {
+			j -= childs.length;
+			jstep = 1;
+			endptrick = 0;
+		} else {
+			jstep = -1;
+			endptrick = 1;
+		}
+
+		while (j != 0) {
+			j += jstep;
+			t = at(childs, j);
+			int p = at(endps, j - endptrick) ^ endptrick;
+			if (t >= nvertex) { augmentBlossom(t, endpoint[p]); }
+			j += jstep;
+			t = at(childs, j);
+			if (t >= nvertex) { augmentBlossom(t, endpoint[p ^ 1]); }
+			mate[endpoint[p]] = p ^ 1;
+			mate[endpoint[p ^ 1]] = p;
+		}
+
+		// rotate so that the new base is the first child
+		blossomchilds[b] = rotated(childs, i);
+		blossomendps[b] = rotated(endps, i);
+		blossombase[b] = blossombase[blossomchilds[b][0]];
+	}
+
+	/**
+	 * Swaps matched and unmatched edges along the augmenting path through k.
+	 */
+	private void augmentMatching(int k) {
+		int[] starts = { edgeFrom[k], edgeTo[k] };
+		int[] ends = { 2 * k + 1, 2 * k };
+		for (int side = 0; side < 2; side++) {
+			int s = starts[side];
+			int p = ends[side];
+			while (true) {
+				int bs = inblossom[s];
+				if (bs >= nvertex) { augmentBlossom(bs, s); }
+				mate[s] = p;
+				if (labelend[bs] == -1) { break; }
+				int t = endpoint[labelend[bs]];
+				int bt = inblossom[t];
+				s = endpoint[labelend[bt]];
+				int j = endpoint[labelend[bt] ^ 1];
+				if (bt >= nvertex) { augmentBlossom(bt, j); }
+				mate[j] = labelend[bt];
+				p = labelend[bt] ^ 1;
+			}
+		}
+	}
+
+	/**
+	 * Python style indexing, negative indices count from the end.
+	 */
+	private static int at(int[] array, int index) {
+		return array[index < 0 ? index + array.length : index];
+	}
+
+	private static int indexOf(int[] array, int value) {
+		for (int i = 0; i < array.length; i++) {
+			if (array[i] == value) { return i; }
+		}
+		return -1;
+	}
+
+	private static int[] rotated(int[] array, int start) {
+		int[] rotated = new int[array.length];
+		for (int i = 0; i < array.length; i++) {
+			rotated[i] = array[(start + i) % array.length];
+		}
+		return rotated;
+	}
+
+	private static int[] filled(int length, int value) {
+		int[] array = new int[length];
+		Arrays.fill(array, value);
+		return array;
+	}
+
+	/**
+	 * Growable list of ints.
+	 */
+	private static class IntList {
+		private int[] values = new int[8];
+		private int size = 0;
+
+		void add(int value) {
+			if (size == values.length) { values = Arrays.copyOf(values, size * 2); }
+			values[size++] = value;
+		}
+
+		void addAll(IntList other) {
+			for (int i = 0; i < other.size; i++) { add(other.values[i]); }
+		}
+
+		void addAll(int[] other) {
+			for (int value : other) { add(value); }
+		}
+
+		int get(int i) {
+			return values[i];
+		}
+
+		int pop() {
+			return values[--size];
+		}
+
+		int size() {
+			return size;
+		}
+
+		void clear() {
+			size = 0;
+		}
+
+		void reverse() {
+			for (int i = 0, j = size - 1; i < j; i++, j--) {
+				int swap = values[i];
+				values[i] = values[j];
+				values[j] = swap;
+			}
+		}
+
+		int[] toArray() {
+			return Arrays.copyOf(values, size);
+		}
+	}
+}
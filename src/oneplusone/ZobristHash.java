@@ -0,0 +1,116 @@
+/**
+ * ZobristHash.java
+ *
+ * Zobrist hash of the part of a partial assignment that the rest of the
+ * search depends on, kept up to date as the search moves.
+ *
+ * The cost of the members not reached yet depends only on which members have
+ * a partner, and on which pairs have a member not reached yet in them. A pair
+ * of two members already passed changes nothing below. Two partial assignments
+ * at the same depth with the same hash (barring collisions) have the same best
+ * completion, however they were reached.
+ *
+ * Each member and each pair has a random 64 bit key. The hash is the XOR of
+ * the keys of the members with a partner and of the pairs that still matter,
+ * and of a key for the depth. Like LowerBound, SearchState reports members
+ * gaining and losing partners and pairs being made and undone, and the search
+ * reports moving down and up a depth.
+ */
+
+package oneplusone;
+
+import java.util.Random;
+
+public class ZobristHash {
+	private final OrganizationSnapshot snapshot;
+	private final int[] position; // id => depth at which member is searched
+	private final int[] sortedMembers; // depth => id
+	private final long[] memberKeys; // id => key, in hash while member has partner
+	private final long[] pairKeys; // edge => key, same for both directions
+	private final long[] depthKeys; // depth => key
+	private final long[] later; // id => keys of pairs in hash with them as later
+	private int depth;
+	private long pairs; // XOR of keys of the pairs that still matter
+	private long partners; // XOR of keys of the members with a partner
+
+	/**
+	 * @param snapshot being searched
+	 * @param sortedMembers ids in the order they are searched
+	 * @param random used to draw the keys
+	 */
+	public ZobristHash(OrganizationSnapshot snapshot, int[] sortedMembers,
+			Random random) {
+		int n = sortedMembers.length;
+		this.snapshot = snapshot;
+		this.sortedMembers = sortedMembers;
+		position = new int[n];
+		for (int d = 0; d < n; d++) { position[sortedMembers[d]] = d; }
+
+		memberKeys = new long[n];
+		for (int i = 0; i < n; i++) { memberKeys[i] = random.nextLong(); }
+		depthKeys = new long[n + 1];
+		for (int d = 0; d <= n; d++) { depthKeys[d] = random.nextLong(); }
+		pairKeys = new long[snapshot.edgeCount()];
+		for (int e = 0; e < pairKeys.length; e++) {
+			int back = snapshot.reverse(e);
+			pairKeys[e] = back != -1 && back < e ? pairKeys[back] : random.nextLong();
+		}
+		later = new long[n];
+	}
+
+	/**
+	 * @return hash of the current partial assignment and depth
+	 */
+	public long value() {
+		return partners ^ pairs ^ depthKeys[depth];
+	}
+
+	/**
+	 * Called by SearchState when a member gains their first partner.
+	 * @param member id
+	 */
+	void paired(int member) {
+		partners ^= memberKeys[member];
+	}
+
+	/**
+	 * Called by SearchState when a member loses their last partner.
+	 * @param member id
+	 */
+	void unpaired(int member) {
+		partners ^= memberKeys[member];
+	}
+
+	/**
+	 * Called by SearchState when a pair is made or undone, at the depth of the
+	 * member making it. The pair only matters if its later member has not been
+	 * passed yet.
+	 * @param member id
+	 * @param edge from member to teammate
+	 */
+	void toggle(int member, int edge) {
+		int teammate = snapshot.neighbor(edge);
+		int last = position[member] > position[teammate] ? member : teammate;
+		if (position[last] > depth) {
+			pairs ^= pairKeys[edge];
+			later[last] ^= pairKeys[edge];
+		}
+	}
+
+	/**
+	 * Moves from the current depth to the next one. Pairs whose later member is
+	 * the one at the current depth stop mattering.
+	 */
+	public void advance() {
+		pairs ^= later[sortedMembers[depth]];
+		depth++;
+	}
+
+	/**
+	 * Reverses advance().
+	 */
+	public void retreat() {
+		depth--;
+		pairs ^= later[sortedMembers[depth]];
+	}
+}
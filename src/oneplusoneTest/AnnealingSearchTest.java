@@ -0,0 +1,125 @@
+/**
+ * JUnit test for AnnealingSearch
+ * 
+ * Local search does not prove its results, so its cost is bounded by that of
+ * WeightedCSP on organizations small enough for both, and it is checked for
+ * stopping in time on one too large to search exactly.
+ * 
+ * Run unit tests from TestDriver.java
+ */
+
+package oneplusoneTest;
+
+import static org.junit.Assert.*;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Random;
+import oneplusone.AnnealingSearch;
+import oneplusone.OrganizationSnapshot;
+import oneplusone.Person;
+import oneplusone.Team;
+import oneplusone.WeightedCSP;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AnnealingSearchTest {
+	private static final int WEEKS = 6;
+	private static PrintStream original;
+	
+	@Before
+	public void setUp() throws Exception {
+		
+		// silences print statements. 
+		// thanks: http://stackoverflow.com/a/18804033/3739861
+		original = System.out;
+		System.setOut(new NullPrintStream());
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		System.setOut(original);
+	}
+	
+	/**
+	 * Twelve people in four overlapping teams.
+	 */
+	private static ArrayList<Person> overlappingTeams() {
+		ArrayList<Person> people = new ArrayList<Person>();
+		for (int i = 0; i < 12; i++) { people.add(new Person("p" + i)); }
+		int[][] teams = { {0, 5}, {3, 8}, {6, 11}, {0, 2} };
+		for (int t = 0; t < teams.length; t++) {
+			Team team = new Team("team" + t);
+			for (int i = teams[t][0]; i <= teams[t][1]; i++) { 
+				team.addMember(people.get(i)); 
+			}
+		}
+		return people;
+	}
+	
+	/**
+	 * Annealing is never cheaper than the optimum and stays within a pair of
+	 * it. Only the exact assignment is recorded, so both see the same history.
+	 */
+	@Test
+	public void closeToExactSearch() {
+		ArrayList<Person> people = overlappingTeams();
+		Random random = new Random(5);
+		int totalGap = 0;
+		for (int week = 0; week < WEEKS; week++) {
+			OrganizationSnapshot snapshot = OrganizationSnapshot.compile(people);
+
+			WeightedCSP exact = new WeightedCSP(snapshot);
+			exact.solve();
+
+			AnnealingSearch annealing = new AnnealingSearch(snapshot);
+			annealing.setRandom(random);
+			annealing.search(WeightedCSP.NO_DEADLINE, null);
+
+			int gap = annealing.getCost() - exact.getCost();
+			assertTrue(gap >= 0);
+			assertTrue(gap <= 1);
+			totalGap += gap;
+		}
+		assertTrue(totalGap <= 2);
+	}
+	
+	@Test
+	public void sameSeedSamePairings() {
+		ArrayList<Person> first = overlappingTeams();
+		ArrayList<Person> second = overlappingTeams();
+		for (int week = 0; week < WEEKS; week++) {
+			AnnealingSearch a = 
+					new AnnealingSearch(OrganizationSnapshot.compile(first));
+			a.setRandom(new Random(week));
+			AnnealingSearch b = 
+					new AnnealingSearch(OrganizationSnapshot.compile(second));
+			b.setRandom(new Random(week));
+			
+			assertEquals(a.solve().getCopyOfPairings(), 
+					b.solve().getCopyOfPairings());
+		}
+	}
+	
+	@Test
+	public void largeTeamStopsAtDeadline() {
+		ArrayList<Person> people = new ArrayList<Person>();
+		Team team = new Team("everyone");
+		for (int i = 0; i < 400; i++) {
+			people.add(new Person("p" + i));
+			team.addMember(people.get(i));
+		}
+		
+		AnnealingSearch annealing = 
+				new AnnealingSearch(OrganizationSnapshot.compile(people));
+		long start = System.currentTimeMillis();
+		HashMap<Person, HashSet<Person>> pairings = 
+				annealing.solve(start + 200, null).getCopyOfPairings();
+		
+		assertTrue(System.currentTimeMillis() - start < 5000);
+		assertTrue(annealing.getMoves() > 0);
+		for (Person person : people) { assertFalse(pairings.get(person).isEmpty()); }
+	}
+}
@@ -0,0 +1,103 @@
+/**
+ * JUnit test for ComponentWeightedCSP
+ * 
+ * Results are random to an extent, so the decomposed solver is checked against
+ * the cost of WeightedCSP on the same snapshot, which is optimal.
+ * 
+ * Run unit tests from TestDriver.java
+ */
+
+package oneplusoneTest;
+
+import static org.junit.Assert.*;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import oneplusone.ComponentWeightedCSP;
+import oneplusone.OrganizationSnapshot;
+import oneplusone.Person;
+import oneplusone.Team;
+import oneplusone.WeightedCSP;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ComponentWeightedCSPTest {
+	private static final int WEEKS = 4;
+	private static PrintStream original;
+	private static ArrayList<Person> people;
+	
+	@Before
+	public void setUp() throws Exception {
+		
+		// silences print statements. 
+		// thanks: http://stackoverflow.com/a/18804033/3739861
+		original = System.out;
+		System.setOut(new NullPrintStream());
+		
+		people = new ArrayList<Person>();
+		for (int i = 1; i <= 14; i++) { people.add(new Person("p" + i)); }
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		System.setOut(original);
+	}
+	
+	/**
+	 * Adds people from index first to index last (inclusive) to a team.
+	 */
+	private static void team(String name, int first, int last) {
+		Team team = new Team(name);
+		for (int i = first; i <= last; i++) { team.addMember(people.get(i)); }
+	}
+	
+	/**
+	 * Three components: two overlapping teams, a team of three and a pair. The
+	 * last two people have no team.
+	 */
+	private static void threeComponents() {
+		team("team1", 0, 3);
+		team("team2", 2, 6);
+		team("team3", 7, 9);
+		team("team4", 10, 11);
+	}
+	
+	@Test
+	public void sameCostAsWholeSearch() {
+		threeComponents();
+		for (int week = 0; week < WEEKS; week++) {
+			OrganizationSnapshot snapshot = OrganizationSnapshot.compile(people);
+			
+			WeightedCSP whole = new WeightedCSP(snapshot);
+			whole.solve();
+			
+			ComponentWeightedCSP split = new ComponentWeightedCSP(snapshot, 2);
+			split.solve();
+			
+			assertEquals(3, split.getComponents());
+			assertEquals(whole.getCost(), split.getCost());
+		}
+	}
+	
+	@Test
+	public void membersWithoutTeammatesAreNotPaired() {
+		threeComponents();
+		HashMap<Person, HashSet<Person>> pairings = 
+				new ComponentWeightedCSP(people, 2).solve().getCopyOfPairings();
+		
+		for (int i = 0; i < people.size(); i++) {
+			assertEquals(i >= 12, pairings.get(people.get(i)).isEmpty());
+		}
+	}
+	
+	@Test
+	public void noTeamsHasNoComponents() {
+		ComponentWeightedCSP split = new ComponentWeightedCSP(people, 2);
+		split.solve();
+		
+		assertEquals(0, split.getComponents());
+		assertEquals(0, split.getCost());
+	}
+}
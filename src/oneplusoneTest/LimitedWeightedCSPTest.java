@@ -0,0 +1,111 @@
+/**
+ * JUnit test for LimitedWeightedCSP
+ * 
+ * The limited search is not always optimal, so it is checked where limiting
+ * loses nothing: in a large team with fresh teammates left, which the exact
+ * search cannot prove optimal in good time, and with a limit of everyone.
+ * 
+ * Run unit tests from TestDriver.java
+ */
+
+package oneplusoneTest;
+
+import static org.junit.Assert.*;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Random;
+import oneplusone.LimitedWeightedCSP;
+import oneplusone.OrganizationSnapshot;
+import oneplusone.Person;
+import oneplusone.Team;
+import oneplusone.WeightedCSP;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LimitedWeightedCSPTest {
+	private static final int WEEKS = 4;
+	private static PrintStream original;
+	private static ArrayList<Person> people;
+	
+	@Before
+	public void setUp() throws Exception {
+		
+		// silences print statements. 
+		// thanks: http://stackoverflow.com/a/18804033/3739861
+		original = System.out;
+		System.setOut(new NullPrintStream());
+		
+		people = new ArrayList<Person>();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		System.setOut(original);
+	}
+	
+	/**
+	 * Puts size people in one team, everyone a teammate of everyone.
+	 */
+	private static void allHands(int size) {
+		Team team = new Team("everyone");
+		for (int i = 0; i < size; i++) {
+			Person person = new Person("p" + i);
+			people.add(person);
+			team.addMember(person);
+		}
+	}
+	
+	@Test
+	public void limitKeepsCheapestTeammates() {
+		allHands(8);
+		new WeightedCSP(people).solve();
+		OrganizationSnapshot snapshot = OrganizationSnapshot.compile(people);
+		
+		OrganizationSnapshot limited = 
+				LimitedWeightedCSP.limit(snapshot, 2, new Random(1));
+		assertEquals(snapshot.size(), limited.size());
+		for (int i = 0; i < limited.size(); i++) {
+			assertTrue(limited.degree(i) >= 2);
+			
+			// everyone has fresh teammates left, so last week's partner is left out
+			for (int e = limited.firstEdge(i); e < limited.endEdge(i); e++) {
+				assertFalse(limited.matchedLastTime(e));
+				assertEquals(i, limited.neighbor(limited.reverse(e)));
+			}
+		}
+	}
+	
+	@Test
+	public void largeTeamIsPairedOptimally() {
+		allHands(40);
+		Random random = new Random(7);
+		for (int week = 0; week < WEEKS; week++) {
+			OrganizationSnapshot snapshot = OrganizationSnapshot.compile(people);
+			
+			// everyone has fresh teammates left, so each of 20 pairs costs 1
+			LimitedWeightedCSP limited = 
+					new LimitedWeightedCSP(snapshot, LimitedWeightedCSP.DEFAULT_LIMIT);
+			limited.setRandom(random);
+			assertTrue(limited.solve().isOptimal());
+			assertEquals(20, limited.getCost());
+		}
+	}
+	
+	@Test
+	public void limitOfEveryoneIsExact() {
+		allHands(9);
+		for (int week = 0; week < WEEKS; week++) {
+			OrganizationSnapshot snapshot = OrganizationSnapshot.compile(people);
+			
+			WeightedCSP exact = new WeightedCSP(snapshot);
+			exact.solve();
+			
+			// only the exact assignment is recorded, one week per pass
+			LimitedWeightedCSP limited = new LimitedWeightedCSP(snapshot, 8);
+			assertTrue(limited.search(WeightedCSP.NO_DEADLINE, null).isOptimal());
+			assertEquals(0, limited.getWidenings());
+			assertEquals(exact.getCost(), limited.getCost());
+		}
+	}
+}
@@ -0,0 +1,179 @@
+/**
+ * JUnit test for MinCostMatching
+ * 
+ * Results are random to an extent, so the matching is checked against the cost
+ * of WeightedCSP on the same snapshot, which is optimal, in cases where the
+ * matching is known to reach it.
+ * 
+ * Run unit tests from TestDriver.java
+ */
+
+package oneplusoneTest;
+
+import static org.junit.Assert.*;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Random;
+import oneplusone.MinCostMatching;
+import oneplusone.OrganizationSnapshot;
+import oneplusone.PairingAssignment;
+import oneplusone.Person;
+import oneplusone.Team;
+import oneplusone.WeightedCSP;
+import oneplusone.WeightedMatching;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MinCostMatchingTest {
+	private static PrintStream original;
+	private static ArrayList<Person> people;
+	
+	@Before
+	public void setUp() throws Exception {
+		
+		// silences print statements. 
+		// thanks: http://stackoverflow.com/a/18804033/3739861
+		original = System.out;
+		System.setOut(new NullPrintStream());
+		
+		people = new ArrayList<Person>();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		System.setOut(original);
+	}
+	
+	/**
+	 * Adds count new people to a new team.
+	 */
+	private static void team(String name, int count) {
+		Team team = new Team(name);
+		for (int i = 0; i < count; i++) { 
+			Person person = new Person(name + "-" + i);
+			people.add(person);
+			team.addMember(person);
+		}
+	}
+	
+	/**
+	 * Solves a snapshot with both solvers, each seeded the same.
+	 * @return cost of MinCostMatching minus cost of WeightedCSP
+	 */
+	private static int gapToOptimal(long seed) {
+		OrganizationSnapshot snapshot = OrganizationSnapshot.compile(people);
+		WeightedCSP exact = new WeightedCSP(snapshot);
+		exact.setRandom(new Random(seed));
+		exact.solve();
+		MinCostMatching matching = new MinCostMatching(snapshot);
+		matching.setRandom(new Random(seed));
+		matching.solve();
+		return matching.getCost() - exact.getCost();
+	}
+	
+	/**
+	 * A maximum weight matching may leave vertices out: on the path 0-1-2-3
+	 * taking the middle edge alone (10) beats both outer ones (4 + 4).
+	 */
+	@Test
+	public void weightedMatchingPrefersHeavierEdges() {
+		int[] from = { 0, 1, 2 };
+		int[] to = { 1, 2, 3 };
+		int[] weights = { 4, 10, 4 };
+		int[] mate = new WeightedMatching(4, from, to, weights).solve();
+		
+		assertEquals(-1, mate[0]);
+		assertEquals(2, mate[1]);
+		assertEquals(1, mate[2]);
+		assertEquals(-1, mate[3]);
+	}
+	
+	/**
+	 * Needs a blossom: the triangle 0-1-2 is shrunk, then the augmenting path
+	 * from 5 through it to 3 and 4 is found.
+	 */
+	@Test
+	public void weightedMatchingThroughBlossom() {
+		int[] from = { 0, 0, 1, 2, 0, 3 };
+		int[] to = { 1, 2, 2, 3, 5, 4 };
+		int[] weights = { 8, 9, 10, 7, 5, 6 };
+		int[] mate = new WeightedMatching(6, from, to, weights).solve();
+		
+		assertEquals(5, mate[0]);
+		assertEquals(2, mate[1]);
+		assertEquals(4, mate[3]);
+	}
+	
+	/**
+	 * Even teams are perfect matchings of fresh pairs for the first two weeks,
+	 * as good as the exact solver. Later weeks, once pairs repeat within the 
+	 * cycle, can be cheaper as chains of three, which the matching may miss, 
+	 * but it is never cheaper than the optimum (see MinCostMatching).
+	 */
+	@Test
+	public void evenTeamsSameCostAsSequential() {
+		team("team1", 6);
+		team("team2", 4);
+		for (int week = 0; week < 4; week++) { 
+			int gap = gapToOptimal(week);
+			if (week < 2) {
+				assertEquals(0, gap);
+			} else {
+				assertTrue(gap >= 0);
+			}
+		}
+	}
+	
+	/**
+	 * In a team of three the leftover member joins the pair as a chain, for a
+	 * cost of 2 rather than 3.
+	 */
+	@Test
+	public void oddTeamJoinsLeftoverAsChain() {
+		team("team1", 3);
+		OrganizationSnapshot snapshot = OrganizationSnapshot.compile(people);
+		MinCostMatching matching = new MinCostMatching(snapshot);
+		HashMap<Person, HashSet<Person>> pairings = 
+				matching.solve().getCopyOfPairings();
+		
+		assertEquals(2, matching.getCost());
+		assertEquals(1, matching.getLeftover());
+		for (Person person : people) { assertFalse(pairings.get(person).isEmpty()); }
+	}
+	
+	/**
+	 * A member without teammates is left without a partner, everyone else gets
+	 * one.
+	 */
+	@Test
+	public void isolatedMemberHasNoPartner() {
+		team("team1", 4);
+		team("alone", 1);
+		PairingAssignment assignment = new MinCostMatching(people).solve();
+		HashMap<Person, HashSet<Person>> pairings = assignment.getCopyOfPairings();
+		
+		for (Person person : people) {
+			assertEquals(person.getName().startsWith("alone"), 
+					pairings.get(person).isEmpty());
+		}
+	}
+	
+	/**
+	 * An organization far too large to search exhaustively is matched, with
+	 * every member getting a partner.
+	 */
+	@Test
+	public void largeOrganizationIsMatched() {
+		for (int t = 0; t < 50; t++) { team("team" + t, 21); }
+		MinCostMatching matching = new MinCostMatching(people);
+		HashMap<Person, HashSet<Person>> pairings = 
+				matching.solve().getCopyOfPairings();
+		
+		for (Person person : people) { assertFalse(pairings.get(person).isEmpty()); }
+		assertEquals(50, matching.getLeftover());
+		assertEquals(50 * 11, matching.getCost());
+	}
+}
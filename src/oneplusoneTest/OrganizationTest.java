@@ -8,10 +8,16 @@ package oneplusoneTest;
 
 import static org.junit.Assert.*;
 import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import oneplusone.Organization;
+import oneplusone.PairingAssignment;
+import oneplusone.PairingSolvers;
+import oneplusone.Person;
 
 /**
  * @author danielchen
@@ -99,4 +105,152 @@ public class OrganizationTest {
 		assertNotNull(tester.getPairings());
 	}
 	
+	@Test
+	public void engineMustBeRegistered() {
+		assertEquals(PairingSolvers.DEFAULT, tester.getEngine());
+		assertFalse(tester.setEngine("none"));
+		assertTrue(tester.setEngine(PairingSolvers.MATCHING));
+		assertEquals(PairingSolvers.MATCHING, tester.getPairings().getEngine());
+	}
+	
+	@Test
+	public void repairWithoutEditsKeepsPairings() {
+		addTeam("a", 6);
+		HashMap<Person, HashSet<Person>> before = 
+				tester.getPairings().getCopyOfPairings();
+		
+		PairingAssignment repaired = tester.repairPairings(0, null);
+		assertEquals(before, repaired.getCopyOfPairings());
+		assertEquals(0, repaired.getCost());
+	}
+	
+	@Test
+	public void repairPairsNewMemberAndKeepsOtherTeams() {
+		addTeam("a", 6);
+		addTeam("b", 6);
+		HashMap<Person, HashSet<Person>> before = 
+				tester.getPairings().getCopyOfPairings();
+		
+		tester.addMemberToTeam("new", "a", true);
+		HashMap<Person, HashSet<Person>> after = 
+				tester.repairPairings(0, null).getCopyOfPairings();
+		
+		assertFalse(after.get(tester.getMember("new")).isEmpty());
+		for (int i = 0; i < 6; i++) {
+			Person member = tester.getMember("b" + i);
+			assertEquals(before.get(member), after.get(member));
+			assertEquals(after.get(member), member.getPreviousMatchups());
+		}
+	}
+	
+	@Test
+	public void repairPairsFormerPartnerOfRemovedMember() {
+		addTeam("a", 6);
+		addTeam("b", 6);
+		HashMap<Person, HashSet<Person>> before = 
+				tester.getPairings().getCopyOfPairings();
+		
+		Person removed = tester.getMember("a0");
+		tester.removeMember("a0");
+		HashMap<Person, HashSet<Person>> after = 
+				tester.repairPairings(0, null).getCopyOfPairings();
+		
+		assertFalse(after.containsKey(removed));
+		for (Person member : after.keySet()) {
+			assertFalse(after.get(member).isEmpty());
+			assertFalse(after.get(member).contains(removed));
+			assertEquals(after.get(member), member.getPreviousMatchups());
+			if (member.getName().startsWith("b")) {
+				assertEquals(before.get(member), after.get(member));
+			}
+		}
+	}
+	
+	/**
+	 * A repair is scheduled in the week it repairs, so the round robin does not
+	 * pair anyone with a partner from an earlier week of the cycle. A member is
+	 * replaced rather than added, so that the circle keeps its places.
+	 */
+	@Test
+	public void roundRobinRepairRepeatsNoPairOfTheCycle() {
+		addTeam("a", 8);
+		assertTrue(tester.setEngine(PairingSolvers.ROUND_ROBIN));
+		HashMap<Person, HashSet<Person>> earlier =
+				new HashMap<Person, HashSet<Person>>();
+		for (int week = 0; week < 5; week++) {
+			HashMap<Person, HashSet<Person>> pairings =
+					tester.getPairings().getCopyOfPairings();
+			if (week == 4) { break; } // the week being repaired
+			for (Person member : pairings.keySet()) {
+				if (!earlier.containsKey(member)) {
+					earlier.put(member, new HashSet<Person>());
+				}
+				earlier.get(member).addAll(pairings.get(member));
+			}
+		}
+
+		Person removed = tester.getMember("a7");
+		tester.removeMember("a7");
+		tester.addMemberToTeam("new", "a", true);
+		HashMap<Person, HashSet<Person>> repaired =
+				tester.repairPairings(0, null).getCopyOfPairings();
+
+		earlier.remove(removed);
+		for (Person member : earlier.keySet()) {
+			assertFalse(repaired.get(member).isEmpty());
+			for (Person partner : repaired.get(member)) {
+				assertFalse(earlier.get(member).contains(partner));
+			}
+		}
+	}
+
+	@Test
+	public void runsUsePlannedWeeks() {
+		addTeam("a", 5);
+		addTeam("b", 4);
+		ArrayList<PairingAssignment> plan = tester.planPairings(3, 0, null);
+		assertEquals(3, tester.getPlannedWeeks());
+		
+		for (int week = 0; week < 3; week++) {
+			PairingAssignment run = tester.getPairings();
+			assertEquals(plan.get(week).getCopyOfPairings(), run.getCopyOfPairings());
+			assertEquals(plan.get(week).getCost(), run.getCost());
+			assertEquals(2 - week, tester.getPlannedWeeks());
+		}
+	}
+	
+	@Test
+	public void editingTeamsDropsPlan() {
+		addTeam("a", 5);
+		tester.planPairings(2, 0, null);
+		
+		tester.addMemberToTeam("new", "a", true);
+		assertEquals(0, tester.getPlannedWeeks());
+		assertFalse(tester.getPairings().getCopyOfPairings()
+				.get(tester.getMember("new")).isEmpty());
+	}
+	
+	@Test
+	public void removingMemberFromTeamDropsPlan() {
+		addTeam("a", 5);
+		tester.addMemberToTeam("a0", "b", true);
+		tester.addMemberToTeam("b0", "b", true);
+		tester.planPairings(2, 0, null);
+		
+		tester.removeMemberFromTeam("a0", "b");
+		assertEquals(0, tester.getPlannedWeeks());
+		assertTrue(tester.hasMember("a0"));
+		assertFalse(tester.getMember("a0").isTeammate(tester.getMember("b0")));
+		assertTrue(tester.getMember("a0").isTeammate(tester.getMember("a1")));
+	}
+	
+	/**
+	 * Adds a team of new members, named after the team.
+	 */
+	private void addTeam(String team, int size) {
+		for (int i = 0; i < size; i++) {
+			tester.addMemberToTeam(team + i, team, true);
+		}
+	}
+	
 }
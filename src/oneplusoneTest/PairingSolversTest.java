@@ -0,0 +1,131 @@
+/**
+ * JUnit test for PairingSolvers
+ * 
+ * Run unit tests from TestDriver.java
+ */
+
+package oneplusoneTest;
+
+import static org.junit.Assert.*;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Random;
+import oneplusone.CancellationToken;
+import oneplusone.OrganizationSnapshot;
+import oneplusone.PairingAssignment;
+import oneplusone.PairingSolvers;
+import oneplusone.Person;
+import oneplusone.Team;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PairingSolversTest {
+	private static PrintStream original;
+	
+	@Before
+	public void setUp() throws Exception {
+		
+		// silences print statements. 
+		// thanks: http://stackoverflow.com/a/18804033/3739861
+		original = System.out;
+		System.setOut(new NullPrintStream());
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		System.setOut(original);
+	}
+	
+	/**
+	 * @return snapshot of one team of the given size
+	 */
+	private static OrganizationSnapshot team(int size) {
+		ArrayList<Person> people = new ArrayList<Person>();
+		Team team = new Team("team");
+		for (int i = 0; i < size; i++) { 
+			people.add(new Person("p" + i));
+			team.addMember(people.get(i));
+		}
+		return OrganizationSnapshot.compile(people);
+	}
+	
+	@Test
+	public void everyEngineRecordsItself() {
+		OrganizationSnapshot snapshot = team(7);
+		for (String name : PairingSolvers.names()) {
+			PairingAssignment result = 
+					PairingSolvers.solve(name, snapshot, 0, null, null);
+			assertEquals(name, result.getEngine());
+			assertNotNull(result.getEngineParameters());
+			assertTrue(result.getSolveTime() >= 0);
+		}
+	}
+	
+	@Test
+	public void autoIsExactOnSmallComponents() {
+		OrganizationSnapshot snapshot = team(9);
+		PairingAssignment exact = PairingSolvers.solve(PairingSolvers.EXACT, 
+				snapshot, 0, null, new Random(1));
+		PairingAssignment auto = PairingSolvers.solve(PairingSolvers.AUTO, 
+				snapshot, 0, null, new Random(1));
+		
+		assertEquals(exact.getCopyOfPairings(), auto.getCopyOfPairings());
+		assertTrue(auto.isOptimal());
+		assertTrue(auto.getEngineParameters().contains("exact=1"));
+	}
+	
+	@Test
+	public void autoMatchesLargeComponents() {
+		OrganizationSnapshot snapshot = team(30);
+		PairingAssignment matching = PairingSolvers.solve(PairingSolvers.MATCHING, 
+				snapshot, 0, null, new Random(1));
+		PairingAssignment auto = PairingSolvers.solve(PairingSolvers.AUTO, 
+				snapshot, 0, null, new Random(1));
+		
+		assertEquals(matching.getCost(), auto.getCost());
+		assertTrue(auto.getEngineParameters().contains("matching=1"));
+	}
+	
+	@Test
+	public void autoFallsBackToMatchingOutOfTime() {
+		ArrayList<Person> people = new ArrayList<Person>();
+		Team team = new Team("team");
+		for (int i = 0; i < 13; i++) { 
+			people.add(new Person("p" + i));
+			team.addMember(people.get(i));
+		}
+		PairingSolvers.solve(PairingSolvers.EXACT, 
+				OrganizationSnapshot.compile(people), 0, null, new Random(1)).record();
+		
+		// after a week the exact search of the team cannot prove its result
+		// before it is cancelled, so auto works out the matching too
+		OrganizationSnapshot snapshot = OrganizationSnapshot.compile(people);
+		CancellationToken token = new CancellationToken();
+		token.cancel();
+		PairingAssignment exact = PairingSolvers.solve(PairingSolvers.EXACT, 
+				snapshot, 0, token, new Random(2));
+		PairingAssignment matching = PairingSolvers.solve(PairingSolvers.MATCHING, 
+				snapshot, 0, null, new Random(2));
+		PairingAssignment auto = PairingSolvers.solve(PairingSolvers.AUTO, 
+				snapshot, 0, token, new Random(2));
+		
+		assertTrue(snapshot.edgeCount() <= 200);
+		assertFalse(exact.isOptimal());
+		assertTrue(auto.getEngineParameters().contains("fell back=1"));
+		assertTrue(auto.getCost() <= exact.getCost());
+		assertTrue(auto.getCost() <= matching.getCost());
+		assertTrue(auto.getLowerBound() <= auto.getCost());
+		assertTrue(auto.getLowerBound() >= exact.getLowerBound());
+	}
+	
+	@Test
+	public void unknownEngineIsRejected() {
+		try {
+			PairingSolvers.solve("none", team(2), 0, null, null);
+			fail("solved with an engine that is not registered");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+}
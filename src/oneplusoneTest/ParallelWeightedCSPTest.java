@@ -0,0 +1,102 @@
+/**
+ * JUnit test for ParallelWeightedCSP
+ * 
+ * Results are random to an extent, so the parallel solver is checked against
+ * the cost of the sequential solver on the same snapshot, which is optimal.
+ * 
+ * Run unit tests from TestDriver.java
+ */
+
+package oneplusoneTest;
+
+import static org.junit.Assert.*;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import oneplusone.OrganizationSnapshot;
+import oneplusone.ParallelWeightedCSP;
+import oneplusone.Person;
+import oneplusone.Team;
+import oneplusone.WeightedCSP;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ParallelWeightedCSPTest {
+	private static final int WEEKS = 4;
+	private static PrintStream original;
+	private static ArrayList<Person> people;
+	
+	@Before
+	public void setUp() throws Exception {
+		
+		// silences print statements. 
+		// thanks: http://stackoverflow.com/a/18804033/3739861
+		original = System.out;
+		System.setOut(new NullPrintStream());
+		
+		people = new ArrayList<Person>();
+		for (int i = 1; i <= 10; i++) { people.add(new Person("p" + i)); }
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		System.setOut(original);
+	}
+	
+	/**
+	 * Adds people from index first to index last (inclusive) to a team.
+	 */
+	private static void team(String name, int first, int last) {
+		Team team = new Team(name);
+		for (int i = first; i <= last; i++) { team.addMember(people.get(i)); }
+	}
+	
+	/**
+	 * Solves several weeks in a row. Each week, the parallel solver should find
+	 * an assignment with the same cost as the sequential solver, whose
+	 * assignment alone is recorded.
+	 */
+	private static void assertSameCostAsSequential(int parallelism) {
+		for (int week = 0; week < WEEKS; week++) {
+			OrganizationSnapshot snapshot = OrganizationSnapshot.compile(people);
+			
+			WeightedCSP sequential = new WeightedCSP(snapshot);
+			sequential.solve();
+			
+			ParallelWeightedCSP parallel = 
+					new ParallelWeightedCSP(snapshot, parallelism);
+			parallel.search();
+			
+			assertEquals(sequential.getCost(), parallel.getCost());
+		}
+	}
+	
+	@Test
+	public void singleTeamSameCostAsSequential() {
+		team("team1", 0, 9);
+		assertSameCostAsSequential(4);
+	}
+	
+	@Test
+	public void overlappingTeamsSameCostAsSequential() {
+		team("team1", 0, 4);
+		team("team2", 3, 7);
+		team("team3", 6, 9);
+		assertSameCostAsSequential(3);
+	}
+	
+	@Test
+	public void membersWithoutTeammatesSameCostAsSequential() {
+		team("team1", 0, 5);
+		
+		// p7 to p10 have no teammates
+		assertSameCostAsSequential(2);
+	}
+	
+	@Test
+	public void singleThreadSameCostAsSequential() {
+		team("team1", 0, 6);
+		team("team2", 5, 9);
+		assertSameCostAsSequential(1);
+	}
+}
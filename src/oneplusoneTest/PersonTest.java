@@ -9,6 +9,7 @@ package oneplusoneTest;
 import static org.junit.Assert.*;
 import java.io.PrintStream;
 import java.util.ArrayList;
+import java.util.HashSet;
 import oneplusone.Person;
 import oneplusone.Person.Teammate;
 import org.junit.After;
@@ -132,6 +133,62 @@ public class PersonTest {
 		}
 	}
 	
+	@Test
+	public void undoPreviousMatchupsRestoresTheWeekBefore() {
+		Person tm1 = new Person("tm1");
+		Person tm2 = new Person("tm2");
+		tester.addTeammate(tm1);
+		tester.addTeammate(tm2);
+		
+		HashSet<Person> firstWeek = new HashSet<Person>();
+		firstWeek.add(tm1);
+		tester.setPreviousMatchups(firstWeek);
+		HashSet<Person> secondWeek = new HashSet<Person>();
+		secondWeek.add(tm2);
+		tester.setPreviousMatchups(secondWeek);
+		assertTrue(tester.cycleFull());
+		
+		tester.undoPreviousMatchups();
+		assertTrue(tester.previouslyMatchedWith(tm1));
+		assertFalse(tester.previouslyMatchedWith(tm2));
+		assertFalse(tester.cycleFull());
+		for (Teammate tm : tester.getTeammates()) {
+			assertEquals(tm.person == tm1, tm.matchedInCycle());
+		}
+	}
+	
+	/**
+	 * Undoing twice leaves a member as one loaded from a database written before
+	 * the week before was kept: the second undo has nothing to go back to, and
+	 * takes the matchups it clears out of the cycle.
+	 */
+	@Test
+	public void undoWithoutTheWeekBeforeLeavesTheCycle() {
+		Person tm1 = new Person("tm1");
+		Person tm2 = new Person("tm2");
+		tester.addTeammate(tm1);
+		tester.addTeammate(tm2);
+		
+		HashSet<Person> firstWeek = new HashSet<Person>();
+		firstWeek.add(tm1);
+		tester.setPreviousMatchups(firstWeek);
+		HashSet<Person> secondWeek = new HashSet<Person>();
+		secondWeek.add(tm2);
+		tester.setPreviousMatchups(secondWeek);
+		tester.undoPreviousMatchups();
+		
+		tester.undoPreviousMatchups();
+		assertFalse(tester.previouslyMatchedWith(tm1));
+		assertEquals(0, tester.getCycleCount());
+		for (Teammate tm : tester.getTeammates()) { 
+			assertFalse(tm.matchedInCycle()); 
+		}
+		
+		// a repaired week is then counted once
+		tester.setPreviousMatchups(secondWeek);
+		assertEquals(1, tester.getCycleCount());
+	}
+	
 	// other functions deeply tied to either Team or PairingAssignment.
 	// see TeamTest and PairingAssignmentTest. Or they are getter/setter
 	// functions.
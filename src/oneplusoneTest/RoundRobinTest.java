@@ -0,0 +1,118 @@
+/**
+ * JUnit test for RoundRobin
+ * 
+ * A clique paired week after week by the schedule meets everyone once per
+ * cycle at the lowest cost. Components that are not cliques are left to the
+ * exact search.
+ * 
+ * Run unit tests from TestDriver.java
+ */
+
+package oneplusoneTest;
+
+import static org.junit.Assert.*;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Random;
+import oneplusone.Organization;
+import oneplusone.OrganizationSnapshot;
+import oneplusone.PairingAssignment;
+import oneplusone.PairingSolvers;
+import oneplusone.Person;
+import oneplusone.RoundRobin;
+import oneplusone.Team;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RoundRobinTest {
+	private static PrintStream original;
+	
+	@Before
+	public void setUp() throws Exception {
+		
+		// silences print statements. 
+		// thanks: http://stackoverflow.com/a/18804033/3739861
+		original = System.out;
+		System.setOut(new NullPrintStream());
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		System.setOut(original);
+	}
+	
+	/**
+	 * An organization that is one team of the given size.
+	 */
+	private static Organization oneTeam(int size) {
+		Organization org = new Organization("test");
+		for (int i = 0; i < size; i++) { 
+			org.addMemberToTeam("p" + i, "team", true); 
+		}
+		org.setEngine(PairingSolvers.ROUND_ROBIN);
+		return org;
+	}
+	
+	@Test
+	public void everyoneMeetsOncePerCycle() {
+		int size = 8;
+		Organization org = oneTeam(size);
+		HashMap<Person, HashSet<Person>> met = new HashMap<Person, HashSet<Person>>();
+		for (int week = 0; week < size - 1; week++) {
+			assertEquals(week, org.getRound());
+			PairingAssignment pairings = org.getPairings();
+			assertTrue(pairings.isOptimal());
+			for (Person p : pairings.getCopyOfPairings().keySet()) {
+				if (!met.containsKey(p)) { met.put(p, new HashSet<Person>()); }
+				for (Person partner : pairings.getCopyOfPairings().get(p)) {
+					assertTrue(met.get(p).add(partner));
+				}
+			}
+		}
+		assertEquals(size - 1, org.getRound());
+		for (HashSet<Person> partners : met.values()) {
+			assertEquals(size - 1, partners.size());
+		}
+	}
+	
+	@Test
+	public void oddCliqueLeavesNobodyAlone() {
+		Organization org = oneTeam(7);
+		for (int week = 0; week < 7; week++) {
+			PairingAssignment pairings = org.getPairings();
+			HashMap<Person, HashSet<Person>> partners = pairings.getCopyOfPairings();
+			assertEquals(7, partners.size());
+			for (HashSet<Person> set : partners.values()) {
+				assertFalse(set.isEmpty());
+			}
+		}
+	}
+	
+	@Test
+	public void onlyCliquesAreScheduled() {
+		ArrayList<Person> people = new ArrayList<Person>();
+		for (int i = 0; i < 6; i++) { people.add(new Person("p" + i)); }
+		Team a = new Team("a");
+		Team b = new Team("b");
+		for (int i = 0; i < 4; i++) { a.addMember(people.get(i)); }
+		for (int i = 2; i < 6; i++) { b.addMember(people.get(i)); }
+		OrganizationSnapshot snapshot = OrganizationSnapshot.compile(people);
+		assertFalse(RoundRobin.isClique(snapshot));
+		try {
+			new RoundRobin(snapshot).search();
+			fail("Scheduled a component that is not a clique");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		
+		PairingAssignment exact = PairingSolvers.solve(PairingSolvers.EXACT, 
+				snapshot, 0, null, new Random(1));
+		PairingAssignment scheduled = PairingSolvers.solve(
+				PairingSolvers.ROUND_ROBIN, snapshot, 0, null, new Random(1));
+		assertEquals(exact.getCost(), scheduled.getCost());
+		assertTrue(scheduled.getEngineParameters().contains("searched=1"));
+	}
+}
@@ -0,0 +1,121 @@
+/**
+ * JUnit test for SchedulePlanner
+ * 
+ * The planner is checked against the same number of runs, one week at a time,
+ * on a copy of the same people, with both seeded alike.
+ * 
+ * Run unit tests from TestDriver.java
+ */
+
+package oneplusoneTest;
+
+import static org.junit.Assert.*;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Random;
+import oneplusone.ComponentWeightedCSP;
+import oneplusone.OrganizationSnapshot;
+import oneplusone.PairingAssignment;
+import oneplusone.PairingSolvers;
+import oneplusone.Person;
+import oneplusone.SchedulePlanner;
+import oneplusone.Team;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SchedulePlannerTest {
+	private static final int WEEKS = 6;
+	private static final long SEED = 42;
+	private static PrintStream original;
+	
+	@Before
+	public void setUp() throws Exception {
+		
+		// silences print statements. 
+		// thanks: http://stackoverflow.com/a/18804033/3739861
+		original = System.out;
+		System.setOut(new NullPrintStream());
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		System.setOut(original);
+	}
+	
+	/**
+	 * Two overlapping teams and a team of three, with a member on no team.
+	 * @return new people
+	 */
+	private static ArrayList<Person> organization() {
+		ArrayList<Person> people = new ArrayList<Person>();
+		for (int i = 0; i < 12; i++) { people.add(new Person("p" + i)); }
+		team(people, "team1", 0, 5);
+		team(people, "team2", 4, 8);
+		team(people, "team3", 9, 10);
+		return people;
+	}
+	
+	/**
+	 * Adds people from index first to index last (inclusive) to a team.
+	 */
+	private static void team(ArrayList<Person> people, String name, int first, 
+			int last) {
+		Team team = new Team(name);
+		for (int i = first; i <= last; i++) { team.addMember(people.get(i)); }
+	}
+	
+	/**
+	 * @return pairings of an assignment by name, so that copies compare equal
+	 */
+	private static HashMap<String, HashSet<String>> byName(
+			PairingAssignment assignment) {
+		HashMap<Person, HashSet<Person>> pairings = assignment.getCopyOfPairings();
+		HashMap<String, HashSet<String>> names = 
+				new HashMap<String, HashSet<String>>();
+		for (Person member : pairings.keySet()) {
+			HashSet<String> partners = new HashSet<String>();
+			for (Person partner : pairings.get(member)) { 
+				partners.add(partner.getName()); 
+			}
+			names.put(member.getName(), partners);
+		}
+		return names;
+	}
+	
+	@Test
+	public void planIsWhatRunsWouldMake() {
+		ArrayList<Person> planned = organization();
+		SchedulePlanner planner = new SchedulePlanner(
+				OrganizationSnapshot.compile(planned), PairingSolvers.EXACT);
+		planner.setRandom(new Random(SEED));
+		ArrayList<PairingAssignment> plan = planner.plan(WEEKS, 0, null);
+		
+		ArrayList<Person> run = organization();
+		Random random = new Random(SEED);
+		for (int week = 0; week < WEEKS; week++) {
+			ComponentWeightedCSP csp = 
+					new ComponentWeightedCSP(OrganizationSnapshot.compile(run), 2);
+			csp.setRandom(random);
+			PairingAssignment assignment = csp.solve();
+			
+			assertEquals(byName(assignment), byName(plan.get(week)));
+			assertEquals(assignment.getCost(), plan.get(week).getCost());
+		}
+	}
+	
+	@Test
+	public void planDoesNotRecord() {
+		ArrayList<Person> people = organization();
+		new SchedulePlanner(OrganizationSnapshot.compile(people), 
+				PairingSolvers.DEFAULT)
+				.plan(WEEKS, 0, null);
+		
+		for (Person member : people) {
+			assertTrue(member.getPreviousMatchups().isEmpty());
+			assertEquals(0, member.getCycleCount());
+		}
+	}
+}
@@ -0,0 +1,86 @@
+/**
+ * JUnit test for SearchTrace
+ * 
+ * Run unit tests from TestDriver.java
+ */
+
+package oneplusoneTest;
+
+import static org.junit.Assert.*;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import oneplusone.Person;
+import oneplusone.SearchTrace;
+import oneplusone.Team;
+import oneplusone.WeightedCSP;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SearchTraceTest {
+	private static PrintStream original;
+	private static ArrayList<Person> people;
+	
+	@Before
+	public void setUp() throws Exception {
+		
+		// silences print statements. 
+		// thanks: http://stackoverflow.com/a/18804033/3739861
+		original = System.out;
+		System.setOut(new NullPrintStream());
+		
+		people = new ArrayList<Person>();
+		Team team = new Team("team");
+		for (int i = 0; i < 8; i++) { 
+			people.add(new Person("p" + i));
+			team.addMember(people.get(i));
+		}
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		SearchTrace.disable();
+		System.setOut(original);
+	}
+	
+	@Test
+	public void solvesAreTraced() {
+		SearchTrace.enable(SearchTrace.DEFAULT_CAPACITY);
+		new WeightedCSP(people).solve();
+		
+		ArrayList<String> events = SearchTrace.events();
+		assertTrue(events.get(0).contains("start"));
+		assertTrue(events.get(0).contains("members=8"));
+		assertTrue(events.get(events.size() - 1).contains("end"));
+		assertTrue(events.get(events.size() - 1).contains("optimal=true"));
+		
+		boolean incumbent = false;
+		boolean branching = false;
+		for (String event : events) {
+			incumbent |= event.contains("incumbent");
+			branching |= event.contains("branching") && event.contains("depth=0 ");
+		}
+		assertTrue(incumbent);
+		assertTrue(branching);
+	}
+	
+	@Test
+	public void traceIsBounded() {
+		SearchTrace.enable(5);
+		for (int week = 0; week < 3; week++) { new WeightedCSP(people).solve(); }
+		
+		assertEquals(5, SearchTrace.events().size());
+		assertTrue(SearchTrace.getCount() > 5);
+		assertTrue(SearchTrace.events().get(4).contains("end"));
+	}
+	
+	@Test
+	public void nothingIsTracedWhenOff() {
+		SearchTrace.enable(SearchTrace.DEFAULT_CAPACITY);
+		SearchTrace.disable();
+		new WeightedCSP(people).solve();
+		
+		assertEquals(0, SearchTrace.getCount());
+		assertTrue(SearchTrace.events().isEmpty());
+	}
+}
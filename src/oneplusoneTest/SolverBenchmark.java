@@ -0,0 +1,419 @@
+/**
+ * SolverBenchmark.java
+ * 
+ * Benchmarks for the oneplusone solvers. Not a unit test, run main() by hand.
+ * 
+ * Every run solves the same OrganizationSnapshot, so runs are comparable even
+ * though solving records history into the Person objects.
+ * 
+ * Usage: 
+ * 	SolverBenchmark parallel [team size] [runs]
+ * 	SolverBenchmark bound [orgs folder] [weeks]
+ * 	SolverBenchmark table [orgs folder] [weeks] [table bytes]
+ * 	SolverBenchmark order [orgs folder] [weeks]
+ * 	SolverBenchmark symmetry [orgs folder] [weeks]
+ * 	SolverBenchmark incumbent [orgs folder] [weeks]
+ */
+
+package oneplusoneTest;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import oneplusone.Organization;
+import oneplusone.OrganizationSnapshot;
+import oneplusone.ParallelWeightedCSP;
+import oneplusone.WeightedCSP;
+
+public class SolverBenchmark {
+	private static PrintStream original = System.out;
+	
+	public static void main(String[] args) throws IOException {
+		String benchmark = args.length > 0 ? args[0] : "parallel";
+		
+		switch (benchmark) {
+		case "parallel":
+			int teamSize = args.length > 1 ? Integer.parseInt(args[1]) : 13;
+			int runs = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+			parallelScaling(singleTeam(teamSize), runs);
+			break;
+			
+		case "bound":
+			String folder = args.length > 1 ? args[1] : "orgs";
+			int weeks = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+			ArrayList<Organization> orgs = loadOrganizations(folder);
+			orgs.add(singleTeam(12));
+			orgs.add(teams(2, 7, 2));
+			orgs.add(teams(3, 5, 3));
+			for (Organization org : orgs) { lowerBoundNodes(org, weeks); }
+			break;
+			
+		case "table":
+			folder = args.length > 1 ? args[1] : "orgs";
+			weeks = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+			long bytes = args.length > 3 ? Long.parseLong(args[3]) : 1 << 22;
+			orgs = loadOrganizations(folder);
+			orgs.add(singleTeam(12));
+			orgs.add(teams(2, 7, 2));
+			orgs.add(teams(3, 5, 3));
+			for (Organization org : orgs) { transpositionNodes(org, weeks, bytes); }
+			break;
+			
+		case "order":
+			folder = args.length > 1 ? args[1] : "orgs";
+			weeks = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+			orgs = loadOrganizations(folder);
+			orgs.add(singleTeam(12));
+			orgs.add(teams(2, 7, 2));
+			orgs.add(teams(3, 5, 3));
+			for (Organization org : orgs) { orderNodes(org, weeks); }
+			break;
+			
+		case "symmetry":
+			folder = args.length > 1 ? args[1] : "orgs";
+			weeks = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+			orgs = loadOrganizations(folder);
+			orgs.add(singleTeam(12));
+			orgs.add(teams(2, 7, 2));
+			orgs.add(teams(3, 5, 3));
+			for (Organization org : orgs) { symmetryNodes(org, weeks); }
+			break;
+			
+		case "incumbent":
+			folder = args.length > 1 ? args[1] : "orgs";
+			weeks = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+			orgs = loadOrganizations(folder);
+			orgs.add(singleTeam(12));
+			orgs.add(teams(2, 7, 2));
+			orgs.add(teams(3, 5, 3));
+			for (Organization org : orgs) { incumbentNodes(org, weeks); }
+			break;
+			
+		default:
+			System.out.println("Unknown benchmark: " + benchmark);
+			break;
+		}
+	}
+	
+	/**
+	 * Solves several weeks in a row, each week with and without the lower bound
+	 * on the same snapshot, and prints the search nodes (recursive calls) of 
+	 * each.
+	 * @param org to solve
+	 * @param weeks to solve
+	 */
+	private static void lowerBoundNodes(Organization org, int weeks) {
+		long without = 0;
+		long with = 0;
+		StringBuffer perWeek = new StringBuffer();
+		
+		for (int week = 0; week < weeks; week++) {
+			OrganizationSnapshot snapshot = org.compile();
+			
+			WeightedCSP plain = new WeightedCSP(snapshot);
+			plain.setLowerBound(false);
+			silenced();
+			plain.solve();
+			restored();
+			
+			// solved last so that its assignment is the one recorded
+			WeightedCSP bounded = new WeightedCSP(snapshot);
+			silenced();
+			bounded.solve();
+			restored();
+			
+			without += plain.getRecursiveCalls();
+			with += bounded.getRecursiveCalls();
+			perWeek.append(" " + plain.getRecursiveCalls() + "/" + 
+					bounded.getRecursiveCalls());
+		}
+		
+		original.printf("%-14s nodes without/with bound: %d/%d (%.0f%% fewer)%n" +
+				"\tby week:%s%n", org.getName(), without, with, 
+				100.0 * (without - with) / without, perWeek);
+	}
+	
+	/**
+	 * Solves several weeks in a row, each week with and without a transposition
+	 * table on the same snapshot, and prints the search nodes of each with the
+	 * table's hits and misses.
+	 * @param org to solve
+	 * @param weeks to solve
+	 * @param bytes memory cap of the table
+	 */
+	private static void transpositionNodes(Organization org, int weeks, 
+			long bytes) {
+		long without = 0;
+		long with = 0;
+		long hits = 0;
+		long misses = 0;
+		
+		for (int week = 0; week < weeks; week++) {
+			OrganizationSnapshot snapshot = org.compile();
+			
+			WeightedCSP plain = new WeightedCSP(snapshot);
+			silenced();
+			plain.solve();
+			restored();
+			
+			// solved last so that its assignment is the one recorded
+			WeightedCSP tabled = new WeightedCSP(snapshot);
+			tabled.setTranspositionTable(bytes);
+			silenced();
+			tabled.solve();
+			restored();
+			
+			without += plain.getRecursiveCalls();
+			with += tabled.getRecursiveCalls();
+			hits += tabled.getTableHits();
+			misses += tabled.getTableMisses();
+		}
+		
+		original.printf("%-14s nodes without/with table: %d/%d, " +
+				"hits %d, misses %d (%.0f%% hit)%n", org.getName(), without, with, 
+				hits, misses, 100.0 * hits / Math.max(1, hits + misses));
+	}
+	
+	/**
+	 * Solves several weeks in a row, each week in the fixed order and with 
+	 * dynamic ordering on the same snapshot, and prints the search nodes and 
+	 * cost of each. Costs are counted in the order members are reached, so they
+	 * can differ.
+	 * @param org to solve
+	 * @param weeks to solve
+	 */
+	private static void orderNodes(Organization org, int weeks) {
+		long fixedNodes = 0;
+		long dynamicNodes = 0;
+		int fixedCost = 0;
+		int dynamicCost = 0;
+		
+		for (int week = 0; week < weeks; week++) {
+			OrganizationSnapshot snapshot = org.compile();
+			
+			WeightedCSP dynamic = new WeightedCSP(snapshot);
+			dynamic.setDynamicOrder(true);
+			silenced();
+			dynamic.solve();
+			restored();
+			
+			// solved last so that its assignment is the one recorded
+			WeightedCSP fixed = new WeightedCSP(snapshot);
+			silenced();
+			fixed.solve();
+			restored();
+			
+			fixedNodes += fixed.getRecursiveCalls();
+			dynamicNodes += dynamic.getRecursiveCalls();
+			fixedCost += fixed.getCost();
+			dynamicCost += dynamic.getCost();
+		}
+		
+		original.printf("%-14s nodes fixed/dynamic: %d/%d, cost %d/%d%n", 
+				org.getName(), fixedNodes, dynamicNodes, fixedCost, dynamicCost);
+	}
+	
+	/**
+	 * Solves several weeks in a row, each week with and without symmetry
+	 * breaking on the same snapshot, and prints the search nodes of each.
+	 * @param org to solve
+	 * @param weeks to solve
+	 */
+	private static void symmetryNodes(Organization org, int weeks) {
+		long without = 0;
+		long with = 0;
+		StringBuffer perWeek = new StringBuffer();
+		
+		for (int week = 0; week < weeks; week++) {
+			OrganizationSnapshot snapshot = org.compile();
+			
+			WeightedCSP plain = new WeightedCSP(snapshot);
+			plain.setSymmetryBreaking(false);
+			silenced();
+			plain.solve();
+			restored();
+			
+			// solved last so that its assignment is the one recorded
+			WeightedCSP broken = new WeightedCSP(snapshot);
+			silenced();
+			broken.solve();
+			restored();
+			
+			without += plain.getRecursiveCalls();
+			with += broken.getRecursiveCalls();
+			perWeek.append(" " + plain.getRecursiveCalls() + "/" + 
+					broken.getRecursiveCalls());
+		}
+		
+		original.printf("%-14s nodes without/with symmetry breaking: %d/%d " +
+				"(%.0f%% fewer)%n\tby week:%s%n", org.getName(), without, with, 
+				100.0 * (without - with) / without, perWeek);
+	}
+	
+	/**
+	 * Solves several weeks in a row, each week with and without a starting
+	 * solution on the same snapshot, and prints the search nodes of each, with
+	 * how far the starting solution was from the best.
+	 * @param org to solve
+	 * @param weeks to solve
+	 */
+	private static void incumbentNodes(Organization org, int weeks) {
+		long without = 0;
+		long with = 0;
+		StringBuffer perWeek = new StringBuffer();
+		
+		for (int week = 0; week < weeks; week++) {
+			OrganizationSnapshot snapshot = org.compile();
+			
+			WeightedCSP plain = new WeightedCSP(snapshot);
+			plain.setIncumbent(false);
+			silenced();
+			plain.solve();
+			restored();
+			
+			// solved last so that its assignment is the one recorded
+			WeightedCSP seeded = new WeightedCSP(snapshot);
+			silenced();
+			seeded.solve();
+			restored();
+			
+			without += plain.getRecursiveCalls();
+			with += seeded.getRecursiveCalls();
+			perWeek.append(" " + plain.getRecursiveCalls() + "/" + 
+					seeded.getRecursiveCalls() + " (+" + 
+					(seeded.getIncumbentCost() - seeded.getCost()) + ")");
+		}
+		
+		original.printf("%-14s nodes without/with starting solution: %d/%d " +
+				"(%.0f%% fewer)%n\tby week, with starting cost over best:%s%n", 
+				org.getName(), without, with, 100.0 * (without - with) / without, 
+				perWeek);
+	}
+	
+	/**
+	 * Times the sequential solver, then the parallel solver with 1, 2, 4... 
+	 * threads up to the number of cores, and prints the speedup of each.
+	 * @param org to solve
+	 * @param runs per setting, the median time is reported
+	 */
+	private static void parallelScaling(Organization org, int runs) {
+		OrganizationSnapshot snapshot = org.compile();
+		original.println("Parallel scaling on " + org.getName() + " (" + 
+				snapshot.size() + " members)");
+		
+		long[] times = new long[runs];
+		int cost = 0;
+		for (int r = 0; r < runs; r++) {
+			WeightedCSP csp = new WeightedCSP(snapshot);
+			long start = System.nanoTime();
+			silenced();
+			csp.solve();
+			restored();
+			times[r] = System.nanoTime() - start;
+			cost = csp.getCost();
+		}
+		long sequential = median(times);
+		original.printf("\tsequential\t%8.1f ms\tcost %d%n", sequential / 1e6, cost);
+		
+		int cores = Runtime.getRuntime().availableProcessors();
+		for (int threads = 1; threads <= cores; threads *= 2) {
+			for (int r = 0; r < runs; r++) {
+				ParallelWeightedCSP csp = new ParallelWeightedCSP(snapshot, threads);
+				long start = System.nanoTime();
+				silenced();
+				csp.solve();
+				restored();
+				times[r] = System.nanoTime() - start;
+				cost = csp.getCost();
+			}
+			long parallel = median(times);
+			original.printf("\t%d threads\t%8.1f ms\tcost %d\tspeedup %.2fx%n", 
+					threads, parallel / 1e6, cost, (double) sequential / parallel);
+		}
+	}
+	
+	/**
+	 * @param size of team
+	 * @return organization with a single team of the given size
+	 */
+	static Organization singleTeam(int size) {
+		Organization org = new Organization("team of " + size);
+		for (int i = 0; i < size; i++) { 
+			org.addMemberToTeam("p" + i, "team", true); 
+		}
+		return org;
+	}
+	
+	/**
+	 * @param count of teams
+	 * @param size of each team
+	 * @param shared members of each team that are also on the next team
+	 * @return organization with a chain of overlapping teams
+	 */
+	static Organization teams(int count, int size, int shared) {
+		Organization org = new Organization(count + " teams of " + size);
+		int member = 0;
+		for (int t = 0; t < count; t++) {
+			int first = member - (t == 0 ? 0 : shared);
+			for (int i = first; i < first + size; i++) {
+				org.addMemberToTeam("p" + i, "team" + t, true);
+			}
+			member = first + size;
+		}
+		return org;
+	}
+	
+	/**
+	 * Loads every organization in a folder of files in the orgs folder format.
+	 * @see PairingDriver.loadOrganizationFromFile()
+	 * @param folder
+	 * @return organizations named after their files
+	 */
+	static ArrayList<Organization> loadOrganizations(String folder) 
+			throws IOException {
+		ArrayList<Organization> orgs = new ArrayList<Organization>();
+		File[] files = new File(folder).listFiles();
+		if (files == null) { return orgs; }
+		Arrays.sort(files);
+		
+		for (File file : files) {
+			Organization org = new Organization(file.getName());
+			BufferedReader reader = new BufferedReader(new FileReader(file));
+			try {
+				String person;
+				while ((person = reader.readLine()) != null) {
+					if (person.trim().isEmpty()) { continue; }
+					String[] info = person.split(";");
+					for (String teamName : info[1].split(",")) {
+						org.addMemberToTeam(info[0], teamName, true);
+					}
+				}
+			} finally {
+				reader.close();
+			}
+			orgs.add(org);
+		}
+		return orgs;
+	}
+	
+	/**
+	 * Silences the solvers' prints while timing.
+	 */
+	private static void silenced() {
+		System.setOut(new NullPrintStream());
+	}
+	
+	private static void restored() {
+		System.setOut(original);
+	}
+	
+	private static long median(long[] times) {
+		long[] sorted = times.clone();
+		Arrays.sort(sorted);
+		return sorted[sorted.length / 2];
+	}
+}
@@ -0,0 +1,90 @@
+/**
+ * JUnit test for SolverMetrics and the SolveStats it is fed
+ * 
+ * Run unit tests from TestDriver.java
+ */
+
+package oneplusoneTest;
+
+import static org.junit.Assert.*;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import oneplusone.OrganizationSnapshot;
+import oneplusone.PairingAssignment;
+import oneplusone.PairingSolvers;
+import oneplusone.Person;
+import oneplusone.SolveStats;
+import oneplusone.SolverMetrics;
+import oneplusone.Team;
+import oneplusone.WeightedCSP;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SolverMetricsTest {
+	private static PrintStream original;
+	private static ArrayList<Person> people;
+	
+	@Before
+	public void setUp() throws Exception {
+		
+		// silences print statements. 
+		// thanks: http://stackoverflow.com/a/18804033/3739861
+		original = System.out;
+		System.setOut(new NullPrintStream());
+		
+		people = new ArrayList<Person>();
+		Team team = new Team("team");
+		for (int i = 0; i < 11; i++) { 
+			people.add(new Person("p" + i));
+			team.addMember(people.get(i));
+		}
+		SolverMetrics.get().reset();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		System.setOut(original);
+	}
+	
+	@Test
+	public void statsDescribeTheSearch() {
+		for (int week = 0; week < 3; week++) {
+			WeightedCSP solver = new WeightedCSP(people);
+			PairingAssignment assignment = solver.solve();
+			SolveStats stats = assignment.getStats();
+			
+			assertEquals(solver.getRecursiveCalls(), stats.getNodes());
+			assertEquals(assignment.getCost(), stats.getCost());
+			assertTrue(stats.isOptimal());
+			assertTrue(stats.getMaxDepth() <= people.size());
+			assertTrue(stats.getFirstSolutionMillis() >= 0);
+			assertTrue(stats.getFirstSolutionMillis() <= stats.getBestSolutionMillis());
+			assertTrue(stats.getBestSolutionMillis() <= stats.getSolveMillis());
+		}
+	}
+	
+	@Test
+	public void solvesArePublishedThroughJmx() throws Exception {
+		for (int week = 0; week < 2; week++) {
+			PairingAssignment assignment = PairingSolvers.solve(PairingSolvers.EXACT, 
+					OrganizationSnapshot.compile(people), 0, null, null);
+			assignment.record();
+		}
+		
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = new ObjectName(SolverMetrics.NAME);
+		assertEquals(2L, server.getAttribute(name, "Solves"));
+		assertEquals(PairingSolvers.EXACT, server.getAttribute(name, "LastEngine"));
+		assertTrue((Long) server.getAttribute(name, "LastNodes") > 0);
+		
+		long total = 0;
+		for (long count : (long[]) server.getAttribute(name, "NodeHistogram")) {
+			total += count;
+		}
+		assertEquals(2, total);
+	}
+}
@@ -26,7 +26,17 @@ public class TestDriver {
     		TeamTest.class,
     		PersonTest.class,
     		PairingAssignmentTest.class,
-    		WeightedCSPTest.class
+    		WeightedCSPTest.class,
+    		ParallelWeightedCSPTest.class,
+    		MinCostMatchingTest.class,
+    		ComponentWeightedCSPTest.class,
+    		SchedulePlannerTest.class,
+    		PairingSolversTest.class,
+    		SolverMetricsTest.class,
+    		SearchTraceTest.class,
+    		LimitedWeightedCSPTest.class,
+    		AnnealingSearchTest.class,
+    		RoundRobinTest.class
     };
     
     // test each class
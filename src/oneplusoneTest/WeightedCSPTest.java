@@ -16,9 +16,15 @@ package oneplusoneTest;
 
 import static org.junit.Assert.*;
 import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Random;
+import oneplusone.CancellationToken;
+import oneplusone.CostTable;
+import oneplusone.Incumbent;
+import oneplusone.OrganizationSnapshot;
 import oneplusone.PairingAssignment;
 import oneplusone.Person;
 import oneplusone.Team;
@@ -181,7 +187,444 @@ public class WeightedCSPTest {
 			}
 		}		
 	}	
+	
+	/**
+	 * Solves the third week of a single team of twelve, which takes tens of 
+	 * thousands of search nodes (the first is mostly skipped as symmetric, see
+	 * TwinClasses), and checks that the bytes allocated by the solve are nowhere near
+	 * one object per node. Setup (snapshot, cost table, buffers) is allocated
+	 * once per solve and is small next to the number of nodes.
+	 */
+	@Test
+	public void solveDoesNotAllocatePerSearchNode() {
+		java.lang.management.ThreadMXBean bean = 
+				ManagementFactory.getThreadMXBean();
+		if (!(bean instanceof com.sun.management.ThreadMXBean)) { return; }
+		com.sun.management.ThreadMXBean allocations = 
+				(com.sun.management.ThreadMXBean) bean;
+		long threadId = Thread.currentThread().getId();
+		
+		// warm up on the first two weeks, so class loading is not counted
+		WeightedCSP solver = singleTeamSolver("measured", 12);
+		solver.solve();
+		solver.solve();
+		
+		long before = allocations.getThreadAllocatedBytes(threadId);
+		solver.solve();
+		long allocated = allocations.getThreadAllocatedBytes(threadId) - before;
+		
+		int nodes = solver.getRecursiveCalls();
+		assertTrue(nodes > 10000);
+		
+		// a single object per node would be at least 16 bytes per node
+		assertTrue("allocated " + allocated + " bytes over " + nodes + " nodes",
+				allocated < 2L * nodes);
+	}
+	
+	/**
+	 * A solve that runs to the end is proven optimal, with the lower bound
+	 * equal to its cost.
+	 */
+	@Test
+	public void finishedSolveIsOptimal() {
+		WeightedCSP solver = singleTeamSolver("team", 8);
+		PairingAssignment solution = solver.solve(WeightedCSP.NO_DEADLINE, null);
+		
+		assertTrue(solution.isOptimal());
+		assertEquals(solver.getCost(), solution.getCost());
+		assertEquals(solution.getCost(), solution.getLowerBound());
+	}
+	
+	/**
+	 * A solve cancelled before it starts still returns a complete assignment,
+	 * found by its first descent, and stops soon after.
+	 */
+	@Test
+	public void cancelledSolveReturnsCompleteAssignment() {
+		WeightedCSP solver = singleTeamSolver("team", 12);
+		solver.solve(); // history makes the second week harder
+		
+		CancellationToken token = new CancellationToken();
+		token.cancel();
+		PairingAssignment solution = solver.solve(WeightedCSP.NO_DEADLINE, token);
+		
+		assertTrue(solver.getRecursiveCalls() <= 2048);
+		assertTrue(solution.getLowerBound() <= solution.getCost());
+		assertEquals(solution.isOptimal(), 
+				solution.getLowerBound() == solution.getCost());
+		for (HashSet<Person> partners : solution.getCopyOfPairings().values()) {
+			assertFalse(partners.isEmpty());
+		}
+	}
+	
+	/**
+	 * A deadline that has already passed behaves like a cancelled token.
+	 */
+	@Test
+	public void passedDeadlineReturnsCompleteAssignment() {
+		WeightedCSP solver = singleTeamSolver("team", 12);
+		PairingAssignment solution = 
+				solver.solve(System.currentTimeMillis() - 1, null);
+		
+		assertTrue(solver.getRecursiveCalls() <= 2048);
+		for (HashSet<Person> partners : solution.getCopyOfPairings().values()) {
+			assertFalse(partners.isEmpty());
+		}
+	}
+	
+	/**
+	 * The lower bound never exceeds the cost still to be paid, so pruning with
+	 * it keeps the costs of several weeks, while searching fewer nodes.
+	 */
+	@Test
+	public void lowerBoundKeepsCost() {
+		ArrayList<Person> members = overlappingTeams();
+		for (int week = 0; week < 4; week++) {
+			OrganizationSnapshot snapshot = OrganizationSnapshot.compile(members);
+			WeightedCSP plain = new WeightedCSP(snapshot);
+			plain.setRandom(new Random(week));
+			plain.setLowerBound(false);
+			plain.solve();
+			
+			WeightedCSP bounded = new WeightedCSP(snapshot);
+			bounded.setRandom(new Random(week));
+			bounded.solve();
+			
+			assertEquals(plain.getCost(), bounded.getCost());
+			assertTrue(bounded.getRecursiveCalls() < plain.getRecursiveCalls());
+		}
+	}
+	
+	/**
+	 * A transposition table only prunes, so over several weeks the costs are the
+	 * same as without one. The table is looked up on the way.
+	 */
+	@Test
+	public void transpositionTableKeepsCost() {
+		ArrayList<Person> members = singleTeam("team", 10);
+		for (int week = 0; week < 4; week++) {
+			OrganizationSnapshot snapshot = OrganizationSnapshot.compile(members);
+			WeightedCSP plain = new WeightedCSP(snapshot);
+			plain.solve();
+			
+			WeightedCSP tabled = new WeightedCSP(snapshot);
+			tabled.setTranspositionTable(1 << 16);
+			tabled.solve();
+			
+			assertEquals(plain.getCost(), tabled.getCost());
+			assertTrue(tabled.getTableHits() + tabled.getTableMisses() > 0);
+		}
+	}
+	
+	/**
+	 * Nogoods only prune, so over several weeks the costs are the same as 
+	 * without them, with or without symmetry breaking. Some are learned and 
+	 * looked up on the way.
+	 */
+	@Test
+	public void nogoodsKeepCost() {
+		for (int options = 0; options < 2; options++) {
+			ArrayList<Person> members = overlappingTeams();
+			long learned = 0;
+			for (int week = 0; week < 4; week++) {
+				OrganizationSnapshot snapshot = OrganizationSnapshot.compile(members);
+				WeightedCSP plain = new WeightedCSP(snapshot);
+				plain.setSymmetryBreaking(options == 0);
+				plain.solve();
+				
+				WeightedCSP learning = new WeightedCSP(snapshot);
+				learning.setSymmetryBreaking(options == 0);
+				learning.setNogoods(true);
+				learning.solve();
+				
+				assertEquals(plain.getCost(), learning.getCost());
+				assertTrue(learning.getNogoodChecks() > 0);
+				assertEquals(learning.getNogoodHits(), 
+						learning.getStats().getNogoodPrunes());
+				learned += learning.getNogoodsLearned();
+			}
+			assertTrue(learned > 0);
+		}
+	}
+	
+	/**
+	 * Forward checking only raises the bound, so the costs are the same and no
+	 * more nodes are searched.
+	 */
+	@Test
+	public void forwardCheckingKeepsCost() {
+		ArrayList<Person> members = overlappingTeams();
+		for (int week = 0; week < 4; week++) {
+			OrganizationSnapshot snapshot = OrganizationSnapshot.compile(members);
+			WeightedCSP plain = new WeightedCSP(snapshot);
+			plain.setRandom(new Random(week));
+			plain.solve();
+			
+			WeightedCSP checking = new WeightedCSP(snapshot);
+			checking.setRandom(new Random(week));
+			checking.setForwardChecking(true);
+			checking.solve();
+			
+			assertEquals(plain.getCost(), checking.getCost());
+			assertTrue(checking.getRecursiveCalls() <= plain.getRecursiveCalls());
+		}
+	}
+	
+	/**
+	 * Members with one teammate or none are paired before the search, as 
+	 * their picks are forced, and the rest is searched as it would be alone.
+	 */
+	@Test
+	public void presolvePairsForcedMembers() {
+		ArrayList<Person> members = singleTeam("pair", 2);
+		members.addAll(singleTeam("alone", 1));
+		members.addAll(singleTeam("team", 6));
+		WeightedCSP solver = new WeightedCSP(members);
+		PairingAssignment solution = solver.solve();
+		
+		assertEquals(3, solver.getForced());
+		assertTrue(solution.getCopyOfPairings().get(members.get(0))
+				.contains(members.get(1)));
+		assertTrue(solution.getCopyOfPairings().get(members.get(2)).isEmpty());
+		WeightedCSP team = singleTeamSolver("team", 6);
+		team.solve();
+		assertEquals(team.getCost() + 1, solver.getCost());
+	}
+	
+	/**
+	 * Skipping twins never changes the cost. In the first week everyone in the
+	 * team is a twin, and almost the whole search is skipped.
+	 */
+	@Test
+	public void symmetryBreakingKeepsCost() {
+		ArrayList<Person> members = singleTeam("team", 10);
+		for (int week = 0; week < 4; week++) {
+			OrganizationSnapshot snapshot = OrganizationSnapshot.compile(members);
+			WeightedCSP plain = new WeightedCSP(snapshot);
+			plain.setSymmetryBreaking(false);
+			plain.solve();
+			
+			WeightedCSP broken = new WeightedCSP(snapshot);
+			broken.solve();
+			
+			assertEquals(plain.getCost(), broken.getCost());
+			if (week == 0) {
+				assertTrue(broken.getRecursiveCalls() * 10 < plain.getRecursiveCalls());
+			}
+		}
+	}
+	
+	/**
+	 * Starting from the cheaper of the Incumbent solutions never changes the 
+	 * cost found, and the starting solution is never cheaper than it.
+	 */
+	@Test
+	public void incumbentKeepsCost() {
+		ArrayList<Person> members = singleTeam("team", 9);
+		for (int week = 0; week < 4; week++) {
+			OrganizationSnapshot snapshot = OrganizationSnapshot.compile(members);
+			WeightedCSP plain = new WeightedCSP(snapshot);
+			plain.setIncumbent(false);
+			plain.solve();
+			
+			WeightedCSP seeded = new WeightedCSP(snapshot);
+			seeded.solve();
+			
+			assertEquals(plain.getCost(), seeded.getCost());
+			assertTrue(seeded.getIncumbentCost() >= seeded.getCost());
+			assertEquals(Integer.MAX_VALUE, plain.getIncumbentCost());
+		}
+	}
+	
+	/**
+	 * A team of eight is paired up perfectly in the first week. Repairing that
+	 * week crosses its four pairs into four new ones, none of them repeated.
+	 */
+	@Test
+	public void repairedLastWeekRepeatsNoPair() {
+		ArrayList<Person> members = singleTeam("team", 8);
+		new WeightedCSP(members).solve();
+		
+		OrganizationSnapshot snapshot = OrganizationSnapshot.compile(members);
+		int[] ids = new int[snapshot.size()];
+		for (int i = 0; i < ids.length; i++) { ids[i] = i; }
+		int[] mate = Incumbent.repairLastWeek(
+				new CostTable(snapshot, new Random()), ids);
+		
+		for (int i = 0; i < ids.length; i++) {
+			assertTrue(mate[i] != -1);
+			assertFalse(snapshot.matchedLastTime(mate[i]));
+		}
+	}
+	
+	/**
+	 * In a fresh team of nine at least five members must pick someone, at a
+	 * cost of 1 each. Dynamic ordering finds it and gives everyone a partner.
+	 */
+	@Test
+	public void dynamicOrderPairsEveryone() {
+		WeightedCSP solver = singleTeamSolver("team", 9);
+		solver.setDynamicOrder(true);
+		PairingAssignment assignment = solver.solve();
+		
+		assertEquals(5, solver.getCost());
+		assertTrue(assignment.isOptimal());
+		for (HashSet<Person> partners : assignment.getCopyOfPairings().values()) {
+			assertFalse(partners.isEmpty());
+		}
+	}
+	
+	/**
+	 * On fresh teams dynamic ordering reaches the same cost as the fixed order,
+	 * searching no more nodes.
+	 */
+	@Test
+	public void dynamicOrderSearchesFewerNodes() {
+		for (int size = 6; size <= 11; size++) {
+			WeightedCSP fixed = singleTeamSolver("fixed", size);
+			fixed.solve();
+			WeightedCSP dynamic = singleTeamSolver("dynamic", size);
+			dynamic.setDynamicOrder(true);
+			dynamic.solve();
+			
+			assertEquals(fixed.getCost(), dynamic.getCost());
+			assertTrue(dynamic.getRecursiveCalls() <= fixed.getRecursiveCalls());
+		}
+	}
+	
+	/**
+	 * The iterative search visits the same nodes as the recursive one, and 
+	 * finds the same pairs, with and without the options that change the tree.
+	 * Each runs on its own copy of a team, with a second team overlapping it.
+	 */
+	@Test
+	public void iterativeSearchMatchesRecursive() {
+		for (int options = 0; options < 5; options++) {
+			ArrayList<Person> first = overlappingTeams();
+			ArrayList<Person> second = overlappingTeams();
+			for (int week = 0; week < 4; week++) {
+				WeightedCSP recursive = new WeightedCSP(first);
+				WeightedCSP iterative = new WeightedCSP(second);
+				recursive.setIterative(false);
+				recursive.setRandom(new Random(week));
+				iterative.setRandom(new Random(week));
+				recursive.setTranspositionTable(options == 1 ? 1 << 16 : 0);
+				iterative.setTranspositionTable(options == 1 ? 1 << 16 : 0);
+				recursive.setDynamicOrder(options == 2);
+				iterative.setDynamicOrder(options == 2);
+				recursive.setIncumbent(options != 3);
+				iterative.setIncumbent(options != 3);
+				recursive.setNogoods(options == 4);
+				iterative.setNogoods(options == 4);
+				
+				PairingAssignment expected = recursive.solve();
+				PairingAssignment actual = iterative.solve();
+				assertEquals(recursive.getCost(), iterative.getCost());
+				assertEquals(recursive.getRecursiveCalls(), 
+						iterative.getRecursiveCalls());
+				assertEquals(expected.getCopyOfPairings(), actual.getCopyOfPairings());
+			}
+		}
+	}
+	
+	/**
+	 * Deepening the bound proves the same cost the plain search finds, with
+	 * the options that change the tree and with the recursive search.
+	 */
+	@Test
+	public void deepeningFindsOptimalCost() {
+		for (int options = 0; options < 5; options++) {
+			ArrayList<Person> first = overlappingTeams();
+			ArrayList<Person> second = overlappingTeams();
+			for (int week = 0; week < 4; week++) {
+				WeightedCSP plain = new WeightedCSP(first);
+				WeightedCSP deepening = new WeightedCSP(second);
+				deepening.setDeepening(true);
+				plain.setRandom(new Random(week));
+				deepening.setRandom(new Random(week));
+				plain.setTranspositionTable(options == 1 ? 1 << 16 : 0);
+				deepening.setTranspositionTable(options == 1 ? 1 << 16 : 0);
+				plain.setDynamicOrder(options == 2);
+				deepening.setDynamicOrder(options == 2);
+				plain.setIncumbent(options != 3);
+				deepening.setIncumbent(options != 3);
+				deepening.setIterative(options != 4);
+				
+				plain.solve();
+				assertTrue(deepening.solve().isOptimal());
+				assertEquals(plain.getCost(), deepening.getCost());
+			}
+		}
+	}
+	
+	/**
+	 * Searching an organization of many small teams goes one depth per member,
+	 * deeper than the thread's stack would allow for recursion. Teams of four
+	 * leave every member a choice, so none are paired before the search, and
+	 * two picks per team is the least any assignment costs, so the search stops 
+	 * at its first leaf.
+	 */
+	@Test
+	public void iterativeSearchHasNoDepthLimit() {
+		ArrayList<Person> members = new ArrayList<Person>();
+		for (int t = 0; t < 12500; t++) {
+			Team team = new Team("team" + t);
+			for (int i = 0; i < 4; i++) {
+				Person member = new Person("p" + t + "-" + i);
+				team.addMember(member);
+				members.add(member);
+			}
+		}
+		WeightedCSP solver = new WeightedCSP(members);
+		solver.setIncumbent(false);
+		solver.setGoal(25000);
+		PairingAssignment assignment = solver.solve();
+		
+		assertEquals(0, solver.getForced());
+		assertTrue(solver.getStats().getMaxDepth() >= 49999);
+		assertEquals(25000, solver.getCost());
+		assertTrue(assignment.isOptimal());
+	}
+	
+	/**
+	 * @return members of a team of ten, two of whom are also in a team of four
+	 * 	with two others
+	 */
+	private static ArrayList<Person> overlappingTeams() {
+		ArrayList<Person> members = singleTeam("team", 10);
+		Team other = new Team("other");
+		other.addMember(members.get(0));
+		other.addMember(members.get(1));
+		for (int i = 0; i < 2; i++) {
+			Person member = new Person("other" + i);
+			other.addMember(member);
+			members.add(member);
+		}
+		return members;
+	}
+	
+	/**
+	 * @param name of team
+	 * @param size of team
+	 * @return solver for a single team of the given size
+	 */
+	private static WeightedCSP singleTeamSolver(String name, int size) {
+		return new WeightedCSP(singleTeam(name, size));
+	}
+	
+	/**
+	 * @param name of team
+	 * @param size of team
+	 * @return members of a new team of the given size
+	 */
+	private static ArrayList<Person> singleTeam(String name, int size) {
+		ArrayList<Person> members = new ArrayList<Person>();
+		Team team = new Team(name);
+		for (int i = 0; i < size; i++) {
+			Person member = new Person(name + i);
+			team.addMember(member);
+			members.add(member);
+		}
+		return members;
+	}
 }
-
-
-